@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streamsx.patterns.operator.Filter;
+
+/**
+ * Filter passing tuples with {@code key} less than a threshold.
+ */
+public class BenchmarkFilterOp extends Filter {
+    private int threshold;
+
+    @Override
+    protected boolean filter(Tuple tuple) throws Exception {
+        return tuple.getInt(0) < threshold;
+    }
+
+    @Parameter(optional=true)
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+}
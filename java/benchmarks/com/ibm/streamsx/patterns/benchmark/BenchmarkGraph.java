@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamHandler;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Single operator graph for a benchmark, with all output
+ * ports connected to handlers that discard their tuples.
+ */
+public class BenchmarkGraph {
+
+    private static final StreamHandler<Tuple> DISCARD = new StreamHandler<Tuple>() {
+        @Override
+        public void tuple(Tuple tuple) {
+        }
+        @Override
+        public void mark(Punctuation mark) {
+        }
+    };
+
+    private final JavaTestableGraph tester;
+    private final StreamingOutput<OutputTuple> inject;
+
+    public BenchmarkGraph(JavaOperatorTester jot, OperatorInvocation<?> op, int outputs) throws Exception {
+        InputPortDeclaration input = op.addInput(TupleSource.SCHEMA);
+        OutputPortDeclaration[] ports = new OutputPortDeclaration[outputs];
+        for (int p = 0; p < outputs; p++)
+            ports[p] = op.addOutput(TupleSource.SCHEMA);
+        tester = jot.tester(op);
+        for (OutputPortDeclaration port : ports)
+            tester.registerStreamHandler(port, DISCARD);
+        inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+    }
+
+    public StreamingOutput<OutputTuple> getInject() {
+        return inject;
+    }
+
+    public void submit(Tuple tuple) throws Exception {
+        inject.submit(tuple);
+    }
+
+    public void shutdown() throws Exception {
+        tester.shutdown().get();
+    }
+}
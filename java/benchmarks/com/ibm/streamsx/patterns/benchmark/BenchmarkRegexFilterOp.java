@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streamsx.patterns.operator.RegexFilter;
+
+/**
+ * RegexFilter matching {@code line}.
+ */
+public class BenchmarkRegexFilterOp extends RegexFilter {
+    private String pattern;
+
+    @Parameter(optional=true)
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    @Override
+    protected String getExpression() {
+        return pattern;
+    }
+
+    @Override
+    protected CharSequence getTupleSequence(Tuple tuple) throws Exception {
+        return tuple.getString(1);
+    }
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import java.util.List;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streamsx.patterns.operator.RegexSplit;
+
+/**
+ * RegexSplit matching {@code line}.
+ */
+public class BenchmarkRegexSplitOp extends RegexSplit {
+    private List<String> patterns;
+
+    @Parameter(optional=true, cardinality=-1)
+    public void setPatterns(List<String> patterns) {
+        this.patterns = patterns;
+    }
+
+    @Override
+    protected String[] getExpressions() {
+        return patterns.toArray(new String[0]);
+    }
+
+    @Override
+    protected CharSequence getTupleSequence(Tuple tuple) throws Exception {
+        return tuple.getString(1);
+    }
+}
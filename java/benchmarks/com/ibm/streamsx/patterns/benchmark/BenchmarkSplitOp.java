@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streamsx.patterns.operator.Split;
+
+/**
+ * Split on {@code key}, discarding tuples with
+ * {@code key} greater than or equal to a threshold.
+ */
+public class BenchmarkSplitOp extends Split {
+    private int threshold;
+
+    @Override
+    protected int destination(Tuple tuple) throws Exception {
+        int key = tuple.getInt(0);
+        return key < threshold ? key : -1;
+    }
+
+    @Parameter(optional=true)
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+}
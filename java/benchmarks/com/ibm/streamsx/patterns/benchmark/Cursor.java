@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Per injecting thread position in the generated tuples.
+ */
+@State(Scope.Thread)
+public class Cursor {
+    private int next;
+
+    public Tuple next(Tuple[] tuples) {
+        Tuple tuple = tuples[next];
+        if (++next == tuples.length)
+            next = 0;
+        return tuple;
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Throughput of {@code RegexFilter} across tuple sizes,
+ * pattern complexity, match ratio and matching options.
+ */
+@State(Scope.Benchmark)
+public class RegexFilterBenchmark {
+
+    @Param({"64", "1024"})
+    public int tupleSize;
+
+    @Param({TupleSource.SIMPLE, TupleSource.COMPLEX})
+    public String complexity;
+
+    @Param({"0.01", "0.5"})
+    public double matchRatio;
+
+    @Param({"default", "concurrentMatching", "literalPrefilter"})
+    public String mode;
+
+    private BenchmarkGraph graph;
+    private Tuple[] tuples;
+
+    @Setup
+    public void setup() throws Exception {
+        JavaOperatorTester jot = new JavaOperatorTester();
+        OperatorInvocation<BenchmarkRegexFilterOp> op = jot.singleOp(BenchmarkRegexFilterOp.class);
+        op.setStringParameter("pattern", TupleSource.expressions(complexity, 1)[0]);
+        if (!"default".equals(mode))
+            op.setBooleanParameter(mode, true);
+        graph = new BenchmarkGraph(jot, op, 2);
+        tuples = TupleSource.tuples(graph.getInject(), complexity, 1, tupleSize, matchRatio);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        graph.shutdown();
+    }
+
+    @Benchmark
+    public void regexFilter(Cursor cursor) throws Exception {
+        graph.submit(cursor.next(tuples));
+    }
+}
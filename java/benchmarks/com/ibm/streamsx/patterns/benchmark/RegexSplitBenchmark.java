@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Throughput of {@code RegexSplit} across tuple sizes, pattern
+ * complexity, expression count, match ratio and matching options.
+ */
+@State(Scope.Benchmark)
+public class RegexSplitBenchmark {
+
+    @Param({"64", "1024"})
+    public int tupleSize;
+
+    @Param({TupleSource.SIMPLE, TupleSource.COMPLEX})
+    public String complexity;
+
+    @Param({"4", "32"})
+    public int expressionCount;
+
+    @Param({"0.01", "0.5"})
+    public double matchRatio;
+
+    @Param({"default", "concurrentMatching", "combinedMatching", "literalPrefilter"})
+    public String mode;
+
+    private BenchmarkGraph graph;
+    private Tuple[] tuples;
+
+    @Setup
+    public void setup() throws Exception {
+        JavaOperatorTester jot = new JavaOperatorTester();
+        OperatorInvocation<BenchmarkRegexSplitOp> op = jot.singleOp(BenchmarkRegexSplitOp.class);
+        op.setStringParameter("patterns", TupleSource.expressions(complexity, expressionCount));
+        if (!"default".equals(mode))
+            op.setBooleanParameter(mode, true);
+        graph = new BenchmarkGraph(jot, op, expressionCount);
+        tuples = TupleSource.tuples(graph.getInject(), complexity, expressionCount, tupleSize, matchRatio);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        graph.shutdown();
+    }
+
+    @Benchmark
+    public void regexSplit(Cursor cursor) throws Exception {
+        graph.submit(cursor.next(tuples));
+    }
+}
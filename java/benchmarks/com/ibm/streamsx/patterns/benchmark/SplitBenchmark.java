@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Throughput of {@code Split} with a trivial destination,
+ * measuring the per-tuple overhead of the pattern.
+ */
+@State(Scope.Benchmark)
+public class SplitBenchmark {
+
+    @Param({"64", "1024"})
+    public int tupleSize;
+
+    @Param({"0.1", "0.5", "0.9"})
+    public double matchRatio;
+
+    @Param({"2", "8"})
+    public int outputs;
+
+    @Param({"1", "64"})
+    public int batchSize;
+
+    private BenchmarkGraph graph;
+    private Tuple[] tuples;
+
+    @Setup
+    public void setup() throws Exception {
+        JavaOperatorTester jot = new JavaOperatorTester();
+        OperatorInvocation<BenchmarkSplitOp> op = jot.singleOp(BenchmarkSplitOp.class);
+        op.setIntParameter("threshold", (int) (matchRatio * 100));
+        op.setIntParameter("batchSize", batchSize);
+        graph = new BenchmarkGraph(jot, op, outputs);
+        tuples = TupleSource.tuples(graph.getInject(), TupleSource.SIMPLE, 1, tupleSize, 0.0);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        graph.shutdown();
+    }
+
+    @Benchmark
+    public void split(Cursor cursor) throws Exception {
+        graph.submit(cursor.next(tuples));
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.benchmark;
+
+import java.util.Random;
+
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+
+/**
+ * Headless source of generated tuples for benchmarks.
+ * Tuples are generated once, before measurement, so that
+ * the benchmarks measure the operator rather than tuple creation.
+ * <P>
+ * Tuples have the schema {@code tuple<int32 key, ustring line>}.
+ * {@code key} is uniformly distributed in {@code [0,100)} and
+ * {@code line} is text of a fixed length, a proportion of which
+ * contain text matching one of the generated expressions.
+ * </P>
+ */
+public class TupleSource {
+
+    public static final StreamSchema SCHEMA = Type.Factory.getTupleType(
+            "tuple<int32 key, ustring line>").getTupleSchema();
+
+    /**
+     * Pattern complexity of a simple literal search.
+     */
+    public static final String SIMPLE = "simple";
+
+    /**
+     * Pattern complexity with classes, bounded repetition and alternation.
+     */
+    public static final String COMPLEX = "complex";
+
+    private static final int TUPLE_COUNT = 4096;
+
+    /**
+     * Generate {@code count} expressions of the given complexity.
+     */
+    public static String[] expressions(String complexity, int count) {
+        String[] expressions = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (SIMPLE.equals(complexity))
+                expressions[i] = ".*EVT" + i + "_.*";
+            else
+                expressions[i] = ".*ERROR.*code=E" + i + "x\\d{2,4}[ ;](timeout|refused)\\s.*";
+        }
+        return expressions;
+    }
+
+    private static String marker(String complexity, int expression) {
+        if (SIMPLE.equals(complexity))
+            return "EVT" + expression + "_";
+        return "ERROR code=E" + expression + "x1234 refused ";
+    }
+
+    /**
+     * Create tuples for injection into {@code inject}.
+     * @param complexity Complexity of the expressions lines may match.
+     * @param expressionCount Number of expressions lines may match.
+     * @param size Length of {@code line}.
+     * @param matchRatio Proportion of lines matching an expression.
+     */
+    public static Tuple[] tuples(StreamingOutput<OutputTuple> inject,
+            String complexity, int expressionCount, int size, double matchRatio) {
+        Random rand = new Random(42);
+        Tuple[] tuples = new Tuple[TUPLE_COUNT];
+        StringBuilder line = new StringBuilder(size);
+        for (int t = 0; t < tuples.length; t++) {
+            line.setLength(0);
+            while (line.length() < size) {
+                line.append((char) ('a' + rand.nextInt(26)));
+                if (rand.nextInt(6) == 0)
+                    line.append(' ');
+            }
+            if (rand.nextDouble() < matchRatio) {
+                String marker = marker(complexity, rand.nextInt(expressionCount));
+                int at = rand.nextInt(Math.max(1, size - marker.length()));
+                line.insert(at, marker);
+            }
+
+            OutputTuple tuple = inject.newTuple();
+            tuple.setInt(0, rand.nextInt(100));
+            tuple.setString(1, line.toString());
+            tuples[t] = tuple;
+        }
+        return tuples;
+    }
+}
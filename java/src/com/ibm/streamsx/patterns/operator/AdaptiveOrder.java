@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
+
+/**
+ * Evaluation order for a set of conditions that are evaluated
+ * in sequence until one terminates the evaluation, such as
+ * an expression matching or a predicate failing.
+ * <P>
+ * A sample of evaluations records each condition's cost and
+ * whether it terminated the evaluation. Periodically the order
+ * is recalculated so that conditions with the lowest cost per
+ * termination are evaluated first, which minimizes the expected
+ * cost per tuple. The order is published as an immutable array
+ * so reading it never takes a lock.
+ * </P>
+ */
+final class AdaptiveOrder implements Runnable {
+
+	/**
+	 * One in {@code SAMPLE_RATE} evaluations is sampled.
+	 */
+	private static final int SAMPLE_RATE = 64;
+
+	private final int count;
+	private final boolean exclusive;
+
+	private final AtomicLong samples = new AtomicLong();
+	private final AtomicLongArray evaluations;
+	private final AtomicLongArray terminations;
+	private final AtomicLongArray nanos;
+
+	private volatile int[] order;
+
+	private ScheduledFuture<?> timer;
+	private Metric[] ranks;
+	private Metric[] averageNanos;
+	private Metric reorders;
+
+	/**
+	 * @param count Number of conditions.
+	 * @param exclusive True if at most one condition can terminate
+	 * any evaluation, in which case termination probability is
+	 * estimated across all sampled evaluations, otherwise conditions
+	 * are assumed to be independent.
+	 */
+	AdaptiveOrder(int count, boolean exclusive) {
+		this.count = count;
+		this.exclusive = exclusive;
+		evaluations = new AtomicLongArray(count);
+		terminations = new AtomicLongArray(count);
+		nanos = new AtomicLongArray(count);
+
+		final int[] initial = new int[count];
+		for (int i = 0; i < count; i++)
+			initial[i] = i;
+		order = initial;
+	}
+
+	/**
+	 * Create metrics showing the current rank and the average
+	 * cost of each condition.
+	 * @param prefix Prefix for metric names, followed by the
+	 * condition's index.
+	 */
+	void createMetrics(OperatorMetrics metrics, String prefix) {
+		ranks = new Metric[count];
+		averageNanos = new Metric[count];
+		for (int i = 0; i < count; i++) {
+			ranks[i] = metrics.createCustomMetric(prefix + i + ".rank",
+					"Position (zero-based) in the evaluation order.", Metric.Kind.GAUGE);
+			averageNanos[i] = metrics.createCustomMetric(prefix + i + ".averageNanos",
+					"Sampled average evaluation time in nanoseconds.", Metric.Kind.GAUGE);
+			ranks[i].setValue(i);
+		}
+		reorders = metrics.createCustomMetric("nReorders",
+				"Number of times the evaluation order changed.", Metric.Kind.COUNTER);
+	}
+
+	/**
+	 * Recalculate the order every {@code period} seconds.
+	 */
+	void start(ScheduledExecutorService scheduler, double period) {
+		final long nanoPeriod = Math.max(1L, (long) (period * 1E9));
+		timer = scheduler.scheduleAtFixedRate(this, nanoPeriod, nanoPeriod, TimeUnit.NANOSECONDS);
+	}
+
+	void close() {
+		if (timer != null)
+			timer.cancel(false);
+	}
+
+	/**
+	 * Discard the sampled statistics and restore the initial
+	 * order, when the conditions have been replaced.
+	 */
+	void reset() {
+		samples.set(0);
+		final int[] initial = new int[count];
+		for (int i = 0; i < count; i++) {
+			evaluations.set(i, 0);
+			terminations.set(i, 0);
+			nanos.set(i, 0);
+			initial[i] = i;
+			if (ranks != null)
+				ranks[i].setValue(i);
+		}
+		order = initial;
+	}
+
+	/**
+	 * Current evaluation order, indexes of the conditions.
+	 * The returned array must not be modified.
+	 */
+	int[] order() {
+		return order;
+	}
+
+	/**
+	 * Should this evaluation be sampled.
+	 */
+	boolean sample() {
+		return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+	}
+
+	/**
+	 * Record a sampled evaluation of a single condition.
+	 */
+	void record(int index, long elapsed, boolean terminated) {
+		evaluations.incrementAndGet(index);
+		nanos.addAndGet(index, elapsed);
+		if (terminated)
+			terminations.incrementAndGet(index);
+	}
+
+	/**
+	 * Record the completion of a sampled evaluation.
+	 */
+	void sampled() {
+		samples.incrementAndGet();
+	}
+
+	/**
+	 * Recalculate the order from the sampled statistics,
+	 * and decay the statistics so the order adapts to changes.
+	 */
+	@Override
+	public void run() {
+		final long sampleCount = samples.get();
+		if (sampleCount == 0)
+			return;
+
+		final double[] score = new double[count];
+		for (int i = 0; i < count; i++) {
+			final long evals = evaluations.get(i);
+			if (evals == 0) {
+				// Never reached, keep its relative position.
+				score[i] = Double.MAX_VALUE;
+				continue;
+			}
+			final double cost = (double) nanos.get(i) / evals;
+			final double p = (double) terminations.get(i) / (exclusive ? sampleCount : evals);
+			score[i] = p == 0.0 ? Double.MAX_VALUE : cost / p;
+			if (averageNanos != null)
+				averageNanos[i].setValue((long) cost);
+		}
+
+		final Integer[] sorted = new Integer[count];
+		for (int i = 0; i < count; i++)
+			sorted[i] = order[i];
+		// Stable, so ties keep the existing order.
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(score[i1], score[i2]);
+			}
+		});
+		final int[] next = new int[count];
+		for (int i = 0; i < count; i++)
+			next[i] = sorted[i];
+
+		if (!Arrays.equals(order, next)) {
+			order = next;
+			if (ranks != null) {
+				for (int r = 0; r < count; r++)
+					ranks[next[r]].setValue(r);
+				reorders.increment();
+			}
+		}
+
+		samples.addAndGet(-(sampleCount / 2));
+		for (int i = 0; i < count; i++) {
+			evaluations.addAndGet(i, -(evaluations.get(i) / 2));
+			terminations.addAndGet(i, -(terminations.get(i) / 2));
+			nanos.addAndGet(i, -(nanos.get(i) / 2));
+		}
+	}
+}
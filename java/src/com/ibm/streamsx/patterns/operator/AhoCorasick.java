@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick search for a set of literals within
+ * a character sequence, determining in a single
+ * pass which of the literals the sequence contains.
+ * <P>
+ * Transitions for ASCII characters are fully resolved
+ * into a DFA, other characters follow the trie and
+ * failure links.
+ * </P>
+ * <P>
+ * Instances are immutable and thread safe.
+ * </P>
+ */
+final class AhoCorasick {
+
+	private static final int ASCII = 128;
+
+	private final int literalCount;
+	private final int[][] ascii;
+	private final List<Map<Character,Integer>> other;
+	private final int[] fail;
+	/**
+	 * Bit set of the literals ending at each state,
+	 * including those reached through failure links.
+	 */
+	private final long[][] output;
+
+	AhoCorasick(String[] literals) {
+		literalCount = literals.length;
+
+		// Build the trie.
+		final List<Map<Character,Integer>> edges = new ArrayList<Map<Character,Integer>>();
+		final List<long[]> outs = new ArrayList<long[]>();
+		edges.add(new HashMap<Character,Integer>());
+		outs.add(null);
+		for (int l = 0; l < literals.length; l++) {
+			int state = 0;
+			for (int i = 0; i < literals[l].length(); i++) {
+				final Character c = literals[l].charAt(i);
+				Integer next = edges.get(state).get(c);
+				if (next == null) {
+					next = edges.size();
+					edges.get(state).put(c, next);
+					edges.add(new HashMap<Character,Integer>());
+					outs.add(null);
+				}
+				state = next;
+			}
+			long[] out = outs.get(state);
+			if (out == null)
+				outs.set(state, out = new long[words()]);
+			out[l >> 6] |= 1L << l;
+		}
+
+		final int n = edges.size();
+		fail = new int[n];
+		ascii = new int[n][];
+		other = new ArrayList<Map<Character,Integer>>(n);
+		for (int i = 0; i < n; i++)
+			other.add(null);
+		output = new long[n][];
+
+		// Breadth first to set failure links, merge outputs
+		// and resolve ASCII transitions.
+		final int[] queue = new int[n];
+		int head = 0, tail = 0;
+		queue[tail++] = 0;
+		while (head != tail) {
+			final int state = queue[head++];
+			final Map<Character,Integer> children = edges.get(state);
+
+			long[] out = outs.get(state);
+			final long[] inherited = state == 0 ? null : output[fail[state]];
+			if (inherited != null) {
+				out = out == null ? inherited.clone() : out;
+				for (int w = 0; w < out.length; w++)
+					out[w] |= inherited[w];
+			}
+			output[state] = out;
+
+			ascii[state] = new int[ASCII];
+			for (char c = 0; c < ASCII; c++) {
+				final Integer child = children.get(c);
+				if (child != null)
+					ascii[state][c] = child;
+				else
+					ascii[state][c] = state == 0 ? 0 : ascii[fail[state]][c];
+			}
+
+			final Map<Character,Integer> nonAscii = new HashMap<Character,Integer>();
+			for (Map.Entry<Character,Integer> edge : children.entrySet()) {
+				final char c = edge.getKey();
+				final int child = edge.getValue();
+				fail[child] = state == 0 ? 0 : next(fail[state], c);
+				queue[tail++] = child;
+				if (c >= ASCII)
+					nonAscii.put(c, child);
+			}
+			other.set(state, nonAscii);
+		}
+	}
+
+	/**
+	 * Number of words required for a bit set of the literals.
+	 */
+	int words() {
+		return (literalCount + 63) >> 6;
+	}
+
+	private int next(int state, final char c) {
+		if (c < ASCII)
+			return ascii[state][c];
+		for (;;) {
+			final Integer next = other.get(state).get(c);
+			if (next != null)
+				return next;
+			if (state == 0)
+				return 0;
+			state = fail[state];
+		}
+	}
+
+	/**
+	 * Scan {@code text} setting the bit in {@code found}
+	 * for each literal (by index) that it contains.
+	 * @param found Bit set of length {@link #words()},
+	 * cleared by this method.
+	 */
+	void scan(final CharSequence text, final long[] found) {
+		for (int w = 0; w < found.length; w++)
+			found[w] = 0L;
+		int state = 0;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			state = next(state, text.charAt(i));
+			final long[] out = output[state];
+			if (out != null) {
+				for (int w = 0; w < out.length; w++)
+					found[w] |= out[w];
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Tracks tuples whose decisions are completed asynchronously,
+ * submitting each tuple once its decision is complete, either in
+ * the order the tuples arrived or in the order their decisions complete.
+ * <P>
+ * At most {@code window} tuples are in flight, once reached the thread
+ * calling {@link #start(Tuple)} waits, providing backpressure.
+ * </P>
+ * <P>
+ * In arrival order each tuple is given a sequence number and a slot in
+ * a reorder buffer. Once its decision is complete the tuple is marked
+ * done and whichever thread completes the tuple at the head of the buffer
+ * submits all consecutive completed tuples. Otherwise the thread completing
+ * a decision submits the tuple directly.
+ * </P>
+ * <P>
+ * An exception failing a decision or thrown submitting a tuple is rethrown
+ * to the next caller of {@link #start(Tuple)} or {@link #drain()}.
+ * A tuple whose decision failed is not submitted.
+ * </P>
+ */
+final class AsyncEvaluator {
+
+	/**
+	 * Submission of tuples with completed decisions.
+	 */
+	interface Submission {
+		/**
+		 * Submit the tuple with its decision. In arrival order called
+		 * by one thread at a time, otherwise called concurrently.
+		 */
+		void submit(Tuple tuple, int decision) throws Exception;
+	}
+
+	private final Submission submission;
+	private final int window;
+	private final Semaphore permits;
+
+	/**
+	 * Reorder buffer, {@code null} when tuples are
+	 * submitted in the order their decisions complete.
+	 */
+	private final AtomicReferenceArray<Completion> slots;
+	private final int mask;
+
+	private final AtomicLong sequence = new AtomicLong();
+	private final ReentrantLock drainLock = new ReentrantLock();
+	private volatile long next;
+
+	private volatile Exception failure;
+
+	/**
+	 * @param window Maximum number of tuples in flight.
+	 * @param ordered True if tuples are submitted in arrival order.
+	 */
+	AsyncEvaluator(int window, boolean ordered, Submission submission) {
+		this.submission = submission;
+		this.window = window;
+		permits = new Semaphore(window);
+		int size = 1;
+		while (size < window)
+			size <<= 1;
+		slots = ordered ? new AtomicReferenceArray<Completion>(size) : null;
+		mask = size - 1;
+	}
+
+	/**
+	 * Start the decision for {@code tuple}, waiting if the
+	 * window of in-flight tuples is full.
+	 * @return Completion to be called once the decision is made.
+	 */
+	Completion start(final Tuple tuple) throws Exception {
+		checkFailure();
+		permits.acquire();
+		final Completion completion = new Completion(tuple);
+		if (slots != null)
+			slots.set((int) sequence.getAndIncrement() & mask, completion);
+		return completion;
+	}
+
+	/**
+	 * Wait until all tuples passed to {@link #start(Tuple)}
+	 * have been submitted or failed.
+	 */
+	void drain() throws Exception {
+		permits.acquire(window);
+		permits.release(window);
+		checkFailure();
+	}
+
+	private void checkFailure() throws Exception {
+		final Exception e = failure;
+		if (e != null) {
+			failure = null;
+			throw e;
+		}
+	}
+
+	private void completed(final Completion completion) {
+		if (slots != null) {
+			completion.done = true;
+			submitCompleted();
+			return;
+		}
+		submit(completion);
+		permits.release();
+	}
+
+	private void submit(final Completion completion) {
+		if (completion.failed)
+			return;
+		try {
+			submission.submit(completion.tuple, completion.decision);
+		} catch (Exception e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Submit completed tuples from the head of the buffer.
+	 * If another thread is submitting then it will see this
+	 * tuple, unless it released the lock before this tuple
+	 * was completed, hence the check after releasing.
+	 */
+	private void submitCompleted() {
+		do {
+			if (!drainLock.tryLock())
+				return;
+			try {
+				Completion completion;
+				while ((completion = slots.get((int) next & mask)) != null && completion.done) {
+					slots.set((int) next & mask, null);
+					next++;
+					submit(completion);
+					permits.release();
+				}
+			} finally {
+				drainLock.unlock();
+			}
+		} while (isHeadDone());
+	}
+
+	private boolean isHeadDone() {
+		final Completion head = slots.get((int) next & mask);
+		return head != null && head.done;
+	}
+
+	/**
+	 * Completion of the decision for a tuple, made by any thread.
+	 * Only the first call to {@link #complete(int)} or
+	 * {@link #fail(Exception)} has any effect.
+	 */
+	final class Completion {
+		private final Tuple tuple;
+		private final AtomicBoolean called = new AtomicBoolean();
+		private int decision;
+		private boolean failed;
+		private volatile boolean done;
+
+		private Completion(Tuple tuple) {
+			this.tuple = tuple;
+		}
+
+		void complete(int decision) {
+			if (!called.compareAndSet(false, true))
+				return;
+			this.decision = decision;
+			completed(this);
+		}
+
+		void fail(Exception e) {
+			if (!called.compareAndSet(false, true))
+				return;
+			failure = e;
+			failed = true;
+			completed(this);
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.StreamingInput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Pattern that filters tuples using decisions that complete
+ * asynchronously, for filters that look up each tuple in an external
+ * store, such as a key-value store or an embedded database.
+ * <P>
+ * For each tuple {@link #filterAsync(Tuple, Decision)} is called, which
+ * starts the lookup and returns, and the lookup later completes the
+ * {@link Decision} from any thread. The thread calling
+ * {@link #process(StreamingInput, Tuple)} is not blocked by the lookup, so
+ * throughput is bounded by the number of lookups in flight rather than
+ * by the latency of a single lookup. By default
+ * {@link #filterAsync(Tuple, Decision)} invokes {@link #filter(Tuple)}
+ * on a thread of the executor returned by {@link #createExecutor(OperatorContext)},
+ * a pool of {@code evaluationThreads} threads, so a blocking lookup
+ * only has to implement {@link #filter(Tuple)}. Subclasses using a client
+ * with its own asynchronous interface override
+ * {@link #filterAsync(Tuple, Decision)} and complete the decision from the
+ * client's callback. A decision may also be completed before
+ * {@link #filterAsync(Tuple, Decision)} returns, for example when
+ * the result is held in a local cache.
+ * </P>
+ * <P>
+ * At most {@code maxInFlight} tuples are waiting for their decision or,
+ * with {@code preserveOrder}, for an earlier tuple. Once reached
+ * processing of further tuples waits, providing backpressure. When
+ * {@code preserveOrder} is {@code true}, the default, tuples are submitted
+ * in the order they arrived, otherwise each tuple is submitted as soon as
+ * its decision completes. Punctuation is forwarded once all earlier
+ * tuples have been submitted.
+ * </P>
+ * <P>
+ * A decision that fails, or an exception thrown by
+ * {@link #filterAsync(Tuple, Decision)}, discards the tuple and the
+ * exception is thrown by the next call to
+ * {@link #process(StreamingInput, Tuple)} or
+ * {@link #processPunctuation(StreamingInput, Punctuation)}.
+ * Every decision must be completed or failed, as punctuation waits for it.
+ * </P>
+ * <P>
+ * The output batching, asynchronous submission and metrics parameters of
+ * {@link Filter} are supported, with {@code evaluationNanos} measuring the
+ * time from starting a lookup to its completion. {@code parallelism},
+ * {@code cacheSize} and batch evaluation are not supported.
+ * </P>
+ */
+public abstract class AsyncFilter extends Filter {
+
+	/**
+	 * Decision for a single tuple, completed by the lookup.
+	 * Only the first call to {@link #complete(boolean)} or
+	 * {@link #fail(Exception)} has any effect.
+	 */
+	public interface Decision {
+		/**
+		 * Complete the decision.
+		 * @param pass {@code true} if the tuple passes the filter, {@code false} otherwise.
+		 */
+		void complete(boolean pass);
+
+		/**
+		 * Fail the decision, the tuple is discarded.
+		 * @param e Exception from the lookup.
+		 */
+		void fail(Exception e);
+	}
+
+	private int maxInFlight = 1024;
+	private boolean preserveOrder = true;
+	private int evaluationThreads = 16;
+
+	private ExecutorService executor;
+	private AsyncEvaluator inFlight;
+
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+		executor = createExecutor(context);
+		inFlight = new AsyncEvaluator(getMaxInFlight(), isPreserveOrder(),
+				new AsyncEvaluator.Submission() {
+			@Override
+			public void submit(Tuple tuple, int decision) throws Exception {
+				AsyncFilter.this.submit(tuple, decision != 0);
+			}
+		});
+	}
+
+	/**
+	 * Create the executor used by {@link #filterAsync(Tuple, Decision)}
+	 * to invoke {@link #filter(Tuple)}. The executor is shut down
+	 * when the operator is shut down.
+	 * <BR>
+	 * This implementation returns a pool of {@code evaluationThreads}
+	 * threads created by the operator's thread factory.
+	 * @param context Context for this operator.
+	 * @return Executor for blocking lookups.
+	 */
+	protected ExecutorService createExecutor(OperatorContext context) {
+		return Executors.newFixedThreadPool(getEvaluationThreads(), context.getThreadFactory());
+	}
+
+	/**
+	 * Start the decision for {@code tuple}, waiting if
+	 * {@code maxInFlight} tuples are already in flight.
+	 * Tuples that pass the filter are submitted to the first
+	 * output port, otherwise to the second output port if it exists.
+	 */
+	@Override
+	public void process(StreamingInput<Tuple> stream, final Tuple tuple)
+			throws Exception {
+		final EvaluationMetrics metrics = evaluationMetrics();
+		final TupleDecision decision = new TupleDecision(inFlight.start(tuple),
+				metrics != null && metrics.sample() ? metrics : null);
+		try {
+			filterAsync(tuple, decision);
+		} catch (Exception e) {
+			decision.fail(e);
+		}
+	}
+
+	/**
+	 * Start the decision for {@code tuple}, completing {@code decision}
+	 * from any thread once it is known. Called by the thread calling
+	 * {@link #process(StreamingInput, Tuple)}, so must not block.
+	 * <BR>
+	 * This implementation invokes {@link #filter(Tuple)} using the
+	 * executor returned by {@link #createExecutor(OperatorContext)}.
+	 * @param tuple Tuple to be filtered.
+	 * @param decision Decision to be completed for {@code tuple}.
+	 * @throws Exception Exception starting the decision.
+	 */
+	protected void filterAsync(final Tuple tuple, final Decision decision) throws Exception {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					decision.complete(filter(tuple));
+				} catch (Exception e) {
+					decision.fail(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits until all in-flight tuples have been submitted
+	 * before the punctuation is processed.
+	 */
+	@Override
+	public void processPunctuation(StreamingInput<Tuple> stream,
+			Punctuation mark) throws Exception {
+		inFlight.drain();
+		super.processPunctuation(stream, mark);
+	}
+
+	@Override
+	public void shutdown() throws Exception {
+		if (executor != null)
+			executor.shutdownNow();
+		super.shutdown();
+	}
+
+	/**
+	 * Decision passed to {@link #filterAsync(Tuple, Decision)},
+	 * timing the lookup when it is sampled for the metrics.
+	 */
+	private static final class TupleDecision implements Decision {
+		private final AsyncEvaluator.Completion completion;
+		private final EvaluationMetrics metrics;
+		private final long start;
+
+		TupleDecision(AsyncEvaluator.Completion completion, EvaluationMetrics metrics) {
+			this.completion = completion;
+			this.metrics = metrics;
+			this.start = metrics == null ? 0 : System.nanoTime();
+		}
+
+		@Override
+		public void complete(boolean pass) {
+			if (metrics != null)
+				metrics.record(System.nanoTime() - start);
+			completion.complete(pass ? 1 : 0);
+		}
+
+		@Override
+		public void fail(Exception e) {
+			completion.fail(e);
+		}
+	}
+
+	/**
+	 * Maximum number of tuples waiting for their decision
+	 * or, when preserving order, for an earlier tuple.
+	 * @return Maximum in-flight tuples.
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	@Parameter(optional=true, description="Maximum number of tuples whose decision is in flight or, with preserveOrder, waiting for an earlier tuple, once reached processing waits. Defaults to 1024.")
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Are tuples submitted in the order they arrived.
+	 * @return {@code true} if arrival order is preserved, {@code false}
+	 * if tuples are submitted as their decisions complete.
+	 */
+	public boolean isPreserveOrder() {
+		return preserveOrder;
+	}
+
+	@Parameter(optional=true, description="If true tuples are submitted in the order they arrived, otherwise as their decisions complete. Defaults to true.")
+	public void setPreserveOrder(boolean preserveOrder) {
+		this.preserveOrder = preserveOrder;
+	}
+
+	/**
+	 * Number of threads invoking {@link #filter(Tuple)}
+	 * for the default {@link #filterAsync(Tuple, Decision)}.
+	 * @return Evaluation threads.
+	 */
+	public int getEvaluationThreads() {
+		return evaluationThreads;
+	}
+
+	@Parameter(optional=true, description="Number of threads performing blocking lookups by invoking filter. Defaults to 16.")
+	public void setEvaluationThreads(int evaluationThreads) {
+		this.evaluationThreads = evaluationThreads;
+	}
+
+	/**
+	 * Check that parameters of {@link Filter} that evaluate
+	 * tuples synchronously are not set.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkAsyncFilterParameters(OperatorContextChecker checker) {
+		OperatorContext context = checker.getOperatorContext();
+		for (String name : new String[] {"parallelism", "parallelWindow",
+				"cacheSize", "evaluationBatchSize", "evaluationBatchTimeout"}) {
+			if (context.getParameterNames().contains(name))
+				checker.setInvalidContext("The " + name + " parameter is not supported by AsyncFilter.", null);
+		}
+	}
+
+	/**
+	 * Check the maximum number of in-flight tuples, at runtime
+	 * as its value may be an expression when compiling.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck(compile=false)
+	public static void checkMaxInFlight(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> maxInFlight = context.getParameterValues("maxInFlight");
+		if (!maxInFlight.isEmpty() && Integer.parseInt(maxInFlight.get(0)) <= 0)
+			checker.setInvalidContext("The maxInFlight parameter must be greater than zero.", null);
+	}
+}
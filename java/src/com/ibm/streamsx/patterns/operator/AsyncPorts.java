@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
+
+/**
+ * Submits tuples to each output port from a thread dedicated to
+ * that port, so that a slow consumer on one port does not delay
+ * submission to the other ports.
+ * <P>
+ * Each port has a bounded lock-free queue drained by its thread,
+ * tuples are submitted to each port in the order they were added.
+ * When a queue is full the {@link OverflowPolicy} determines
+ * whether the caller waits or a tuple is discarded.
+ * The number of queued and discarded tuples for each port are
+ * shown by the {@code portN.queueDepth} and {@code portN.nDropped} metrics.
+ * </P>
+ * <P>
+ * Waiting threads park until they are unparked by the other side, a
+ * port's thread is unparked when a tuple is queued for it, and threads
+ * waiting for space or for the queue to drain are unparked each time
+ * the port's thread completes a tuple. Each side registers before
+ * checking the queue again, so a wake up cannot be missed.
+ * </P>
+ * <P>
+ * An exception thrown submitting a tuple is rethrown to the next caller
+ * of {@link #submit(int, Tuple)} or {@link #flush()}, and the port's
+ * thread continues with the next tuple. An error stops the port's thread,
+ * it is rethrown to every later caller and any queued tuples are not
+ * submitted.
+ * </P>
+ */
+final class AsyncPorts {
+
+	private final Worker[] workers;
+	private final OverflowPolicy policy;
+	private volatile boolean closed;
+
+	/**
+	 * @param ports Output ports, indexed by port number.
+	 * @param capacity Maximum number of tuples queued per port.
+	 */
+	AsyncPorts(List<? extends StreamingOutput<?>> ports, int capacity,
+			OverflowPolicy policy, ThreadFactory threads, OperatorMetrics metrics) {
+		this.policy = policy;
+		workers = new Worker[ports.size()];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(ports.get(i), capacity,
+					metrics.createCustomMetric("port" + i + ".queueDepth",
+							"Number of tuples queued for output port " + i + ".", Metric.Kind.GAUGE),
+					metrics.createCustomMetric("port" + i + ".nDropped",
+							"Number of tuples discarded as the queue for output port " + i + " was full.",
+							Metric.Kind.COUNTER));
+		}
+		for (Worker worker : workers) {
+			worker.thread = threads.newThread(worker);
+			worker.thread.start();
+		}
+	}
+
+	/**
+	 * Queue {@code tuple} for submission to {@code port}.
+	 */
+	void submit(int port, Tuple tuple) throws Exception {
+		final Worker worker = workers[port];
+		worker.checkFailure();
+		final BoundedRing<Tuple> queue = worker.queue;
+		worker.added.incrementAndGet();
+		while (!queue.offer(tuple)) {
+			switch (policy) {
+			case DROP_NEWEST:
+				worker.dropped();
+				return;
+			case DROP_OLDEST:
+				if (queue.poll() != null)
+					worker.dropped();
+				break;
+			default:
+				if (awaitSpace(worker, tuple))
+					worker.wake();
+				return;
+			}
+		}
+		worker.wake();
+	}
+
+	/**
+	 * Wait until {@code tuple} is added to the full queue of {@code worker}.
+	 * @return {@code false} if closed before it was added.
+	 */
+	private boolean awaitSpace(final Worker worker, final Tuple tuple) throws Exception {
+		final Thread current = Thread.currentThread();
+		worker.waiters.add(current);
+		try {
+			while (!worker.queue.offer(tuple)) {
+				if (closed)
+					return false;
+				if (worker.stopped)
+					worker.checkFailure();
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+			return true;
+		} finally {
+			worker.waiters.remove(current);
+		}
+	}
+
+	/**
+	 * Wait until all queued tuples have been submitted.
+	 */
+	void flush() throws Exception {
+		final Thread current = Thread.currentThread();
+		for (Worker worker : workers) {
+			worker.waiters.add(current);
+			try {
+				while (!closed && !worker.stopped
+						&& worker.completed.get() != worker.added.get()) {
+					LockSupport.park(this);
+					if (Thread.interrupted())
+						throw new InterruptedException();
+				}
+			} finally {
+				worker.waiters.remove(current);
+			}
+		}
+		for (Worker worker : workers)
+			worker.checkFailure();
+	}
+
+	/**
+	 * Stop the threads, any queued tuples are not submitted.
+	 */
+	void close() {
+		closed = true;
+		for (Worker worker : workers) {
+			LockSupport.unpark(worker.thread);
+			worker.signal();
+		}
+	}
+
+	private final class Worker implements Runnable {
+		private final StreamingOutput<?> port;
+		private final BoundedRing<Tuple> queue;
+		private final Metric depth;
+		private final Metric dropped;
+
+		/**
+		 * Tuples added and tuples submitted or discarded,
+		 * equal when the queue has been drained.
+		 */
+		final AtomicLong added = new AtomicLong();
+		final AtomicLong completed = new AtomicLong();
+
+		/**
+		 * Threads waiting for space in the queue or for it to drain.
+		 */
+		final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+
+		volatile Thread thread;
+		private volatile boolean waiting;
+
+		/**
+		 * First failure submitting a tuple not yet rethrown,
+		 * an error is never cleared as it stops the thread.
+		 */
+		private volatile Throwable failure;
+		volatile boolean stopped;
+
+		Worker(StreamingOutput<?> port, int capacity, Metric depth, Metric dropped) {
+			this.port = port;
+			this.queue = new BoundedRing<Tuple>(capacity);
+			this.depth = depth;
+			this.dropped = dropped;
+		}
+
+		void dropped() {
+			dropped.increment();
+			completed();
+		}
+
+		private long completed() {
+			final long count = completed.incrementAndGet();
+			signal();
+			return count;
+		}
+
+		/**
+		 * Rethrow any failure submitting a tuple.
+		 */
+		void checkFailure() throws Exception {
+			final Throwable t = failure;
+			if (t == null)
+				return;
+			if (t instanceof Exception) {
+				failure = null;
+				throw (Exception) t;
+			}
+			if (t instanceof Error)
+				throw (Error) t;
+			throw new Exception(t);
+		}
+
+		/**
+		 * Wake this port's thread if it is waiting for a tuple.
+		 */
+		void wake() {
+			if (waiting)
+				LockSupport.unpark(thread);
+		}
+
+		/**
+		 * Wake threads waiting for space or for the queue to drain,
+		 * they remain registered until they stop waiting.
+		 */
+		void signal() {
+			if (waiters.isEmpty())
+				return;
+			for (Thread waiter : waiters)
+				LockSupport.unpark(waiter);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					Tuple tuple = queue.poll();
+					if (tuple == null) {
+						depth.setValue(0);
+						waiting = true;
+						tuple = queue.poll();
+						if (tuple == null) {
+							LockSupport.park(this);
+							waiting = false;
+							continue;
+						}
+						waiting = false;
+					}
+					try {
+						port.submit(tuple);
+					} catch (Exception e) {
+						if (failure == null)
+							failure = e;
+					} catch (Throwable t) {
+						failure = t;
+						completed();
+						return;
+					}
+					if ((completed() & 0x3F) == 0)
+						depth.setValue(queue.size());
+				}
+			} finally {
+				stopped = true;
+				signal();
+			}
+		}
+	}
+}
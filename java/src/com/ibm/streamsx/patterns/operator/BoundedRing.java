@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue backed by a ring buffer, supporting
+ * multiple producers and multiple consumers.
+ * <P>
+ * Each slot carries a sequence number that tells producers and
+ * consumers whether the slot is free for the current lap of the
+ * ring, so the only contended operations are the compare-and-set
+ * of the head or tail position (D. Vyukov's bounded MPMC queue).
+ * </P>
+ */
+final class BoundedRing<E> {
+
+	private final int mask;
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * @param capacity Minimum capacity, rounded up to a power of two.
+	 */
+	BoundedRing(int capacity) {
+		int size = 2;
+		while (size < capacity)
+			size <<= 1;
+		mask = size - 1;
+		slots = new AtomicReferenceArray<E>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+	}
+
+	/**
+	 * Add {@code element} to the tail of the queue.
+	 * @return {@code false} if the queue is full.
+	 */
+	boolean offer(final E element) {
+		long pos = tail.get();
+		for (;;) {
+			final int index = (int) pos & mask;
+			final long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slots.lazySet(index, element);
+					sequences.set(index, pos + 1);
+					return true;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Remove the element at the head of the queue.
+	 * @return Head of the queue, {@code null} if the queue is empty.
+	 */
+	E poll() {
+		long pos = head.get();
+		for (;;) {
+			final int index = (int) pos & mask;
+			final long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					final E element = slots.get(index);
+					slots.lazySet(index, null);
+					sequences.set(index, pos + mask + 1);
+					return element;
+				}
+				pos = head.get();
+			} else if (diff < 0) {
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Approximate number of elements in the queue.
+	 */
+	int size() {
+		return (int) Math.max(0, tail.get() - head.get());
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+/**
+ * Character sequence that counts the characters read from it,
+ * bounding the work a regular expression {@code Matcher} can
+ * perform on a single sequence.
+ * <P>
+ * A backtracking matcher reads characters repeatedly, so the number
+ * of reads is a measure of the matching work, independent of the
+ * expression. Once more than {@code budget} characters have been
+ * read {@link #EXCEEDED} is thrown, abandoning the match.
+ * </P>
+ * <P>
+ * An instance is reset to each sequence in turn without allocation,
+ * so is not thread safe.
+ * </P>
+ */
+final class BudgetedSequence implements CharSequence {
+
+	/**
+	 * Thrown when the budget is exceeded, a single instance
+	 * without a stack trace as it is used for control flow.
+	 */
+	static final BudgetExceededException EXCEEDED = new BudgetExceededException();
+
+	private final long budget;
+	private CharSequence sequence;
+	private long remaining;
+
+	/**
+	 * @param budget Number of characters that may be read
+	 * after each call to {@link #reset(CharSequence)}.
+	 */
+	BudgetedSequence(long budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Reset to {@code sequence} with the full budget.
+	 * @return This sequence.
+	 */
+	BudgetedSequence reset(CharSequence sequence) {
+		this.sequence = sequence;
+		this.remaining = budget;
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return sequence.length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (--remaining < 0)
+			throw EXCEEDED;
+		return sequence.charAt(index);
+	}
+
+	/**
+	 * Returns the unbudgeted subsequence, only used
+	 * to extract groups once matching is complete.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return sequence.subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return sequence.toString();
+	}
+
+	/**
+	 * Indicates the budget of a {@link BudgetedSequence} was exceeded.
+	 */
+	static final class BudgetExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private BudgetExceededException() {
+			super("Evaluation budget exceeded", null, false, false);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.nio.ByteBuffer;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.types.Blob;
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * Character sequence view over bytes, decoding each byte as
+ * an ISO-8859-1 (Latin-1) character, which for ASCII data is
+ * the same as UTF-8 decoding.
+ * <P>
+ * The bytes are not copied, so a view can be reset to the
+ * bytes of each tuple in turn without any allocation. A view
+ * must not be used after the bytes it is reset to are modified.
+ * Instances are not thread safe.
+ * </P>
+ */
+public final class ByteSequence implements CharSequence {
+
+	private byte[] array;
+	private ByteBuffer buffer;
+	private int offset;
+	private int length;
+
+	/**
+	 * Reset this view to the {@code rstring} or {@code blob} attribute
+	 * at {@code index}. For a {@code ustring} attribute its {@code String}
+	 * value is returned and this view is not modified.
+	 * @param tuple Tuple containing the attribute.
+	 * @param index Index of the attribute.
+	 * @return This view or the attribute's {@code String} value.
+	 */
+	public CharSequence reset(Tuple tuple, int index) {
+		final Object value = tuple.getObject(index);
+		if (value instanceof RString)
+			return reset(((RString) value).getData());
+		if (value instanceof Blob)
+			return reset(((Blob) value).getByteBuffer());
+		return tuple.getString(index);
+	}
+
+	/**
+	 * Reset this view to all the bytes of {@code data}.
+	 * @return This view.
+	 */
+	public ByteSequence reset(byte[] data) {
+		return reset(data, 0, data.length);
+	}
+
+	/**
+	 * Reset this view to {@code length} bytes of
+	 * {@code data} starting at {@code offset}.
+	 * @return This view.
+	 */
+	public ByteSequence reset(byte[] data, int offset, int length) {
+		this.array = data;
+		this.buffer = null;
+		this.offset = offset;
+		this.length = length;
+		return this;
+	}
+
+	/**
+	 * Reset this view to the remaining bytes of {@code data}.
+	 * The position of {@code data} is not modified.
+	 * @return This view.
+	 */
+	public ByteSequence reset(ByteBuffer data) {
+		if (data.hasArray())
+			return reset(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		this.array = null;
+		this.buffer = data;
+		this.offset = data.position();
+		this.length = data.remaining();
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		if (array != null)
+			return (char) (array[offset + index] & 0xFF);
+		return (char) (buffer.get(offset + index) & 0xFF);
+	}
+
+	/**
+	 * Returns a new view, sharing the bytes of this view.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException();
+		final ByteSequence sub = new ByteSequence();
+		sub.array = array;
+		sub.buffer = buffer;
+		sub.offset = offset + start;
+		sub.length = end - start;
+		return sub;
+	}
+
+	/**
+	 * Copy the bytes from {@code start} (inclusive)
+	 * to {@code end} (exclusive) of this view.
+	 */
+	byte[] toBytes(int start, int end) {
+		if (start < 0 || end > length || start > end)
+			throw new IndexOutOfBoundsException();
+		final byte[] bytes = new byte[end - start];
+		if (array != null) {
+			System.arraycopy(array, offset + start, bytes, 0, bytes.length);
+		} else {
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = buffer.get(offset + start + i);
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		final char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = charAt(i);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Filter that is a conjunction of components, a tuple passes
+ * the filter only if it passes every component.
+ * <P>
+ * Components are evaluated in sequence until one rejects the tuple,
+ * so the order they are evaluated in determines the cost of the filter
+ * but not its result. A sample of tuples records the cost of each
+ * component and how often it rejects tuples, and every {@code reorderPeriod}
+ * seconds the components are reordered so that those with the lowest
+ * cost per rejection are evaluated first, minimizing the expected cost
+ * per tuple. Reading the order does not lock. The position of each
+ * component in the order is shown by its {@code component<i>.rank}
+ * metric, where {@code i} is its index in the list returned by
+ * {@link #getComponents()}, with its sampled average cost shown by
+ * {@code component<i>.averageNanos}.
+ * </P>
+ * <P>
+ * Components must not have side effects, as a component
+ * is not evaluated once an earlier one rejects the tuple.
+ * </P>
+ */
+public abstract class CompositeFilter extends Filter {
+
+	/**
+	 * A single condition of a {@link CompositeFilter}.
+	 */
+	public interface Component {
+		/**
+		 * Test a tuple against this condition.
+		 * @param tuple Tuple to be filtered.
+		 * @return {@code true} if the tuple passes this condition.
+		 * @throws Exception Exception testing the tuple.
+		 */
+		boolean test(Tuple tuple) throws Exception;
+	}
+
+	private double reorderPeriod = 10.0;
+
+	private Component[] components;
+	private AdaptiveOrder order;
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Obtains the components and starts the periodic reordering.
+	 * </P>
+	 */
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+		final List<Component> list = getComponents();
+		components = list.toArray(new Component[list.size()]);
+		order = new AdaptiveOrder(components.length, false);
+		order.createMetrics(context.getMetrics(), "component");
+		order.start(context.getScheduledExecutorService(), getReorderPeriod());
+	}
+
+	@Override
+	public void shutdown() throws Exception {
+		if (order != null)
+			order.close();
+		super.shutdown();
+	}
+
+	/**
+	 * Evaluate the components in the current order.
+	 * @return {@code true} if {@code tuple} passes all the components.
+	 */
+	@Override
+	protected boolean filter(Tuple tuple) throws Exception {
+		if (order.sample())
+			return sampledFilter(tuple);
+
+		final Component[] cs = components;
+		for (int i : order.order()) {
+			if (!cs[i].test(tuple))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluate the components in the current order,
+	 * recording the cost and result of each component.
+	 */
+	private boolean sampledFilter(final Tuple tuple) throws Exception {
+		final Component[] cs = components;
+		try {
+			for (int i : order.order()) {
+				final long start = System.nanoTime();
+				final boolean pass = cs[i].test(tuple);
+				order.record(i, System.nanoTime() - start, !pass);
+				if (!pass)
+					return false;
+			}
+			return true;
+		} finally {
+			order.sampled();
+		}
+	}
+
+	/**
+	 * Components of the filter.
+	 * <BR>
+	 * This is called once, during {@link #initialize(OperatorContext)}.
+	 * The index of a component in the returned list identifies its metrics.
+	 * @return Components a tuple must pass to pass the filter.
+	 */
+	protected abstract List<Component> getComponents();
+
+	/**
+	 * Period in seconds between recalculations of the
+	 * evaluation order of the components.
+	 * @return Reorder period in seconds.
+	 */
+	public double getReorderPeriod() {
+		return reorderPeriod;
+	}
+
+	@Parameter(optional=true, description="Period in seconds between recalculations of the order the components are evaluated in. Defaults to 10.0.")
+	public void setReorderPeriod(double reorderPeriod) {
+		this.reorderPeriod = reorderPeriod;
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
+
+/**
+ * Bounded cache of {@code long} decisions keyed by an immutable key,
+ * using CLOCK (second chance) eviction. Any {@code long} value is a valid
+ * decision, a miss is returned as a {@code null} entry.
+ * <P>
+ * Lookups do not lock, a hit only writes to the entry
+ * when setting its reference bit for the first time.
+ * Insertion and eviction are serialized by a lock that is only
+ * tried, if another thread is inserting the decision is not cached.
+ * </P>
+ * <P>
+ * {@link #clear()} discards all decisions when the rules they were
+ * made by change. A decision made before the clear, and so possibly by
+ * the old rules, is not cached as it is inserted with the generation
+ * that was current when the decision was started.
+ * </P>
+ */
+final class DecisionCache {
+
+	private final ConcurrentHashMap<Object,Entry> map;
+	private final Entry[] clock;
+	private final ReentrantLock insertLock = new ReentrantLock();
+	private int size;
+	private int hand;
+	private volatile long generation;
+
+	private final Metric hits;
+	private final Metric misses;
+
+	DecisionCache(int capacity, OperatorMetrics metrics) {
+		map = new ConcurrentHashMap<Object,Entry>(capacity * 4 / 3 + 1);
+		clock = new Entry[capacity];
+		hits = metrics.createCustomMetric("nCacheHits",
+				"Number of decisions returned from the cache.", Metric.Kind.COUNTER);
+		misses = metrics.createCustomMetric("nCacheMisses",
+				"Number of decisions not found in the cache.", Metric.Kind.COUNTER);
+	}
+
+	/**
+	 * Get the cached decision for {@code key}.
+	 * @return Entry holding the cached decision,
+	 * or {@code null} if {@code key} is not cached.
+	 */
+	Entry get(Object key) {
+		final Entry entry = map.get(key);
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		if (!entry.referenced)
+			entry.referenced = true;
+		hits.increment();
+		return entry;
+	}
+
+	/**
+	 * Current generation, to be passed to {@link #put(Object, long, long)}
+	 * for a decision started after this call.
+	 */
+	long generation() {
+		return generation;
+	}
+
+	/**
+	 * Cache {@code decision} for {@code key}, evicting
+	 * an entry if the cache is full. The decision is not cached if
+	 * the cache has been cleared since {@code decisionGeneration}.
+	 */
+	void put(Object key, long decision, long decisionGeneration) {
+		if (!insertLock.tryLock())
+			return;
+		try {
+			if (decisionGeneration != generation || map.containsKey(key))
+				return;
+			final int slot;
+			if (size < clock.length) {
+				slot = size++;
+			} else {
+				while (clock[hand].referenced) {
+					clock[hand].referenced = false;
+					hand = (hand + 1) % clock.length;
+				}
+				slot = hand;
+				hand = (hand + 1) % clock.length;
+				map.remove(clock[slot].key);
+			}
+			final Entry entry = new Entry(key, decision);
+			clock[slot] = entry;
+			map.put(key, entry);
+		} finally {
+			insertLock.unlock();
+		}
+	}
+
+	/**
+	 * Discard all cached decisions.
+	 */
+	void clear() {
+		insertLock.lock();
+		try {
+			generation++;
+			map.clear();
+			Arrays.fill(clock, null);
+			size = 0;
+			hand = 0;
+		} finally {
+			insertLock.unlock();
+		}
+	}
+
+	/**
+	 * Cached decision for a key.
+	 */
+	static final class Entry {
+		private final Object key;
+		final long decision;
+		volatile boolean referenced;
+
+		Entry(Object key, long decision) {
+			this.key = key;
+			this.decision = decision;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Filter that suppresses duplicate tuples, tuples whose key attributes
+ * are equal to those of a recent tuple. The first tuple with a key
+ * passes the filter, duplicates are submitted to the second output port
+ * if it exists, otherwise they are discarded.
+ * <P>
+ * A 64-bit fingerprint of the attributes named by {@code keyAttributes}
+ * is remembered, rather than the key itself, so a tuple is taken as
+ * a duplicate of a different key with a probability of about
+ * {@code n/2^64} for {@code n} remembered keys.
+ * </P>
+ * <P>
+ * Fingerprints are held in {@code generations} tables that are rotated,
+ * discarding the oldest, so memory is fixed at initialization, about
+ * {@code 16 * capacity * (generations + 1) / (generations - 1)} bytes,
+ * including a spare table, and at most twice that. A discarded table is
+ * cleared in the background, not by the thread processing tuples. At least the {@code capacity} most recent distinct
+ * keys are remembered. When {@code windowTime} is set keys are also
+ * remembered for at least {@code windowTime} seconds, and at most
+ * {@code windowTime * generations / (generations - 1)} seconds,
+ * unless more than {@code capacity} distinct keys arrive in that time.
+ * More generations reduce the time and count by which the window may
+ * be exceeded, at a small cost per tuple.
+ * </P>
+ */
+public class DedupFilter extends Filter {
+
+	private List<String> keyAttributes;
+	private int capacity;
+	private double windowTime;
+	private int generations = 4;
+
+	private KeyFingerprint key;
+	private RotatingFingerprintSet seen;
+	private ScheduledFuture<?> rotation;
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Allocates the fingerprint tables and, when {@code windowTime}
+	 * is set, schedules their rotation.
+	 * </P>
+	 */
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+		key = new KeyFingerprint(context.getStreamingInputs().get(0).getStreamSchema(),
+				getKeyAttributes());
+		seen = new RotatingFingerprintSet(getCapacity(), getGenerations(),
+				context.getScheduledExecutorService());
+
+		if (getWindowTime() > 0) {
+			final long period = Math.max(1L, (long) (getWindowTime() * 1E9 / (getGenerations() - 1)));
+			rotation = context.getScheduledExecutorService().scheduleAtFixedRate(new Runnable() {
+				@Override
+				public void run() {
+					seen.rotate();
+				}
+			}, period, period, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Returns {@code true} if no recent tuple had the same key.
+	 */
+	@Override
+	protected boolean filter(Tuple tuple) throws Exception {
+		return seen.add(key.fingerprint(tuple));
+	}
+
+	@Override
+	public void shutdown() throws Exception {
+		if (rotation != null)
+			rotation.cancel(false);
+		super.shutdown();
+	}
+
+	/**
+	 * Names of the key attributes.
+	 * @return Names of the attributes that identify duplicates.
+	 */
+	public List<String> getKeyAttributes() {
+		return keyAttributes;
+	}
+
+	@Parameter(cardinality=-1, description="Names of the input attributes that together identify duplicate tuples.")
+	public void setKeyAttributes(List<String> keyAttributes) {
+		this.keyAttributes = keyAttributes;
+	}
+
+	/**
+	 * Minimum number of distinct keys remembered.
+	 * @return Number of keys.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Parameter(description="Minimum number of distinct recent keys remembered, determines the memory used.")
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Minimum time in seconds a key is remembered for.
+	 * @return Window time in seconds, {@code 0} if keys are
+	 * remembered only by count.
+	 */
+	public double getWindowTime() {
+		return windowTime;
+	}
+
+	@Parameter(optional=true, description="Time in seconds keys are remembered for, unless more than capacity distinct keys arrive in that time. Defaults to 0, keys are remembered until capacity more recent distinct keys have arrived.")
+	public void setWindowTime(double windowTime) {
+		this.windowTime = windowTime;
+	}
+
+	/**
+	 * Number of generations of fingerprints.
+	 * @return Number of generations.
+	 */
+	public int getGenerations() {
+		return generations;
+	}
+
+	@Parameter(optional=true, description="Number of generations the remembered keys are divided into, at least 2. Defaults to 4.")
+	public void setGenerations(int generations) {
+		this.generations = generations;
+	}
+
+	/**
+	 * Check that the key attributes exist in the input schema.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkKeyAttributes(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> keys = context.getParameterValues("keyAttributes");
+		checker.checkRequiredAttributes(context.getStreamingInputs().get(0),
+				keys.toArray(new String[keys.size()]));
+	}
+
+	/**
+	 * Check the capacity and number of generations, at runtime
+	 * as their values may be expressions when compiling.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck(compile=false)
+	public static void checkWindow(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> capacity = context.getParameterValues("capacity");
+		if (!capacity.isEmpty() && Integer.parseInt(capacity.get(0)) <= 0)
+			checker.setInvalidContext("The capacity parameter must be greater than zero.", null);
+		List<String> generations = context.getParameterValues("generations");
+		if (!generations.isEmpty() && Integer.parseInt(generations.get(0)) < 2)
+			checker.setInvalidContext("The generations parameter must be at least 2.", null);
+	}
+}
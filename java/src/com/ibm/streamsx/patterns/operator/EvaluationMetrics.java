@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
+
+/**
+ * Custom metrics for an operator that evaluates each tuple
+ * to determine the output port it is submitted to.
+ * <P>
+ * Counts of tuples submitted to each port and of discarded tuples
+ * are maintained for every tuple. The time taken by the evaluation
+ * is sampled and recorded in a histogram with logarithmic buckets,
+ * each power of two split into four, so recorded values are within
+ * 25% of the actual value. Once a second the 50th and 99th percentiles
+ * and the maximum of the evaluations sampled in that period are
+ * published as the {@code evaluationNanos.p50}, {@code evaluationNanos.p99}
+ * and {@code evaluationNanos.max} metrics.
+ * </P>
+ */
+final class EvaluationMetrics implements Runnable {
+
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = 62 * SUB_BUCKETS;
+	private static final long PUBLISH_PERIOD = 1;
+
+	private final int sampleRate;
+	private final Metric[] submitted;
+	private final Metric discarded;
+
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+	private final Metric p50;
+	private final Metric p99;
+	private final Metric maxNanos;
+
+	private ScheduledFuture<?> timer;
+
+	/**
+	 * @param ports Number of output ports.
+	 * @param sampleRate One in {@code sampleRate} evaluations is timed.
+	 */
+	EvaluationMetrics(OperatorMetrics metrics, int ports, int sampleRate) {
+		this.sampleRate = sampleRate;
+		submitted = new Metric[ports];
+		for (int i = 0; i < ports; i++)
+			submitted[i] = metrics.createCustomMetric("port" + i + ".nSubmitted",
+					"Number of tuples submitted to output port " + i + ".", Metric.Kind.COUNTER);
+		discarded = metrics.createCustomMetric("nDiscarded",
+				"Number of tuples not submitted to any output port.", Metric.Kind.COUNTER);
+		p50 = metrics.createCustomMetric("evaluationNanos.p50",
+				"Sampled median evaluation time in nanoseconds.", Metric.Kind.GAUGE);
+		p99 = metrics.createCustomMetric("evaluationNanos.p99",
+				"Sampled 99th percentile evaluation time in nanoseconds.", Metric.Kind.GAUGE);
+		maxNanos = metrics.createCustomMetric("evaluationNanos.max",
+				"Sampled maximum evaluation time in nanoseconds.", Metric.Kind.GAUGE);
+	}
+
+	/**
+	 * Publish the evaluation time metrics periodically.
+	 */
+	void start(ScheduledExecutorService scheduler) {
+		timer = scheduler.scheduleAtFixedRate(this, PUBLISH_PERIOD, PUBLISH_PERIOD, TimeUnit.SECONDS);
+	}
+
+	void close() {
+		if (timer != null)
+			timer.cancel(false);
+	}
+
+	void submitted(int port) {
+		submitted[port].increment();
+	}
+
+	void discarded() {
+		discarded.increment();
+	}
+
+	/**
+	 * Should this evaluation be timed.
+	 */
+	boolean sample() {
+		return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+	}
+
+	/**
+	 * Record the time taken by a sampled evaluation.
+	 */
+	void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		histogram.incrementAndGet(bucket(nanos));
+		long current;
+		while (nanos > (current = max.get())) {
+			if (max.compareAndSet(current, nanos))
+				break;
+		}
+	}
+
+	/**
+	 * Publish the percentiles for the evaluations
+	 * sampled since the last publication.
+	 */
+	@Override
+	public void run() {
+		final long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int b = 0; b < BUCKETS; b++)
+			total += counts[b] = histogram.getAndSet(b, 0);
+		final long periodMax = max.getAndSet(0);
+		if (total == 0)
+			return;
+
+		p50.setValue(percentile(counts, total, 0.50));
+		p99.setValue(percentile(counts, total, 0.99));
+		maxNanos.setValue(periodMax);
+	}
+
+	private static long percentile(long[] counts, long total, double p) {
+		final long rank = (long) Math.ceil(total * p);
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++) {
+			seen += counts[b];
+			if (seen >= rank)
+				return upperBound(b);
+		}
+		return upperBound(counts.length - 1);
+	}
+
+	/**
+	 * Values below four have their own bucket, otherwise
+	 * the bucket is determined by the highest set bit
+	 * and the two bits following it.
+	 */
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + sub);
+	}
+
+	/**
+	 * Largest value recorded in {@code bucket}.
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		final int exponent = bucket / SUB_BUCKETS + 1;
+		final long width = 1L << (exponent - 2);
+		return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+	}
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Filter based upon a predicate expression over the input attributes,
+ * for example {@code a > 5 && startsWith(b, "x")}.
+ * <P>
+ * The expression is compiled once, during initialization, into an
+ * evaluator that reads attributes by index using their primitive
+ * getters. The expression is checked against the input schema
+ * when the application is compiled. Supported syntax is attribute
+ * names, numeric, string and boolean literals, arithmetic
+ * ({@code + - * / %}), comparison ({@code == != < <= > >=}) and
+ * logical ({@code && || !}) operators, and the string functions
+ * {@code length(s)}, {@code startsWith(s, prefix)},
+ * {@code endsWith(s, suffix)} and {@code contains(s, text)}.
+ * </P>
+ */
+public class ExpressionFilter extends Filter {
+
+	private String predicate;
+
+	private PredicateCompiler.Predicate compiled;
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Compiles the predicate against the input schema.
+	 * </P>
+	 */
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+		compiled = PredicateCompiler.compile(getPredicate(),
+				context.getStreamingInputs().get(0).getStreamSchema());
+	}
+
+	/**
+	 * Evaluate the predicate against {@code tuple}.
+	 * @return Result of the predicate.
+	 */
+	@Override
+	protected boolean filter(Tuple tuple) throws Exception {
+		return compiled.test(tuple);
+	}
+
+	/**
+	 * Predicate tuples must satisfy to pass the filter.
+	 * @return Predicate expression.
+	 */
+	public String getPredicate() {
+		return predicate;
+	}
+
+	@Parameter(description="Predicate expression over the input attributes, tuples for which it is true pass the filter.")
+	public void setPredicate(String predicate) {
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Check that the predicate is valid for the input schema.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkPredicate(OperatorContextChecker checker) {
+		OperatorContext context = checker.getOperatorContext();
+		List<String> predicates = context.getParameterValues("predicate");
+		ExpressionSplit.checkPredicates(checker, predicates);
+	}
+}
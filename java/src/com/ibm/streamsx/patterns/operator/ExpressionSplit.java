@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Split based upon a list of predicate expressions over the input
+ * attributes. The predicates are evaluated in order and the index
+ * of the first that is true is the destination index, as returned by
+ * {@link #destination(Tuple)}. Tuples for which no predicate is true
+ * are discarded.
+ * <P>
+ * Predicates are compiled once, during initialization, see
+ * {@link ExpressionFilter} for the supported syntax.
+ * </P>
+ */
+public class ExpressionSplit extends Split {
+
+	private List<String> predicates;
+
+	private PredicateCompiler.Predicate[] compiled;
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Compiles the predicates against the input schema.
+	 * </P>
+	 */
+	@Override
+	public void initialize(OperatorContext context) throws Exception {
+		super.initialize(context);
+		final StreamSchema schema = context.getStreamingInputs().get(0).getStreamSchema();
+		compiled = new PredicateCompiler.Predicate[predicates.size()];
+		for (int i = 0; i < compiled.length; i++)
+			compiled[i] = PredicateCompiler.compile(predicates.get(i), schema);
+	}
+
+	/**
+	 * Evaluate the predicates in order against {@code tuple}.
+	 * @return Index of the first predicate that is true,
+	 * {@code -1} if none are true.
+	 */
+	@Override
+	protected int destination(Tuple tuple) throws Exception {
+		final PredicateCompiler.Predicate[] compiled = this.compiled;
+		for (int i = 0; i < compiled.length; i++) {
+			if (compiled[i].test(tuple))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Predicates determining the destination of each tuple.
+	 * @return Predicate expressions.
+	 */
+	public List<String> getPredicates() {
+		return predicates;
+	}
+
+	@Parameter(cardinality=-1, description="Predicate expressions over the input attributes, the index of the first that is true determines the output port.")
+	public void setPredicates(List<String> predicates) {
+		this.predicates = predicates;
+	}
+
+	/**
+	 * Check that the predicates are valid for the input schema.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkPredicates(OperatorContextChecker checker) {
+		OperatorContext context = checker.getOperatorContext();
+		checkPredicates(checker, context.getParameterValues("predicates"));
+	}
+
+	static void checkPredicates(OperatorContextChecker checker, List<String> predicates) {
+		final StreamSchema schema = checker.getOperatorContext()
+				.getStreamingInputs().get(0).getStreamSchema();
+		for (String predicate : predicates) {
+			try {
+				PredicateCompiler.compile(predicate, schema);
+			} catch (IllegalArgumentException e) {
+				checker.setInvalidContext(e.getMessage(), null);
+			}
+		}
+	}
+}
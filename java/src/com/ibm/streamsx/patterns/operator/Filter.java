@@ -4,9 +4,12 @@
  *******************************************************************************/
 package com.ibm.streamsx.patterns.operator;
 
+import java.util.BitSet;
+
 import com.ibm.streams.operator.AbstractOperator;
 import com.ibm.streams.operator.OperatorContext;
 import com.ibm.streams.operator.StreamingData;
+import com.ibm.streams.operator.StreamingData.Punctuation;
 import com.ibm.streams.operator.StreamingInput;
 import com.ibm.streams.operator.StreamingOutput;
 import com.ibm.streams.operator.Tuple;
@@ -17,6 +20,7 @@ import com.ibm.streams.operator.model.InputPorts;
 import com.ibm.streams.operator.model.OutputPortSet;
 import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
 import com.ibm.streams.operator.model.OutputPorts;
+import com.ibm.streams.operator.model.Parameter;
 
 /**
  * Pattern that filters tuples.
@@ -27,7 +31,67 @@ import com.ibm.streams.operator.model.OutputPorts;
  * <P>
  * The schema of the first two output ports must exactly
  * match the schema of the input port.
- *
+ * <P>
+ * When the {@code batchSize} parameter is greater than one
+ * tuples are buffered per output port and submitted once
+ * {@code batchSize} tuples are buffered, or {@code batchTimeout}
+ * seconds have passed, whichever comes first. All buffered tuples
+ * are submitted before punctuation is forwarded. Batching does not
+ * reduce the cost of submitting each tuple, as a batch is still
+ * submitted one tuple at a time, it only groups submissions into
+ * bursts at the cost of delaying each tuple by up to {@code batchTimeout}.
+ * </P>
+ * <P>
+ * When the {@code cacheSize} parameter is greater than zero the
+ * result of {@link #filter(Tuple)} is cached against the key returned
+ * by {@link #getCacheKey(Tuple)}, for up to {@code cacheSize} keys.
+ * Cache effectiveness is shown by the {@code nCacheHits} and
+ * {@code nCacheMisses} metrics.
+ * </P>
+ * <P>
+ * When the {@code metricsSampling} parameter is greater than zero
+ * the number of tuples submitted to each port ({@code port0.nSubmitted}
+ * and {@code port1.nSubmitted}) and discarded ({@code nDiscarded}) are
+ * counted, and one in {@code metricsSampling} invocations of
+ * {@link #filter(Tuple)} is timed, with the percentiles published as the
+ * {@code evaluationNanos.p50}, {@code evaluationNanos.p99} and
+ * {@code evaluationNanos.max} metrics.
+ * </P>
+ * <P>
+ * When the {@code asyncQueueSize} parameter is greater than zero each
+ * output port has a queue of up to {@code asyncQueueSize} tuples drained
+ * by a thread dedicated to the port, so that a slow consumer of one port
+ * does not delay the other port. {@code asyncOverflow} determines whether
+ * submission waits ({@code BLOCK}, the default), or discards the tuple
+ * being submitted ({@code DROP_NEWEST}) or the oldest queued tuple
+ * ({@code DROP_OLDEST}) when a queue is full. Punctuation is forwarded once
+ * all queued tuples have been submitted. A failure submitting a queued
+ * tuple is thrown by the next submission or punctuation. Queue depths are
+ * shown by the {@code portN.queueDepth} metrics and discarded tuples by
+ * {@code portN.nDropped}.
+ * Asynchronous submission cannot be combined with {@code batchSize}.
+ * </P>
+ * <P>
+ * When the {@code parallelism} parameter is greater than one
+ * {@link #filter(Tuple)} is invoked concurrently by {@code parallelism}
+ * threads, for filters that are expensive to evaluate. Tuples are
+ * still submitted in the order they arrived, with at most
+ * {@code parallelWindow} tuples being evaluated or waiting for an
+ * earlier tuple, once reached processing of further tuples waits.
+ * Punctuation is forwarded once all earlier tuples have been submitted.
+ * {@link #filter(Tuple)} must be thread safe to use parallel evaluation.
+ * </P>
+ * <P>
+ * When the {@code evaluationBatchSize} parameter is greater than one
+ * input tuples are buffered and evaluated together by
+ * {@link #filterBatch(Tuple[], int, BitSet)} once {@code evaluationBatchSize}
+ * tuples are buffered, or {@code evaluationBatchTimeout} seconds have
+ * passed, whichever comes first. All buffered tuples are evaluated before
+ * punctuation is forwarded. Subclasses can override
+ * {@link #filterBatch(Tuple[], int, BitSet)} to evaluate a batch in a
+ * single loop, for example over primitive attribute values. Batch evaluation
+ * cannot be combined with {@code parallelism} or {@code cacheSize}.
+ * </P>
  */
 
 @InputPorts(@InputPortSet(cardinality=1,id="input", description="Tuples to be filtered."))
@@ -39,9 +103,27 @@ import com.ibm.streams.operator.model.OutputPorts;
 })
 public abstract class Filter extends AbstractOperator {
 	
+	private int batchSize = 1;
+	private double batchTimeout = 0.01;
+	private int cacheSize;
+	private int metricsSampling;
+	private int asyncQueueSize;
+	private OverflowPolicy asyncOverflow = OverflowPolicy.BLOCK;
+	private int parallelism;
+	private int parallelWindow = 1024;
+	private int evaluationBatchSize = 1;
+	private double evaluationBatchTimeout = 0.01;
+	
 	private StreamingOutput<?> matchPort;
 	private StreamingOutput<?> notMatchPort;
 	
+	private OutputBatches batches;
+	private AsyncPorts async;
+	private DecisionCache cache;
+	private EvaluationMetrics metrics;
+	private OrderedEvaluator parallel;
+	private InputBatch inputBatch;
+	
 	@Override
 	public synchronized void initialize(OperatorContext context)
 			throws Exception {
@@ -49,6 +131,59 @@ public abstract class Filter extends AbstractOperator {
 		matchPort = getOutput(0);
 		if (context.getNumberOfStreamingOutputs() >= 2)
 			notMatchPort = getOutput(1);
+		
+		if (getBatchSize() > 1)
+			batches = new OutputBatches(context.getStreamingOutputs(),
+					getBatchSize(), getBatchTimeout(),
+					context.getScheduledExecutorService());
+		
+		if (getAsyncQueueSize() > 0)
+			async = new AsyncPorts(context.getStreamingOutputs(),
+					getAsyncQueueSize(), getAsyncOverflow(),
+					context.getThreadFactory(), context.getMetrics());
+		
+		if (getCacheSize() > 0)
+			cache = new DecisionCache(getCacheSize(), context.getMetrics());
+		
+		if (getMetricsSampling() > 0) {
+			metrics = new EvaluationMetrics(context.getMetrics(),
+					context.getNumberOfStreamingOutputs(), getMetricsSampling());
+			metrics.start(context.getScheduledExecutorService());
+		}
+		
+		if (getParallelism() > 1)
+			parallel = new OrderedEvaluator(getParallelism(), getParallelWindow(),
+					context.getThreadFactory(), new OrderedEvaluator.Evaluation() {
+				@Override
+				public int evaluate(Tuple tuple) throws Exception {
+					final boolean pass = metrics == null ? Filter.this.evaluate(tuple) : measuredEvaluate(tuple);
+					return pass ? 1 : 0;
+				}
+				@Override
+				public void submit(Tuple tuple, int decision) throws Exception {
+					Filter.this.submit(tuple, decision != 0);
+				}
+			});
+		
+		if (getEvaluationBatchSize() > 1) {
+			final BitSet pass = new BitSet(getEvaluationBatchSize());
+			inputBatch = new InputBatch(getEvaluationBatchSize(), getEvaluationBatchTimeout(),
+					context.getScheduledExecutorService(), new InputBatch.Evaluation() {
+				@Override
+				public void evaluate(Tuple[] tuples, int n) throws Exception {
+					pass.clear();
+					if (metrics != null && metrics.sample()) {
+						final long start = System.nanoTime();
+						filterBatch(tuples, n, pass);
+						metrics.record((System.nanoTime() - start) / n);
+					} else {
+						filterBatch(tuples, n, pass);
+					}
+					for (int i = 0; i < n; i++)
+						Filter.this.submit(tuples[i], pass.get(i));
+				}
+			});
+		}
 	}
 	
 	/**
@@ -62,10 +197,108 @@ public abstract class Filter extends AbstractOperator {
 	public void process(StreamingInput<Tuple> stream, final Tuple tuple)
 			throws Exception {
 		
-		if (filter(tuple))
-			matchPort.submit(tuple);
-		else if (notMatchPort != null)
-			notMatchPort.submit(tuple);		
+		if (parallel != null) {
+			parallel.process(tuple);
+			return;
+		}
+		if (inputBatch != null) {
+			inputBatch.add(tuple);
+			return;
+		}
+		
+		final boolean pass = metrics == null ? evaluate(tuple) : measuredEvaluate(tuple);
+		submit(tuple, pass);
+	}
+	
+	/**
+	 * Submit {@code tuple} according to its filter result,
+	 * through any batching or asynchronous output ports.
+	 */
+	final void submit(final Tuple tuple, final boolean pass) throws Exception {
+		final int port = pass ? 0 : (notMatchPort != null ? 1 : -1);
+		if (metrics != null) {
+			if (port < 0)
+				metrics.discarded();
+			else
+				metrics.submitted(port);
+		}
+		if (port < 0)
+			return;
+		
+		if (async != null)
+			async.submit(port, tuple);
+		else if (batches != null)
+			batches.submit(port, tuple);
+		else
+			(pass ? matchPort : notMatchPort).submit(tuple);
+	}
+	
+	/**
+	 * Evaluation metrics, {@code null} if disabled.
+	 */
+	final EvaluationMetrics evaluationMetrics() {
+		return metrics;
+	}
+	
+	private boolean evaluate(final Tuple tuple) throws Exception {
+		return cache == null ? filter(tuple) : cachedFilter(tuple);
+	}
+	
+	private boolean measuredEvaluate(final Tuple tuple) throws Exception {
+		if (!metrics.sample())
+			return evaluate(tuple);
+		final long start = System.nanoTime();
+		final boolean pass = evaluate(tuple);
+		metrics.record(System.nanoTime() - start);
+		return pass;
+	}
+	
+	private boolean cachedFilter(final Tuple tuple) throws Exception {
+		final Object key = getCacheKey(tuple);
+		if (key == null)
+			return filter(tuple);
+		
+		final DecisionCache.Entry cached = cache.get(key);
+		if (cached != null)
+			return cached.decision != 0;
+		
+		final long generation = cache.generation();
+		final boolean pass = filter(tuple);
+		cache.put(key, pass ? 1 : 0, generation);
+		return pass;
+	}
+	
+	/**
+	 * Submits any in-flight, batched or queued tuples before the punctuation
+	 * is processed.
+	 */
+	@Override
+	public void processPunctuation(StreamingInput<Tuple> stream,
+			Punctuation mark) throws Exception {
+		if (parallel != null)
+			parallel.drain();
+		if (inputBatch != null)
+			inputBatch.flush();
+		if (async != null)
+			async.flush();
+		if (batches != null)
+			batches.flush();
+		super.processPunctuation(stream, mark);
+	}
+	
+	@Override
+	public void shutdown() throws Exception {
+		if (parallel != null)
+			parallel.close();
+		if (inputBatch != null)
+			inputBatch.close();
+		if (batches != null)
+			batches.close();
+		if (async != null)
+			async.close();
+		if (metrics != null)
+			metrics.close();
+		super.shutdown();
 	}
 	
 	/**
@@ -78,6 +311,193 @@ public abstract class Filter extends AbstractOperator {
 	 */
 	protected abstract boolean filter(Tuple tuple) throws Exception;
 	
+	/**
+	 * Filter a batch of tuples, when the {@code evaluationBatchSize}
+	 * parameter is greater than one. Bit {@code i} of {@code pass}
+	 * must be set if {@code tuples[i]} passes the filter, all bits
+	 * are clear when this is called. Tuples are then submitted in order
+	 * as described for {@link #filter(Tuple)}.
+	 * <BR>
+	 * {@code tuples} is reused for each batch, so neither it nor {@code pass}
+	 * may be retained once this returns.
+	 * <BR>
+	 * This implementation invokes {@link #filter(Tuple)} for each tuple.
+	 * @param tuples Tuples to be filtered, the first {@code n} elements.
+	 * @param n Number of tuples in the batch.
+	 * @param pass Set of the indexes of the tuples that pass the filter.
+	 * @throws Exception Exception filtering the tuples.
+	 */
+	protected void filterBatch(Tuple[] tuples, int n, BitSet pass) throws Exception {
+		for (int i = 0; i < n; i++) {
+			if (filter(tuples[i]))
+				pass.set(i);
+		}
+	}
+	
+	/**
+	 * Return the key the result of {@link #filter(Tuple)} is cached
+	 * against when the {@code cacheSize} parameter is greater than zero.
+	 * Tuples with equal keys must have the same filter result, and the
+	 * key must be immutable.
+	 * <BR>
+	 * This implementation returns {@code null}.
+	 * @param tuple Tuple to be filtered.
+	 * @return Key for the filter result, or {@code null} if the
+	 * result for {@code tuple} is not to be cached.
+	 * @throws Exception Exception determining the key.
+	 */
+	protected Object getCacheKey(Tuple tuple) throws Exception {
+		return null;
+	}
+	
+	/**
+	 * Discard all cached results of {@link #filter(Tuple)}, when the
+	 * result for a key changes, for example when the rules the
+	 * result is determined by are replaced. Results being determined
+	 * concurrently with this call are not cached.
+	 */
+	protected void invalidateCache() {
+		if (cache != null)
+			cache.clear();
+	}
+	
+	/**
+	 * Maximum number of tuples buffered per output port.
+	 * Buffered tuples are still submitted individually,
+	 * so the cost of submitting each tuple is not reduced.
+	 * @return Batch size, {@code 1} if tuples are submitted individually.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of tuples buffered per output port before they are submitted. Buffered tuples are still submitted one at a time, so batching does not reduce the per-tuple submission cost. Defaults to 1, tuples are submitted without buffering.")
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Maximum time in seconds a tuple is buffered when batching.
+	 * @return Batch timeout in seconds.
+	 */
+	public double getBatchTimeout() {
+		return batchTimeout;
+	}
+
+	@Parameter(optional=true, description="Maximum time in seconds a tuple is buffered before it is submitted, when batchSize is greater than one. This adds latency without reducing the per-tuple submission cost. Defaults to 0.01.")
+	public void setBatchTimeout(double batchTimeout) {
+		this.batchTimeout = batchTimeout;
+	}
+
+	/**
+	 * Maximum number of keys with a cached filter result.
+	 * @return Cache size, {@code 0} if results are not cached.
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of keys with a cached filter result. Defaults to 0, results are not cached.")
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Sampling rate for evaluation metrics.
+	 * @return One in this number of evaluations is timed,
+	 * {@code 0} if metrics are disabled.
+	 */
+	public int getMetricsSampling() {
+		return metricsSampling;
+	}
+
+	@Parameter(optional=true, description="Enables metrics counting tuples submitted to each port and discarded, and timing one in metricsSampling invocations of the filter. Defaults to 0, metrics are disabled.")
+	public void setMetricsSampling(int metricsSampling) {
+		this.metricsSampling = metricsSampling;
+	}
+
+	/**
+	 * Maximum number of tuples queued per output port
+	 * when submitting asynchronously.
+	 * @return Queue size, {@code 0} if tuples are submitted on the calling thread.
+	 */
+	public int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of tuples queued per output port, each port's queue is submitted by its own thread. Defaults to 0, tuples are submitted on the thread calling process.")
+	public void setAsyncQueueSize(int asyncQueueSize) {
+		this.asyncQueueSize = asyncQueueSize;
+	}
+
+	/**
+	 * Action when an asynchronous output port's queue is full.
+	 * @return Overflow policy.
+	 */
+	public OverflowPolicy getAsyncOverflow() {
+		return asyncOverflow;
+	}
+
+	@Parameter(optional=true, description="Action when an output port's queue is full, BLOCK, DROP_NEWEST or DROP_OLDEST. Defaults to BLOCK.")
+	public void setAsyncOverflow(OverflowPolicy asyncOverflow) {
+		this.asyncOverflow = asyncOverflow;
+	}
+
+	/**
+	 * Number of threads evaluating the filter.
+	 * @return Parallelism, {@code 0} or {@code 1} if the filter is
+	 * evaluated on the thread calling process.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	@Parameter(optional=true, description="Number of threads evaluating the filter concurrently, tuples are still submitted in arrival order. Defaults to 0, the filter is evaluated on the thread calling process.")
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Maximum number of tuples being evaluated or waiting
+	 * for earlier tuples when evaluating in parallel.
+	 * @return Window size.
+	 */
+	public int getParallelWindow() {
+		return parallelWindow;
+	}
+
+	@Parameter(optional=true, description="Maximum number of tuples in flight when parallelism is greater than one, once reached processing waits. Defaults to 1024.")
+	public void setParallelWindow(int parallelWindow) {
+		this.parallelWindow = parallelWindow;
+	}
+
+	/**
+	 * Maximum number of input tuples evaluated as a batch.
+	 * @return Evaluation batch size, {@code 1} if tuples are evaluated individually.
+	 */
+	public int getEvaluationBatchSize() {
+		return evaluationBatchSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of input tuples buffered and evaluated together by filterBatch. Defaults to 1, tuples are evaluated individually as they arrive.")
+	public void setEvaluationBatchSize(int evaluationBatchSize) {
+		this.evaluationBatchSize = evaluationBatchSize;
+	}
+
+	/**
+	 * Maximum time in seconds an input tuple is buffered
+	 * before it is evaluated, when evaluating batches.
+	 * @return Evaluation batch timeout in seconds.
+	 */
+	public double getEvaluationBatchTimeout() {
+		return evaluationBatchTimeout;
+	}
+
+	@Parameter(optional=true, description="Maximum time in seconds an input tuple is buffered before it is evaluated, when evaluationBatchSize is greater than one. Defaults to 0.01.")
+	public void setEvaluationBatchTimeout(double evaluationBatchTimeout) {
+		this.evaluationBatchTimeout = evaluationBatchTimeout;
+	}
+	
 	/**
 	 * Check that the schemas for the first and second output
 	 * ports match the first input port, as the tuples are directly
@@ -100,4 +520,23 @@ public abstract class Filter extends AbstractOperator {
 			checker.checkMatchingSchemas(inputPort,
 					context.getStreamingOutputs().get(1));			
 	}
+
+	/**
+	 * Check that asynchronous submission is not combined with batching.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkAsyncParameters(OperatorContextChecker checker) {
+		checker.checkExcludedParameters("asyncQueueSize", "batchSize", "batchTimeout");
+	}
+
+	/**
+	 * Check that batch evaluation is not combined with
+	 * parallel evaluation or caching.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkEvaluationBatchParameters(OperatorContextChecker checker) {
+		checker.checkExcludedParameters("evaluationBatchSize", "parallelism", "parallelWindow", "cacheSize");
+	}
 }
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only set of 64-bit key fingerprints held in a memory-mapped
+ * file, so that the set is not on the Java heap, is available as soon as
+ * the file is mapped and is shared through the page cache by all
+ * processes mapping the same file.
+ * <P>
+ * The file is an open-addressing hash table with linear probing,
+ * with a load factor of at most one half. It is optionally preceded by
+ * a blocked Bloom filter, sixteen bits per key with four bits set in a
+ * single 64-bit word, so that most keys not in the set are rejected with
+ * one memory access to a structure an eighth of the size of the table.
+ * </P>
+ * <P>
+ * Fingerprints are computed by {@link #fingerprint(long)} or
+ * {@link #fingerprint(CharSequence)}, so distinct keys have
+ * the same fingerprint with a probability of about {@code n/2^64}
+ * for a set of {@code n} keys.
+ * </P>
+ */
+final class FingerprintTable {
+
+	private static final long MAGIC = 0x5354524D46505431L;
+	private static final int HEADER_LONGS = 5;
+
+	/**
+	 * Each mapped segment holds 2^27 longs (1GB) so that tables
+	 * larger than the 2GB limit of a single mapping are supported.
+	 */
+	private static final int SEGMENT_SHIFT = 27;
+	private static final long SEGMENT_LONGS = 1L << SEGMENT_SHIFT;
+
+	private final LongBuffer[] segments;
+	private final long mask;
+	private final long bloomMask;
+	private final long tableOffset;
+	private final long size;
+
+	private FingerprintTable(LongBuffer[] segments, long capacity, long size, long bloomWords) {
+		this.segments = segments;
+		this.mask = capacity - 1;
+		this.bloomMask = bloomWords - 1;
+		this.tableOffset = HEADER_LONGS + bloomWords;
+		this.size = size;
+	}
+
+	/**
+	 * Number of keys in the set.
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * Is the fingerprint in the set.
+	 */
+	boolean contains(final long fingerprint) {
+		if (bloomMask >= 0) {
+			final long bits = bloomBits(fingerprint);
+			if ((get(HEADER_LONGS + (fingerprint & bloomMask)) & bits) != bits)
+				return false;
+		}
+		long slot = mix(fingerprint) & mask;
+		for (;;) {
+			final long value = get(tableOffset + slot);
+			if (value == fingerprint)
+				return true;
+			if (value == 0)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private long get(final long index) {
+		return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & (SEGMENT_LONGS - 1)));
+	}
+
+	/**
+	 * Fingerprint of an integral key.
+	 */
+	static long fingerprint(long key) {
+		return nonZero(mix(key ^ 0x9E3779B97F4A7C15L));
+	}
+
+	/**
+	 * Fingerprint of a string key, FNV-1a over its characters.
+	 */
+	static long fingerprint(CharSequence key) {
+		return nonZero(mix(KeyFingerprint.hash(key)));
+	}
+
+	/**
+	 * Zero marks an empty slot.
+	 */
+	private static long nonZero(long fingerprint) {
+		return fingerprint == 0 ? 1 : fingerprint;
+	}
+
+	private static long mix(long h) {
+		return KeyFingerprint.mix(h);
+	}
+
+	private static long bloomBits(long fingerprint) {
+		final long h = fingerprint >>> 32;
+		return (1L << (h & 63)) | (1L << ((h >>> 6) & 63))
+				| (1L << ((h >>> 12) & 63)) | (1L << ((h >>> 18) & 63));
+	}
+
+	/**
+	 * Map an existing table file.
+	 * @param integral True if keys are integers, otherwise they are strings.
+	 * @throws IOException If the file is not a valid table for the key type.
+	 */
+	static FingerprintTable open(File file, boolean integral) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final LongBuffer[] segments = map(raf.getChannel(), FileChannel.MapMode.READ_ONLY);
+			if (segments.length == 0 || segments[0].get(0) != MAGIC)
+				throw new IOException("Not a fingerprint table: " + file);
+			final long capacity = segments[0].get(1);
+			final long size = segments[0].get(2);
+			final long bloomWords = segments[0].get(3);
+			if (segments[0].get(4) != (integral ? 1 : 0))
+				throw new IOException("Fingerprint table has a different key type: " + file);
+			if (raf.length() != (HEADER_LONGS + bloomWords + capacity) * 8)
+				throw new IOException("Truncated fingerprint table: " + file);
+			return new FingerprintTable(segments, capacity, size, bloomWords);
+		} finally {
+			// Mappings remain valid once the file is closed.
+			raf.close();
+		}
+	}
+
+	/**
+	 * Build a table file from a text file of keys, one per line.
+	 * Integral keys are decimal, with unsigned 64-bit values above
+	 * {@code Long.MAX_VALUE} stored as their two's complement value.
+	 * The table is written to a temporary file that is renamed to
+	 * {@code table} once complete, so processes concurrently opening
+	 * {@code table} never see a partial table.
+	 * @param integral True if keys are integers, otherwise they are strings.
+	 * @param bloom True if a Bloom filter is included.
+	 */
+	static void build(File keys, File table, boolean integral, boolean bloom) throws IOException {
+		long count = 0;
+		BufferedReader reader = open(keys);
+		try {
+			while (reader.readLine() != null)
+				count++;
+		} finally {
+			reader.close();
+		}
+
+		long capacity = 2;
+		while (capacity < count * 2)
+			capacity <<= 1;
+		long bloomWords = 0;
+		if (bloom) {
+			// sixteen bits per key
+			bloomWords = 1;
+			while (bloomWords * 4 < count)
+				bloomWords <<= 1;
+		}
+
+		final File tmp = File.createTempFile(table.getName(), ".tmp", table.getAbsoluteFile().getParentFile());
+		try {
+			final RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+			long size = 0;
+			try {
+				raf.setLength((HEADER_LONGS + bloomWords + capacity) * 8);
+				final LongBuffer[] segments = map(raf.getChannel(), FileChannel.MapMode.READ_WRITE);
+				final FingerprintTable writer = new FingerprintTable(segments, capacity, 0, bloomWords);
+
+				reader = open(keys);
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						final String key = line.trim();
+						if (key.isEmpty())
+							continue;
+						final long fingerprint = integral ? fingerprint(new BigInteger(key).longValue()) : fingerprint(key);
+						if (writer.add(fingerprint))
+							size++;
+					}
+				} finally {
+					reader.close();
+				}
+				segments[0].put(0, MAGIC);
+				segments[0].put(1, capacity);
+				segments[0].put(2, size);
+				segments[0].put(3, bloomWords);
+				segments[0].put(4, integral ? 1 : 0);
+			} finally {
+				raf.close();
+			}
+			if (!tmp.renameTo(table)) {
+				if (!table.delete() || !tmp.renameTo(table))
+					throw new IOException("Unable to create fingerprint table: " + table);
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private boolean add(final long fingerprint) {
+		if (bloomMask >= 0) {
+			final long index = HEADER_LONGS + (fingerprint & bloomMask);
+			put(index, get(index) | bloomBits(fingerprint));
+		}
+		long slot = mix(fingerprint) & mask;
+		for (;;) {
+			final long value = get(tableOffset + slot);
+			if (value == fingerprint)
+				return false;
+			if (value == 0) {
+				put(tableOffset + slot, fingerprint);
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private void put(final long index, final long value) {
+		segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & (SEGMENT_LONGS - 1)), value);
+	}
+
+	private static BufferedReader open(File keys) throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(keys), Charset.forName("UTF-8")));
+	}
+
+	private static LongBuffer[] map(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+		final long longs = channel.size() / 8;
+		final LongBuffer[] segments = new LongBuffer[(int) ((longs + SEGMENT_LONGS - 1) >>> SEGMENT_SHIFT)];
+		for (int s = 0; s < segments.length; s++) {
+			final long first = s * SEGMENT_LONGS;
+			final long length = Math.min(SEGMENT_LONGS, longs - first);
+			segments[s] = channel.map(mode, first * 8, length * 8).asLongBuffer();
+		}
+		return segments;
+	}
+}
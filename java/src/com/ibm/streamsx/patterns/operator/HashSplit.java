@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Split that partitions tuples across the output ports
+ * by a hash of one or more key attributes, so that all tuples
+ * with the same key are submitted to the same port.
+ * <P>
+ * The key attributes are named by the {@code keyAttributes} parameter
+ * and are hashed by {@link KeyFingerprint}, with their indexes resolved
+ * once at initialization. Attributes of primitive numeric and boolean
+ * types are hashed from their primitive values, {@code ustring} and
+ * {@code rstring} attributes over all their characters or bytes into
+ * 64 bits, without conversion. Other types are hashed using
+ * {@code hashCode()} of their Java object representation.
+ * </P>
+ * <P>
+ * By default the port is the hash modulo the number of output ports, so
+ * changing the number of ports moves almost every key to a different port.
+ * When the {@code consistentHashing} parameter is {@code true} the port
+ * is chosen using jump consistent hashing, so that when the number of
+ * ports changes from {@code N} to {@code N+1} only {@code 1/(N+1)} of the
+ * keys move, and those all move to the new port.
+ * </P>
+ */
+public class HashSplit extends Split {
+
+	private List<String> keyAttributes;
+	private boolean consistentHashing;
+
+	private KeyFingerprint key;
+	private int portCount;
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Resolves the key attributes.
+	 * </P>
+	 */
+	@Override
+	public void initialize(OperatorContext context) throws Exception {
+		super.initialize(context);
+		portCount = context.getNumberOfStreamingOutputs();
+		key = new KeyFingerprint(context.getStreamingInputs().get(0).getStreamSchema(),
+				keyAttributes);
+	}
+
+	/**
+	 * Return the port for the hash of the tuple's key attributes.
+	 */
+	@Override
+	protected int destination(Tuple tuple) throws Exception {
+		final long hash = key.fingerprint(tuple);
+		if (consistentHashing)
+			return jump(hash, portCount);
+		return (int) (hash >>> 33);
+	}
+
+	/**
+	 * Jump consistent hash (Lamping and Veach) of {@code key}
+	 * into {@code buckets} buckets.
+	 */
+	static int jump(long key, int buckets) {
+		long b = -1;
+		long j = 0;
+		while (j < buckets) {
+			b = j;
+			key = key * 2862933555777941757L + 1;
+			j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+		}
+		return (int) b;
+	}
+
+	/**
+	 * Names of the key attributes.
+	 * @return Names of the attributes hashed to determine the port.
+	 */
+	public List<String> getKeyAttributes() {
+		return keyAttributes;
+	}
+
+	@Parameter(cardinality=-1, description="Names of the input attributes hashed to determine the output port.")
+	public void setKeyAttributes(List<String> keyAttributes) {
+		this.keyAttributes = keyAttributes;
+	}
+
+	/**
+	 * Is the port chosen using consistent hashing.
+	 * @return {@code true} if jump consistent hashing is used.
+	 */
+	public boolean isConsistentHashing() {
+		return consistentHashing;
+	}
+
+	@Parameter(optional=true, description="If true the output port is chosen using jump consistent hashing, so that changing the number of output ports moves the minimum number of keys. Defaults to false.")
+	public void setConsistentHashing(boolean consistentHashing) {
+		this.consistentHashing = consistentHashing;
+	}
+
+	/**
+	 * Check that the key attributes exist in the input schema.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkKeyAttributes(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> keys = context.getParameterValues("keyAttributes");
+		checker.checkRequiredAttributes(context.getStreamingInputs().get(0),
+				keys.toArray(new String[keys.size()]));
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool search for a single literal
+ * within a character sequence.
+ * <P>
+ * The bad character shift table is indexed by the low
+ * eight bits of a character, each entry holding the
+ * smallest shift of any character sharing those bits,
+ * so that non-Latin-1 characters are handled correctly
+ * with a fixed size table.
+ * </P>
+ * <P>
+ * Instances are immutable and thread safe.
+ * </P>
+ */
+final class Horspool {
+
+	private final String literal;
+	private final int[] shift = new int[256];
+
+	Horspool(String literal) {
+		this.literal = literal;
+		final int last = literal.length() - 1;
+		Arrays.fill(shift, literal.length());
+		for (int i = 0; i < last; i++) {
+			final int b = literal.charAt(i) & 0xFF;
+			shift[b] = Math.min(shift[b], last - i);
+		}
+	}
+
+	String getLiteral() {
+		return literal;
+	}
+
+	/**
+	 * Does {@code text} contain the literal.
+	 */
+	boolean in(final CharSequence text) {
+		final String p = literal;
+		final int last = p.length() - 1;
+		final char lastChar = p.charAt(last);
+		final int end = text.length();
+		for (int i = last; i < end; ) {
+			final char c = text.charAt(i);
+			if (c == lastChar) {
+				int j = last - 1;
+				int k = i - 1;
+				while (j >= 0 && text.charAt(k) == p.charAt(j)) {
+					j--;
+					k--;
+				}
+				if (j < 0)
+					return true;
+			}
+			i += shift[c & 0xFF];
+		}
+		return false;
+	}
+}
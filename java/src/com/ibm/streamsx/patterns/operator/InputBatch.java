@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Buffers input tuples and evaluates them as a batch when the
+ * buffer is full, or when the timeout expires, whichever comes
+ * first. Batches are evaluated one at a time, in arrival order.
+ * <P>
+ * The array passed to {@link Evaluation#evaluate(Tuple[], int)}
+ * is reused for every batch.
+ * </P>
+ */
+final class InputBatch implements Runnable {
+
+	private static final Logger trace = Logger.getLogger(InputBatch.class.getName());
+
+	/**
+	 * Evaluation and submission of a batch of tuples.
+	 */
+	interface Evaluation {
+		/**
+		 * Evaluate and submit the first {@code n} tuples of {@code tuples}.
+		 */
+		void evaluate(Tuple[] tuples, int n) throws Exception;
+	}
+
+	private final Evaluation evaluation;
+	private final Tuple[] tuples;
+	private int count;
+	private final ScheduledFuture<?> timer;
+
+	/**
+	 * @param size Maximum number of tuples in a batch.
+	 * @param timeout Maximum time in seconds a tuple is buffered.
+	 * @param scheduler Scheduler for the timeout.
+	 */
+	InputBatch(int size, double timeout, ScheduledExecutorService scheduler,
+			Evaluation evaluation) {
+		this.evaluation = evaluation;
+		tuples = new Tuple[size];
+
+		final long period = Math.max(1L, (long) (timeout * 1E9));
+		timer = scheduler.scheduleAtFixedRate(this, period, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Add {@code tuple} to the batch, evaluating the batch if it is full.
+	 */
+	synchronized void add(Tuple tuple) throws Exception {
+		tuples[count++] = tuple;
+		if (count == tuples.length)
+			flush();
+	}
+
+	/**
+	 * Evaluate all buffered tuples.
+	 */
+	synchronized void flush() throws Exception {
+		final int n = count;
+		if (n == 0)
+			return;
+		count = 0;
+		try {
+			evaluation.evaluate(tuples, n);
+		} finally {
+			Arrays.fill(tuples, 0, n, null);
+		}
+	}
+
+	/**
+	 * Stop the timeout, any buffered tuples are not evaluated.
+	 */
+	void close() {
+		timer.cancel(false);
+	}
+
+	/**
+	 * Timeout expiry, evaluates any buffered tuples.
+	 */
+	@Override
+	public void run() {
+		try {
+			flush();
+		} catch (Exception e) {
+			trace.log(Level.SEVERE, "Failed to evaluate batch", e);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * 64-bit fingerprint of one or more key attributes of a tuple, such that
+ * distinct keys have the same fingerprint with a probability of about
+ * {@code 2^-64}.
+ * <P>
+ * Attribute indexes and types are resolved once. Attributes of primitive
+ * numeric and boolean types are read using their primitive getters,
+ * {@code ustring} attributes are hashed over their characters and
+ * {@code rstring} attributes over their bytes, without conversion.
+ * Attributes of other types contribute the {@code hashCode()} of their
+ * Java object representation, so only 32 bits.
+ * </P>
+ * <P>
+ * This is the single key hash of the pattern operators, used for
+ * deduplication, sampling and hash partitioning, so a key hashes
+ * the same way in each of them.
+ * </P>
+ */
+final class KeyFingerprint {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final int[] indexes;
+	private final MetaType[] types;
+
+	KeyFingerprint(StreamSchema schema, List<String> attributes) {
+		indexes = new int[attributes.size()];
+		types = new MetaType[indexes.length];
+		for (int k = 0; k < indexes.length; k++) {
+			indexes[k] = schema.getAttributeIndex(attributes.get(k));
+			types[k] = schema.getAttribute(indexes[k]).getType().getMetaType();
+		}
+	}
+
+	/**
+	 * Fingerprint of the key attributes of {@code tuple}, never zero.
+	 */
+	long fingerprint(final Tuple tuple) {
+		long hash = 0;
+		for (int k = 0; k < indexes.length; k++) {
+			final int index = indexes[k];
+			final long value;
+			switch (types[k]) {
+			case BOOLEAN:
+				value = tuple.getBoolean(index) ? 1 : 0;
+				break;
+			case INT8:
+			case UINT8:
+				value = tuple.getByte(index);
+				break;
+			case INT16:
+			case UINT16:
+				value = tuple.getShort(index);
+				break;
+			case INT32:
+			case UINT32:
+				value = tuple.getInt(index);
+				break;
+			case INT64:
+			case UINT64:
+				value = tuple.getLong(index);
+				break;
+			case FLOAT32:
+				value = Float.floatToIntBits(tuple.getFloat(index));
+				break;
+			case FLOAT64:
+				value = Double.doubleToLongBits(tuple.getDouble(index));
+				break;
+			case USTRING:
+				value = hash(tuple.getString(index));
+				break;
+			case RSTRING:
+				value = hash(((RString) tuple.getObject(index)).getData());
+				break;
+			default:
+				value = tuple.getObject(index).hashCode();
+				break;
+			}
+			hash = mix((hash ^ value) * FNV_PRIME + k);
+		}
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * MurmurHash3 64-bit finalizer, spreads the bits of
+	 * {@code h} so that similar keys have unrelated hashes.
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * FNV-1a over the characters of {@code value}.
+	 */
+	static long hash(final CharSequence value) {
+		long hash = FNV_OFFSET;
+		for (int i = 0, n = value.length(); i < n; i++) {
+			hash ^= value.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * FNV-1a over {@code value}.
+	 */
+	private static long hash(final byte[] value) {
+		long hash = FNV_OFFSET;
+		for (byte b : value) {
+			hash ^= b & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+}
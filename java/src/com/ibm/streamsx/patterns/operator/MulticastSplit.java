@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+
+/**
+ * Pattern that splits the stream into multiple output streams,
+ * submitting each tuple to any number of output ports.
+ * <P>
+ * {@link #destinations(Tuple)} returns the set of output ports
+ * for a tuple as a bit mask, bit {@code N} selecting port {@code N},
+ * so routing a tuple does not allocate and the tuple is evaluated
+ * once however many ports it is submitted to. The tuple is
+ * submitted to the selected ports in port order. At most 64
+ * output ports are supported.
+ * </P>
+ * <P>
+ * Batching, asynchronous submission, caching and metrics
+ * are as described for {@link Split}, with the mask returned by
+ * {@link #destinations(Tuple)} being cached, and batches of tuples
+ * being evaluated by {@link #destinationsBatch(Tuple[], int, long[])}. A tuple submitted to
+ * several ports is counted once for each port.
+ * </P>
+ */
+public abstract class MulticastSplit extends Split {
+	
+	/**
+	 * Maximum number of output ports, one per bit of the mask.
+	 */
+	static final int MAX_PORTS = Long.SIZE;
+	
+	@Override
+	final long decision(final Tuple tuple) throws Exception {
+		return destinations(tuple);
+	}
+	
+	@Override
+	final void decisionBatch(final Tuple[] tuples, final int n, final long[] decisions) throws Exception {
+		destinationsBatch(tuples, n, decisions);
+	}
+	
+	@Override
+	final void route(final long decision, final Tuple tuple) throws Exception {
+		multicast(decision, tuple);
+	}
+	
+	/**
+	 * Returns the lowest port selected by {@link #destinations(Tuple)}.
+	 * Not used when splitting tuples.
+	 * @return Index of the first output port for {@code tuple},
+	 * {@code -1} if no port is selected.
+	 */
+	@Override
+	protected final int destination(Tuple tuple) throws Exception {
+		final long ports = destinations(tuple);
+		return ports == 0 ? -1 : Long.numberOfTrailingZeros(ports);
+	}
+	
+	/**
+	 * Determine the output ports for the tuple.
+	 * <BR>
+	 * Bit {@code N} (value {@code 1L << N}) of the returned mask
+	 * selects output port {@code N}. If the mask is zero,
+	 * or only selects ports that do not exist,
+	 * {@code tuple} is discarded.
+	 * 
+	 * @param tuple Tuple to be split.
+	 * @return Bit mask of the output ports for {@code tuple}.
+	 * @throws Exception Exception determining the tuple's destinations.
+	 */
+	protected abstract long destinations(Tuple tuple) throws Exception;
+	
+	/**
+	 * Determine the output ports for a batch of tuples, when the
+	 * {@code evaluationBatchSize} parameter is greater than one.
+	 * {@code destinations[i]} must be set to the mask of output ports
+	 * for {@code tuples[i]}, as described for {@link #destinations(Tuple)}.
+	 * <BR>
+	 * {@code tuples} and {@code destinations} are reused for each
+	 * batch, so must not be retained once this returns.
+	 * <BR>
+	 * This implementation invokes {@link #destinations(Tuple)} for each tuple.
+	 * @param tuples Tuples to be split, the first {@code n} elements.
+	 * @param n Number of tuples in the batch.
+	 * @param destinations Bit mask of the output ports for each tuple.
+	 * @throws Exception Exception determining the tuples' destinations.
+	 */
+	protected void destinationsBatch(Tuple[] tuples, int n, long[] destinations) throws Exception {
+		for (int i = 0; i < n; i++)
+			destinations[i] = destinations(tuples[i]);
+	}
+	
+	/**
+	 * Check that every output port can be selected by the mask.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkPortCount(OperatorContextChecker checker) {
+		checkPortCount(checker, "MulticastSplit");
+	}
+	
+	static void checkPortCount(OperatorContextChecker checker, String operator) {
+		OperatorContext context = checker.getOperatorContext();
+		if (context.getNumberOfStreamingOutputs() > MAX_PORTS)
+			checker.setInvalidContext(operator + " supports at most " + MAX_PORTS
+					+ " output ports when submitting tuples to multiple ports.", null);
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Evaluates tuples on a pool of threads while submitting
+ * them in the order they arrived.
+ * <P>
+ * In-flight tuples are tracked by an {@link AsyncEvaluator} in arrival
+ * order, so whichever thread completes the tuple at the head of its reorder
+ * buffer submits all consecutive evaluated tuples. At most {@code window}
+ * tuples are in flight, once reached the thread calling
+ * {@link #process(Tuple)} waits, providing backpressure.
+ * </P>
+ * <P>
+ * An exception thrown evaluating or submitting a tuple is rethrown
+ * to the next caller of {@link #process(Tuple)} or {@link #drain()}.
+ * </P>
+ */
+final class OrderedEvaluator {
+
+	/**
+	 * Evaluation and submission of tuples.
+	 */
+	interface Evaluation extends AsyncEvaluator.Submission {
+		/**
+		 * Evaluate the tuple, called concurrently.
+		 */
+		int evaluate(Tuple tuple) throws Exception;
+	}
+
+	private final Evaluation evaluation;
+	private final ExecutorService pool;
+	private final AsyncEvaluator inFlight;
+
+	/**
+	 * @param threads Number of threads evaluating tuples.
+	 * @param window Maximum number of tuples in flight.
+	 */
+	OrderedEvaluator(int threads, int window, ThreadFactory factory, Evaluation evaluation) {
+		this.evaluation = evaluation;
+		pool = Executors.newFixedThreadPool(threads, factory);
+		inFlight = new AsyncEvaluator(window, true, evaluation);
+	}
+
+	/**
+	 * Evaluate {@code tuple} asynchronously, waiting
+	 * if the window of in-flight tuples is full.
+	 */
+	void process(final Tuple tuple) throws Exception {
+		final AsyncEvaluator.Completion completion = inFlight.start(tuple);
+		pool.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					completion.complete(evaluation.evaluate(tuple));
+				} catch (Exception e) {
+					completion.fail(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Wait until all tuples passed to {@link #process(Tuple)}
+	 * have been submitted.
+	 */
+	void drain() throws Exception {
+		inFlight.drain();
+	}
+
+	void close() {
+		pool.shutdownNow();
+	}
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Buffers tuples per output port and submits them as a batch
+ * when a port's buffer is full, or when the timeout expires,
+ * whichever comes first. Tuples are submitted to each port
+ * in the order they were added.
+ * <P>
+ * The operator API has no multi-tuple submit, so a batch is submitted
+ * one tuple at a time and the cost of each submission is unchanged,
+ * batching only groups the submissions to each port into bursts.
+ * </P>
+ */
+final class OutputBatches implements Runnable {
+
+	private static final Logger trace = Logger.getLogger(OutputBatches.class.getName());
+
+	private final Batch[] batches;
+	private final ScheduledFuture<?> timer;
+
+	/**
+	 * @param ports Output ports, indexed by port number.
+	 * @param size Maximum number of tuples buffered per port.
+	 * @param timeout Maximum time in seconds a tuple is buffered.
+	 * @param scheduler Scheduler for the timeout.
+	 */
+	OutputBatches(List<? extends StreamingOutput<?>> ports, int size,
+			double timeout, ScheduledExecutorService scheduler) {
+		batches = new Batch[ports.size()];
+		for (int i = 0; i < batches.length; i++)
+			batches[i] = new Batch(ports.get(i), size);
+
+		final long period = Math.max(1L, (long) (timeout * 1E9));
+		timer = scheduler.scheduleAtFixedRate(this, period, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Add {@code tuple} to the batch for {@code port},
+	 * submitting the batch if it is full.
+	 */
+	void submit(int port, Tuple tuple) throws Exception {
+		batches[port].add(tuple);
+	}
+
+	/**
+	 * Submit all buffered tuples.
+	 */
+	void flush() throws Exception {
+		for (Batch batch : batches)
+			batch.flush();
+	}
+
+	/**
+	 * Stop the timeout, any buffered tuples are not submitted.
+	 */
+	void close() {
+		timer.cancel(false);
+	}
+
+	/**
+	 * Timeout expiry, flushes all ports.
+	 */
+	@Override
+	public void run() {
+		try {
+			flush();
+		} catch (Exception e) {
+			trace.log(Level.SEVERE, "Failed to submit batch", e);
+		}
+	}
+
+	private static final class Batch {
+		private final StreamingOutput<?> port;
+		private final Tuple[] tuples;
+		private int count;
+
+		Batch(StreamingOutput<?> port, int size) {
+			this.port = port;
+			this.tuples = new Tuple[size];
+		}
+
+		synchronized void add(Tuple tuple) throws Exception {
+			tuples[count++] = tuple;
+			if (count == tuples.length)
+				flush();
+		}
+
+		synchronized void flush() throws Exception {
+			final int n = count;
+			count = 0;
+			for (int i = 0; i < n; i++) {
+				final Tuple tuple = tuples[i];
+				tuples[i] = null;
+				port.submit(tuple);
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+/**
+ * Action taken when a tuple is submitted to an asynchronous
+ * output port whose queue is full.
+ */
+public enum OverflowPolicy {
+	/**
+	 * Wait until the queue has space.
+	 */
+	BLOCK,
+	/**
+	 * Discard the tuple being submitted.
+	 */
+	DROP_NEWEST,
+	/**
+	 * Discard the oldest queued tuple to make space.
+	 */
+	DROP_OLDEST
+}
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Single pass matcher for a set of regular expressions.
+ * <P>
+ * Each supported expression is compiled into a Thompson NFA, with
+ * its accepting state tagged with the index of the expression. The
+ * NFAs are combined and evaluated as a DFA that is built lazily
+ * from the characters seen, so a sequence is scanned once
+ * regardless of the number of expressions. The lowest index of
+ * any expression that matches the complete sequence is returned,
+ * matching the semantics of calling {@code Matcher.matches()} against
+ * each expression in order, or with {@link #matchesAll(CharSequence)}
+ * the set of all expressions that match.
+ * </P>
+ * <P>
+ * Only expressions using the syntax supported by {@link PatternSyntax}
+ * are compiled, others must be evaluated using {@code java.util.regex},
+ * see {@link #isSupported(int)}.
+ * </P>
+ * <P>
+ * Instances are thread safe, DFA states are created under a lock
+ * and transitions between existing states are read without locking.
+ * Once {@link #MAX_DFA_STATES} states exist no further transitions are
+ * built, a sequence that needs one is {@link #UNDECIDED} and is evaluated
+ * using {@code java.util.regex}, so matching never serializes on the lock
+ * computing states that cannot be cached.
+ * </P>
+ */
+final class PatternAutomaton {
+
+	/**
+	 * Returned by {@link #matches(CharSequence)} when the sequence
+	 * cannot be evaluated by the automaton.
+	 */
+	static final int UNDECIDED = -2;
+
+	/**
+	 * Limits the memory used by the automaton. Once reached
+	 * sequences needing a new transition are undecided.
+	 */
+	static final int MAX_DFA_STATES = 10000;
+	private static final int MAX_NFA_STATES = 100000;
+
+	private final boolean[] supported;
+
+	private final Nfa nfa = new Nfa();
+	private final Map<Key,DState> states = new HashMap<Key,DState>();
+	private final DState start;
+	private final DState dead;
+
+	/**
+	 * Set once the DFA has {@link #MAX_DFA_STATES} states.
+	 */
+	private volatile boolean full;
+
+	PatternAutomaton(Pattern[] patterns) {
+		supported = new boolean[patterns.length];
+
+		final List<Integer> starts = new ArrayList<Integer>();
+		for (int i = 0; i < patterns.length; i++) {
+			final PatternSyntax.Node node = PatternSyntax.parse(patterns[i]);
+			if (node == null)
+				continue;
+			final int mark = nfa.size();
+			try {
+				starts.add(node.build(nfa, nfa.accept(i)));
+				supported[i] = true;
+			} catch (UnsupportedOperationException e) {
+				nfa.truncate(mark);
+			}
+		}
+
+		final int[] outs = new int[starts.size()];
+		for (int i = 0; i < outs.length; i++)
+			outs[i] = starts.get(i);
+
+		dead = state(new int[0]);
+		start = state(nfa.closure(new int[] {nfa.split(outs)}));
+	}
+
+	/**
+	 * Was the expression at {@code index} compiled into the automaton.
+	 */
+	boolean isSupported(int index) {
+		return supported[index];
+	}
+
+	/**
+	 * Match the complete sequence against all supported expressions.
+	 * @return Lowest index of the supported expressions that match,
+	 * {@code -1} if none match or {@link #UNDECIDED} if the
+	 * sequence contains supplementary characters or needs a
+	 * transition once the DFA is full.
+	 */
+	int matches(final CharSequence sequence) {
+		final DState state = run(sequence);
+		return state == null ? UNDECIDED : state.accept;
+	}
+
+	/**
+	 * Match the complete sequence against all supported expressions.
+	 * @return Bit set of the indexes of the supported expressions
+	 * that match, bit {@code i % 64} of word {@code i / 64} for index
+	 * {@code i}, or {@code null} if the sequence contains supplementary
+	 * characters or needs a transition once the DFA is full.
+	 * The returned array is shared and must not be modified.
+	 */
+	long[] matchesAll(final CharSequence sequence) {
+		final DState state = run(sequence);
+		return state == null ? null : state.accepts;
+	}
+
+	/**
+	 * Run the DFA over the sequence.
+	 * @return Final state, the dead state if no expression can match
+	 * or {@code null} if the sequence contains supplementary characters
+	 * or needs a transition once the DFA is full.
+	 */
+	private DState run(final CharSequence sequence) {
+		DState state = start;
+		for (int i = 0, n = sequence.length(); i < n; i++) {
+			final char c = sequence.charAt(i);
+			DState next = c < DState.ASCII ? state.ascii[c] : state.other.get(c);
+			if (next == null) {
+				// Java regular expressions match code points.
+				if (Character.isSurrogate(c) || full)
+					return null;
+				next = transition(state, c);
+				if (next == null)
+					return null;
+			}
+			if (next == dead)
+				return dead;
+			state = next;
+		}
+		return state;
+	}
+
+	/**
+	 * Build the transition from {@code from} on {@code c}.
+	 * @return Next state, or {@code null} if the DFA is full.
+	 */
+	private synchronized DState transition(final DState from, final char c) {
+		final DState existing = c < DState.ASCII ? from.ascii[c] : from.other.get(c);
+		if (existing != null)
+			return existing;
+		if (full)
+			return null;
+
+		final int[] set = from.nfaStates;
+		final int[] reached = new int[set.length];
+		int count = 0;
+		for (int s : set) {
+			if (nfa.isChar(s) && nfa.sets.get(s).contains(c))
+				reached[count++] = nfa.outs.get(s)[0];
+		}
+
+		final DState to = state(nfa.closure(Arrays.copyOf(reached, count)));
+		if (to == null)
+			return null;
+		if (c < DState.ASCII)
+			from.ascii[c] = to;
+		else
+			from.other.put(c, to);
+		return to;
+	}
+
+	/**
+	 * Return the DFA state for the set of NFA states,
+	 * creating it if required.
+	 * @return State, or {@code null} if it does not exist and the DFA is full.
+	 */
+	private DState state(final int[] nfaStates) {
+		final Key key = new Key(nfaStates);
+		DState state = states.get(key);
+		if (state == null) {
+			if (states.size() >= MAX_DFA_STATES) {
+				full = true;
+				return null;
+			}
+			int accept = -1;
+			final long[] accepts = new long[(supported.length + 63) >>> 6];
+			for (int s : nfaStates) {
+				final int tag = nfa.tags.get(s);
+				if (tag >= 0) {
+					if (accept == -1 || tag < accept)
+						accept = tag;
+					accepts[tag >>> 6] |= 1L << tag;
+				}
+			}
+			state = new DState(nfaStates, accept, accepts);
+			states.put(key, state);
+		}
+		return state;
+	}
+
+	private static final class DState {
+		static final int ASCII = 128;
+		final int[] nfaStates;
+		final int accept;
+		final long[] accepts;
+		final DState[] ascii = new DState[ASCII];
+		final Map<Character,DState> other = new ConcurrentHashMap<Character,DState>(4);
+
+		DState(int[] nfaStates, int accept, long[] accepts) {
+			this.nfaStates = nfaStates;
+			this.accept = accept;
+			this.accepts = accepts;
+		}
+	}
+
+	private static final class Key {
+		private final int[] states;
+		private final int hash;
+		Key(int[] states) {
+			this.states = states;
+			this.hash = Arrays.hashCode(states);
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(states, ((Key) obj).states);
+		}
+	}
+
+	/*
+	 * Thompson NFA. A state is either a character state with
+	 * a single transition on a character set, or an epsilon state
+	 * with zero or more epsilon transitions. Accepting states are
+	 * epsilon states with a non-negative tag.
+	 */
+	static final class Nfa {
+		final List<PatternSyntax.CharSet> sets = new ArrayList<PatternSyntax.CharSet>();
+		final List<int[]> outs = new ArrayList<int[]>();
+		final List<Integer> tags = new ArrayList<Integer>();
+
+		/**
+		 * Scratch arrays for {@link #closure(int[])}, {@code seen} holds
+		 * the stamp of the last closure that reached each state so it
+		 * does not need to be cleared.
+		 */
+		private int[] seen = new int[0];
+		private int[] stack = new int[0];
+		private int[] result = new int[0];
+		private int stamp;
+
+		int size() {
+			return sets.size();
+		}
+
+		boolean isChar(int state) {
+			return sets.get(state) != null;
+		}
+
+		private int add(PatternSyntax.CharSet set, int[] out, int tag) {
+			if (size() >= MAX_NFA_STATES)
+				throw new UnsupportedOperationException();
+			sets.add(set);
+			outs.add(out);
+			tags.add(tag);
+			return size() - 1;
+		}
+
+		int chars(PatternSyntax.CharSet set, int next) {
+			return add(set, new int[] {next}, -1);
+		}
+
+		int split(int... next) {
+			return add(null, next, -1);
+		}
+
+		int accept(int tag) {
+			return add(null, new int[0], tag);
+		}
+
+		void truncate(int size) {
+			while (size() > size) {
+				sets.remove(size() - 1);
+				outs.remove(size() - 1);
+				tags.remove(size() - 1);
+			}
+		}
+
+		/**
+		 * Epsilon closure of a set of states, returning
+		 * the sorted character and accepting states.
+		 * Not thread safe, as the scratch arrays are reused.
+		 */
+		int[] closure(int[] from) {
+			if (seen.length != size()) {
+				seen = new int[size()];
+				stack = new int[size()];
+				result = new int[size()];
+				stamp = 0;
+			}
+			if (++stamp == 0) {
+				Arrays.fill(seen, 0);
+				stamp = 1;
+			}
+			final int[] seen = this.seen;
+			final int[] stack = this.stack;
+			final int[] result = this.result;
+			final int mark = stamp;
+			int sp = 0;
+			int count = 0;
+			for (int s : from) {
+				if (seen[s] != mark) {
+					seen[s] = mark;
+					stack[sp++] = s;
+				}
+			}
+			while (sp != 0) {
+				final int s = stack[--sp];
+				if (isChar(s) || tags.get(s) >= 0) {
+					result[count++] = s;
+					continue;
+				}
+				for (int o : outs.get(s)) {
+					if (seen[o] != mark) {
+						seen[o] = mark;
+						stack[sp++] = o;
+					}
+				}
+			}
+			final int[] closure = Arrays.copyOf(result, count);
+			Arrays.sort(closure);
+			return closure;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Process wide cache of compiled patterns and automata, so that
+ * operators fused into a single PE with the same expressions
+ * share a single compiled instance.
+ * <P>
+ * {@code Pattern} and {@link PatternAutomaton} are thread safe,
+ * so a cached instance is used concurrently by any number of
+ * operators, each with its own {@code Matcher}s. Patterns are keyed
+ * by expression and flags, automata by the expressions and flags
+ * of their patterns, in order. Sharing an automaton also shares
+ * the states it builds lazily while matching.
+ * </P>
+ * <P>
+ * Each cache holds at most {@link #MAX_ENTRIES} entries, once full
+ * new entries are compiled but not cached, so that a stream of
+ * distinct replacement expressions cannot exhaust the heap.
+ * </P>
+ */
+final class PatternCache {
+
+	static final int MAX_ENTRIES = 4096;
+
+	private static final ConcurrentHashMap<Key,Pattern> patterns = new ConcurrentHashMap<Key,Pattern>();
+	private static final ConcurrentHashMap<List<Key>,PatternAutomaton> automata = new ConcurrentHashMap<List<Key>,PatternAutomaton>();
+
+	private PatternCache() {
+	}
+
+	/**
+	 * Compiled pattern for {@code expression} with {@code flags}.
+	 * @throws java.util.regex.PatternSyntaxException If the expression is invalid.
+	 * @see Pattern#compile(String, int)
+	 */
+	static Pattern compile(String expression, int flags) {
+		final Key key = new Key(expression, flags);
+		final Pattern cached = patterns.get(key);
+		if (cached != null)
+			return cached;
+		final Pattern pattern = Pattern.compile(expression, flags);
+		if (patterns.size() >= MAX_ENTRIES)
+			return pattern;
+		final Pattern existing = patterns.putIfAbsent(key, pattern);
+		return existing == null ? pattern : existing;
+	}
+
+	/**
+	 * Combined automaton for {@code patterns}.
+	 * @see PatternAutomaton#PatternAutomaton(Pattern[])
+	 */
+	static PatternAutomaton automaton(Pattern[] patterns) {
+		final Key[] keys = new Key[patterns.length];
+		for (int i = 0; i < patterns.length; i++)
+			keys[i] = new Key(patterns[i].pattern(), patterns[i].flags());
+		final List<Key> key = Arrays.asList(keys);
+		final PatternAutomaton cached = automata.get(key);
+		if (cached != null)
+			return cached;
+		final PatternAutomaton automaton = new PatternAutomaton(patterns);
+		if (automata.size() >= MAX_ENTRIES)
+			return automaton;
+		final PatternAutomaton existing = automata.putIfAbsent(key, automaton);
+		return existing == null ? automaton : existing;
+	}
+
+	/**
+	 * Match each of {@code inputs} against each of {@code patterns}
+	 * {@code iterations} times, so that the matching code is compiled
+	 * by the JIT before the first tuple arrives.
+	 * @return Number of matches, returned so the work is not eliminated.
+	 */
+	static int warmUp(Pattern[] patterns, List<String> inputs, int iterations) {
+		int matched = 0;
+		for (Pattern pattern : patterns) {
+			final Matcher m = pattern.matcher("");
+			for (int i = 0; i < iterations; i++) {
+				for (String input : inputs) {
+					if (m.reset(input).matches())
+						matched++;
+				}
+			}
+		}
+		return matched;
+	}
+
+	private static final class Key {
+		private final String expression;
+		private final int flags;
+
+		Key(String expression, int flags) {
+			this.expression = expression;
+			this.flags = flags;
+		}
+
+		@Override
+		public int hashCode() {
+			return expression.hashCode() * 31 + flags;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return flags == other.flags && expression.equals(other.expression);
+		}
+	}
+}
@@ -0,0 +1,562 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Parser for the subset of {@code java.util.regex.Pattern} syntax
+ * that can be analyzed without a {@code Matcher}: literals,
+ * escaped characters, {@code .}, character classes
+ * (without unions or intersections), the predefined classes
+ * {@code \d \D \s \S \w \W}, groups, alternation, greedy and
+ * reluctant quantifiers, and a leading {@code ^} or trailing {@code $}.
+ * Patterns using anything else, such as back references, lookaround,
+ * possessive quantifiers, boundaries or flags, are not supported.
+ */
+final class PatternSyntax {
+
+	/**
+	 * Limits the expansion of bounded repetition.
+	 */
+	private static final int MAX_REPEAT = 1000;
+
+	private PatternSyntax() {
+	}
+
+	/**
+	 * Set of characters held as sorted, non-overlapping inclusive ranges.
+	 */
+	static final class CharSet {
+
+		static final CharSet DIGIT = new CharSet('0', '9');
+		static final CharSet WORD = new CharSet('a', 'z', 'A', 'Z', '_', '_', '0', '9');
+		static final CharSet SPACE = new CharSet(' ', ' ', '\t', '\r');
+		static final CharSet DOT = new CharSet('\n', '\n', '\r', '\r',
+				'\u0085', '\u0085', '\u2028', '\u2029').negate();
+
+		private final char[] ranges;
+
+		CharSet(char... ranges) {
+			this.ranges = normalize(ranges);
+		}
+
+		boolean contains(char c) {
+			for (int i = 0; i < ranges.length && ranges[i] <= c; i += 2) {
+				if (c <= ranges[i + 1])
+					return true;
+			}
+			return false;
+		}
+
+		CharSet union(CharSet other) {
+			final char[] both = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+			System.arraycopy(other.ranges, 0, both, ranges.length, other.ranges.length);
+			return new CharSet(both);
+		}
+
+		CharSet negate() {
+			final char[] negated = new char[ranges.length + 2];
+			int n = 0;
+			int next = Character.MIN_VALUE;
+			for (int i = 0; i < ranges.length; i += 2) {
+				if (ranges[i] > next) {
+					negated[n++] = (char) next;
+					negated[n++] = (char) (ranges[i] - 1);
+				}
+				next = ranges[i + 1] + 1;
+			}
+			if (next <= Character.MAX_VALUE) {
+				negated[n++] = (char) next;
+				negated[n++] = Character.MAX_VALUE;
+			}
+			return new CharSet(Arrays.copyOf(negated, n));
+		}
+
+		private static char[] normalize(char[] ranges) {
+			final int count = ranges.length / 2;
+			final long[] sorted = new long[count];
+			for (int i = 0; i < count; i++)
+				sorted[i] = ((long) ranges[i * 2] << 16) | ranges[i * 2 + 1];
+			Arrays.sort(sorted);
+
+			final char[] merged = new char[ranges.length];
+			int n = 0;
+			for (long r : sorted) {
+				final char lo = (char) (r >>> 16);
+				final char hi = (char) r;
+				if (n != 0 && lo <= merged[n - 1] + 1) {
+					if (hi > merged[n - 1])
+						merged[n - 1] = hi;
+				} else {
+					merged[n++] = lo;
+					merged[n++] = hi;
+				}
+			}
+			return Arrays.copyOf(merged, n);
+		}
+	}
+
+	/*
+	 * Parsed expression. The NFA is built backwards,
+	 * each node is given the state that follows it and
+	 * returns its start state.
+	 */
+	static abstract class Node {
+		abstract int build(PatternAutomaton.Nfa nfa, int next);
+		abstract Literals literals();
+	}
+
+	private static final class Chars extends Node {
+		private final CharSet set;
+		Chars(CharSet set) {
+			this.set = set;
+		}
+		@Override
+		int build(PatternAutomaton.Nfa nfa, int next) {
+			return nfa.chars(set, next);
+		}
+		@Override
+		Literals literals() {
+			if (set.ranges.length == 2 && set.ranges[0] == set.ranges[1])
+				return Literals.exact(String.valueOf(set.ranges[0]));
+			return Literals.NONE;
+		}
+	}
+
+	private static final class Sequence extends Node {
+		private final List<Node> nodes;
+		Sequence(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+		@Override
+		int build(PatternAutomaton.Nfa nfa, int next) {
+			for (int i = nodes.size() - 1; i >= 0; i--)
+				next = nodes.get(i).build(nfa, next);
+			return next;
+		}
+		@Override
+		Literals literals() {
+			// Adjacent exact nodes form a single literal.
+			final StringBuilder literal = new StringBuilder();
+			final List<String> required = new ArrayList<String>();
+			boolean exact = true;
+			for (Node node : nodes) {
+				final Literals ls = node.literals();
+				if (ls.exact != null) {
+					literal.append(ls.exact);
+					continue;
+				}
+				exact = false;
+				if (literal.length() != 0) {
+					required.add(literal.toString());
+					literal.setLength(0);
+				}
+				required.addAll(ls.required);
+			}
+			if (exact)
+				return Literals.exact(literal.toString());
+			if (literal.length() != 0)
+				required.add(literal.toString());
+			return new Literals(null, required);
+		}
+	}
+
+	private static final class Alternation extends Node {
+		private final List<Node> nodes;
+		Alternation(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+		@Override
+		int build(PatternAutomaton.Nfa nfa, int next) {
+			final int[] outs = new int[nodes.size()];
+			for (int i = 0; i < outs.length; i++)
+				outs[i] = nodes.get(i).build(nfa, next);
+			return nfa.split(outs);
+		}
+		@Override
+		Literals literals() {
+			return Literals.NONE;
+		}
+	}
+
+	private static final class Repeat extends Node {
+		private final Node node;
+		private final int min;
+		private final int max;
+		Repeat(Node node, int min, int max) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+		}
+		@Override
+		int build(PatternAutomaton.Nfa nfa, int next) {
+			int start;
+			if (max == -1) {
+				final int loop = nfa.split(0, next);
+				nfa.outs.get(loop)[0] = node.build(nfa, loop);
+				start = loop;
+			} else {
+				start = next;
+				for (int i = min; i < max; i++)
+					start = nfa.split(node.build(nfa, start), next);
+			}
+			for (int i = 0; i < min; i++)
+				start = node.build(nfa, start);
+			return start;
+		}
+		@Override
+		Literals literals() {
+			if (min == 0)
+				return Literals.NONE;
+			final Literals ls = node.literals();
+			if (ls.exact == null)
+				return ls;
+			if (min == max) {
+				final StringBuilder repeated = new StringBuilder();
+				for (int i = 0; i < min; i++)
+					repeated.append(ls.exact);
+				return Literals.exact(repeated.toString());
+			}
+			return new Literals(null, ls.required);
+		}
+	}
+
+	/**
+	 * Literal strings that any sequence matched by a node must contain.
+	 */
+	static final class Literals {
+		static final Literals NONE = new Literals(null, Collections.<String>emptyList());
+
+		/**
+		 * Non-null if the node only matches this string.
+		 */
+		final String exact;
+		final List<String> required;
+
+		Literals(String exact, List<String> required) {
+			this.exact = exact;
+			this.required = required;
+		}
+
+		static Literals exact(String exact) {
+			final List<String> required = exact.isEmpty() ?
+					Collections.<String>emptyList() : Collections.singletonList(exact);
+			return new Literals(exact, required);
+		}
+	}
+
+	/**
+	 * Return the literal strings that are contained in
+	 * every sequence that the pattern matches.
+	 * @return Required literals, empty if none could be determined.
+	 */
+	static String[] requiredLiterals(Pattern pattern) {
+		final Node node = parse(pattern);
+		if (node == null)
+			return new String[0];
+		final Set<String> required = new LinkedHashSet<String>(node.literals().required);
+		return required.toArray(new String[required.size()]);
+	}
+
+	/**
+	 * Return the number of each named capturing group in the
+	 * pattern, which {@code Pattern} does not expose. Unlike
+	 * {@link #parse(Pattern)} this accepts any valid pattern,
+	 * only escapes, quoting, character classes and groups are
+	 * recognized, so names in comments of a pattern using the
+	 * {@code COMMENTS} flag are reported.
+	 * @return Map of group name to group number.
+	 */
+	static Map<String,Integer> namedGroups(Pattern pattern) {
+		final String p = pattern.pattern();
+		final Map<String,Integer> groups = new HashMap<String,Integer>();
+		int count = 0;
+		int classDepth = 0;
+		for (int i = 0; i < p.length(); i++) {
+			final char c = p.charAt(i);
+			if (c == '\\') {
+				if (i + 1 < p.length() && p.charAt(i + 1) == 'Q') {
+					final int end = p.indexOf("\\E", i + 2);
+					i = end < 0 ? p.length() : end + 1;
+				} else {
+					i++;
+				}
+			} else if (c == '[') {
+				classDepth++;
+			} else if (c == ']' && classDepth > 0) {
+				classDepth--;
+			} else if (c == '(' && classDepth == 0) {
+				if (!p.startsWith("?", i + 1)) {
+					count++;
+				} else if (p.startsWith("?<", i + 1)
+						&& !p.startsWith("?<=", i + 1) && !p.startsWith("?<!", i + 1)) {
+					final int end = p.indexOf('>', i + 3);
+					groups.put(p.substring(i + 3, end), ++count);
+				}
+			}
+		}
+		return groups;
+	}
+
+	/**
+	 * Parse a pattern into a node tree.
+	 * @return Root node or {@code null} if the pattern
+	 * uses syntax that is not supported.
+	 */
+	static Node parse(Pattern pattern) {
+		if (pattern.flags() != 0)
+			return null;
+		try {
+			final Parser parser = new Parser(pattern.pattern());
+			final Node node = parser.alternation();
+			if (parser.pos != parser.p.length())
+				return null;
+			return node;
+		} catch (UnsupportedOperationException e) {
+			return null;
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static final class Parser {
+		final String p;
+		int pos;
+
+		Parser(String p) {
+			this.p = p;
+		}
+
+		private boolean more() {
+			return pos < p.length();
+		}
+
+		private char peek() {
+			return p.charAt(pos);
+		}
+
+		private boolean eat(char c) {
+			if (more() && peek() == c) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private static UnsupportedOperationException unsupported() {
+			return new UnsupportedOperationException();
+		}
+
+		Node alternation() {
+			final List<Node> nodes = new ArrayList<Node>();
+			do {
+				nodes.add(sequence());
+			} while (eat('|'));
+			return nodes.size() == 1 ? nodes.get(0) : new Alternation(nodes);
+		}
+
+		private Node sequence() {
+			final List<Node> nodes = new ArrayList<Node>();
+			while (more() && peek() != '|' && peek() != ')')
+				nodes.add(quantified(atom()));
+			return new Sequence(nodes);
+		}
+
+		private Node atom() {
+			final int at = pos;
+			final char c = p.charAt(pos++);
+			switch (c) {
+			case '(':
+				if (eat('?')) {
+					if (eat('<') && more() && Character.isLetter(peek())) {
+						// named group
+						while (p.charAt(pos++) != '>')
+							;
+					} else if (!eat(':')) {
+						throw unsupported();
+					}
+				}
+				final Node group = alternation();
+				if (!eat(')'))
+					throw unsupported();
+				return group;
+			case '[':
+				return new Chars(charClass());
+			case '.':
+				return new Chars(CharSet.DOT);
+			case '^':
+				if (at != 0)
+					throw unsupported();
+				return new Sequence(new ArrayList<Node>());
+			case '$':
+				if (pos != p.length())
+					throw unsupported();
+				return new Sequence(new ArrayList<Node>());
+			case '\\':
+				return new Chars(escape());
+			case '*': case '+': case '?': case '{': case ')':
+				throw unsupported();
+			default:
+				if (Character.isSurrogate(c))
+					throw unsupported();
+				return new Chars(new CharSet(c, c));
+			}
+		}
+
+		private Node quantified(Node node) {
+			while (more()) {
+				int min, max;
+				final char c = peek();
+				if (c == '*') {
+					min = 0; max = -1;
+				} else if (c == '+') {
+					min = 1; max = -1;
+				} else if (c == '?') {
+					min = 0; max = 1;
+				} else if (c == '{') {
+					pos++;
+					min = max = number();
+					if (eat(','))
+						max = more() && peek() == '}' ? -1 : number();
+					if (peek() != '}' || (max != -1 && max < min))
+						throw unsupported();
+				} else {
+					return node;
+				}
+				pos++;
+				if (max > MAX_REPEAT || min > MAX_REPEAT)
+					throw unsupported();
+				// reluctant matches the same complete sequences,
+				// possessive does not.
+				eat('?');
+				if (more() && peek() == '+')
+					throw unsupported();
+				node = new Repeat(node, min, max);
+			}
+			return node;
+		}
+
+		private int number() {
+			final int begin = pos;
+			while (more() && Character.isDigit(peek()) && pos - begin < 6)
+				pos++;
+			if (pos == begin)
+				throw unsupported();
+			return Integer.parseInt(p.substring(begin, pos));
+		}
+
+		private CharSet charClass() {
+			final boolean negate = eat('^');
+			if (peek() == ']')
+				throw unsupported();
+			CharSet set = null;
+			while (!eat(']')) {
+				final char c = p.charAt(pos++);
+				CharSet item;
+				if (c == '[' || (c == '&' && peek() == '&'))
+					throw unsupported();
+				if (c == '\\') {
+					item = escape();
+				} else if (Character.isSurrogate(c)) {
+					throw unsupported();
+				} else {
+					item = new CharSet(c, c);
+				}
+				if (peek() == '-' && p.charAt(pos + 1) != ']') {
+					pos++;
+					final char lo = single(item);
+					final char e = p.charAt(pos++);
+					final char hi;
+					if (e == '\\')
+						hi = single(escape());
+					else if (e == '[' || Character.isSurrogate(e))
+						throw unsupported();
+					else
+						hi = e;
+					if (hi < lo)
+						throw unsupported();
+					item = new CharSet(lo, hi);
+				}
+				set = set == null ? item : set.union(item);
+			}
+			return negate ? set.negate() : set;
+		}
+
+		private static char single(CharSet set) {
+			if (set.ranges.length != 2 || set.ranges[0] != set.ranges[1])
+				throw unsupported();
+			return set.ranges[0];
+		}
+
+		private CharSet escape() {
+			final char c = p.charAt(pos++);
+			switch (c) {
+			case 'd': return CharSet.DIGIT;
+			case 'D': return CharSet.DIGIT.negate();
+			case 'w': return CharSet.WORD;
+			case 'W': return CharSet.WORD.negate();
+			case 's': return CharSet.SPACE;
+			case 'S': return CharSet.SPACE.negate();
+			case 't': return literal('\t');
+			case 'n': return literal('\n');
+			case 'r': return literal('\r');
+			case 'f': return literal('\f');
+			case 'a': return literal('\u0007');
+			case 'e': return literal('\u001B');
+			case 'c': return literal((char) (p.charAt(pos++) ^ 64));
+			case '0': {
+				int v = 0;
+				for (int i = 0; i < 3 && more() && peek() >= '0' && peek() <= '7'; i++) {
+					final int nv = v * 8 + (peek() - '0');
+					if (nv > 0377)
+						break;
+					v = nv;
+					pos++;
+				}
+				return literal((char) v);
+			}
+			case 'x':
+				if (eat('{')) {
+					final int end = p.indexOf('}', pos);
+					final int cp = Integer.parseInt(p.substring(pos, end), 16);
+					pos = end + 1;
+					if (cp > Character.MAX_VALUE || Character.isSurrogate((char) cp))
+						throw unsupported();
+					return literal((char) cp);
+				}
+				return hex(2);
+			case 'u':
+				return hex(4);
+			default:
+				if (Character.isLetterOrDigit(c) || Character.isSurrogate(c))
+					throw unsupported();
+				return literal(c);
+			}
+		}
+
+		private CharSet hex(int digits) {
+			final char c = (char) Integer.parseInt(p.substring(pos, pos + digits), 16);
+			pos += digits;
+			if (Character.isSurrogate(c))
+				throw unsupported();
+			return literal(c);
+		}
+
+		private static CharSet literal(char c) {
+			return new CharSet(c, c);
+		}
+	}
+}
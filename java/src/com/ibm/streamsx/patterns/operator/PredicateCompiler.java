@@ -0,0 +1,762 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Compiles a predicate expression over the attributes of a schema
+ * into a tree of evaluators specialized by type and operator.
+ * <P>
+ * Attributes are resolved to their index at compilation and read
+ * using the primitive getter for their type, so evaluation does
+ * not box values or look up attributes by name. Each operator is
+ * a separate evaluator class for each operand type, so evaluating
+ * a node involves no dispatch on the operator or type.
+ * </P>
+ * <P>
+ * The expression syntax is:
+ * </P>
+ * <UL>
+ * <LI>Attribute names of boolean, signed integer, {@code uint8},
+ * {@code uint16}, {@code uint32}, floating point, {@code rstring} and
+ * {@code ustring} types. Unsigned values are evaluated as non-negative
+ * 64-bit integers, so {@code uint64} is not supported.</LI>
+ * <LI>Integer, decimal and double quoted string literals, {@code true} and {@code false}.</LI>
+ * <LI>Arithmetic {@code + - * / %}, integer operands are evaluated as
+ * 64-bit integers, mixed operands as doubles. A predicate that divides
+ * an integer by zero is false for that tuple.</LI>
+ * <LI>Comparisons {@code == != < <= > >=} between numeric or string operands.</LI>
+ * <LI>Logical {@code && || !}, with short circuit evaluation.</LI>
+ * <LI>String functions {@code length(s)}, {@code startsWith(s, prefix)},
+ * {@code endsWith(s, suffix)} and {@code contains(s, text)}.</LI>
+ * </UL>
+ */
+final class PredicateCompiler {
+
+	/**
+	 * Compiled predicate.
+	 */
+	static abstract class Predicate {
+		abstract boolean test(Tuple tuple);
+	}
+
+	private static abstract class LongNode {
+		abstract long eval(Tuple tuple);
+	}
+
+	private static abstract class DoubleNode {
+		abstract double eval(Tuple tuple);
+	}
+
+	private static abstract class StringNode {
+		abstract String eval(Tuple tuple);
+	}
+
+	private enum Kind { BOOLEAN, LONG, DOUBLE, STRING }
+
+	/**
+	 * Result of compiling a sub-expression, exactly one node is set.
+	 */
+	private static final class Typed {
+		final Kind kind;
+		final Predicate bool;
+		final LongNode integer;
+		final DoubleNode real;
+		final StringNode string;
+
+		Typed(Predicate node) {
+			kind = Kind.BOOLEAN; bool = node; integer = null; real = null; string = null;
+		}
+		Typed(LongNode node) {
+			kind = Kind.LONG; bool = null; integer = node; real = null; string = null;
+		}
+		Typed(DoubleNode node) {
+			kind = Kind.DOUBLE; bool = null; integer = null; real = node; string = null;
+		}
+		Typed(StringNode node) {
+			kind = Kind.STRING; bool = null; integer = null; real = null; string = node;
+		}
+
+		boolean isNumeric() {
+			return kind == Kind.LONG || kind == Kind.DOUBLE;
+		}
+
+		DoubleNode asDouble() {
+			if (kind == Kind.DOUBLE)
+				return real;
+			final LongNode l = integer;
+			return new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return l.eval(tuple);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Compile {@code expression} against {@code schema}.
+	 * @throws IllegalArgumentException If the expression is invalid,
+	 * references an unknown attribute or is not a boolean expression.
+	 */
+	static Predicate compile(String expression, StreamSchema schema) {
+		final PredicateCompiler compiler = new PredicateCompiler(expression, schema);
+		final Typed result = compiler.or();
+		if (compiler.token != Token.END)
+			throw compiler.error("Unexpected " + compiler.text);
+		final Predicate predicate = compiler.bool(result);
+		if (!compiler.integerDivision)
+			return predicate;
+		return new Predicate() {
+			@Override
+			boolean test(Tuple tuple) {
+				try {
+					return predicate.test(tuple);
+				} catch (ArithmeticException e) {
+					// integer division by zero
+					return false;
+				}
+			}
+		};
+	}
+
+	private enum Token { END, NAME, INTEGER, DECIMAL, STRING, SYMBOL }
+
+	private final String expression;
+	private final StreamSchema schema;
+	private int pos;
+	private int start;
+	private Token token;
+	private String text;
+	private boolean integerDivision;
+
+	private PredicateCompiler(String expression, StreamSchema schema) {
+		this.expression = expression;
+		this.schema = schema;
+		next();
+	}
+
+	private IllegalArgumentException error(String message) {
+		return error(message, start);
+	}
+
+	private IllegalArgumentException error(String message, int at) {
+		return new IllegalArgumentException(message + " at position " + at
+				+ " in expression: " + expression);
+	}
+
+	private void next() {
+		while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos)))
+			pos++;
+		start = pos;
+		if (pos == expression.length()) {
+			token = Token.END;
+			text = "end of expression";
+			return;
+		}
+		final char c = expression.charAt(pos);
+		if (Character.isJavaIdentifierStart(c)) {
+			while (pos < expression.length() && Character.isJavaIdentifierPart(expression.charAt(pos)))
+				pos++;
+			token = Token.NAME;
+		} else if (Character.isDigit(c) || (c == '.' && pos + 1 < expression.length()
+				&& Character.isDigit(expression.charAt(pos + 1)))) {
+			token = Token.INTEGER;
+			while (pos < expression.length()) {
+				final char d = expression.charAt(pos);
+				if (d == '.' || d == 'e' || d == 'E') {
+					token = Token.DECIMAL;
+					if ((d == 'e' || d == 'E') && pos + 1 < expression.length()
+							&& (expression.charAt(pos + 1) == '-' || expression.charAt(pos + 1) == '+'))
+						pos++;
+				} else if (!Character.isDigit(d)) {
+					break;
+				}
+				pos++;
+			}
+		} else if (c == '"') {
+			final StringBuilder sb = new StringBuilder();
+			pos++;
+			for (;;) {
+				if (pos == expression.length())
+					throw error("Unterminated string");
+				char s = expression.charAt(pos++);
+				if (s == '"')
+					break;
+				if (s == '\\') {
+					if (pos == expression.length())
+						throw error("Unterminated string");
+					s = expression.charAt(pos++);
+					if (s == 'n')
+						s = '\n';
+					else if (s == 't')
+						s = '\t';
+				}
+				sb.append(s);
+			}
+			token = Token.STRING;
+			text = sb.toString();
+			return;
+		} else {
+			pos++;
+			if (pos < expression.length()) {
+				final String two = expression.substring(pos - 1, pos + 1);
+				if (two.equals("&&") || two.equals("||") || two.equals("==")
+						|| two.equals("!=") || two.equals("<=") || two.equals(">="))
+					pos++;
+			}
+			token = Token.SYMBOL;
+		}
+		text = expression.substring(start, pos);
+	}
+
+	private boolean accept(String symbol) {
+		if (token == Token.SYMBOL && text.equals(symbol)) {
+			next();
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(String symbol) {
+		if (!accept(symbol))
+			throw error("Expected " + symbol + " but found " + text);
+	}
+
+	private Predicate bool(Typed operand) {
+		if (operand.kind != Kind.BOOLEAN)
+			throw error("Expected a boolean expression");
+		return operand.bool;
+	}
+
+	private Typed or() {
+		Typed left = and();
+		while (accept("||")) {
+			final Predicate l = bool(left);
+			final Predicate r = bool(and());
+			left = new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.test(tuple) || r.test(tuple);
+				}
+			});
+		}
+		return left;
+	}
+
+	private Typed and() {
+		Typed left = not();
+		while (accept("&&")) {
+			final Predicate l = bool(left);
+			final Predicate r = bool(not());
+			left = new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.test(tuple) && r.test(tuple);
+				}
+			});
+		}
+		return left;
+	}
+
+	private Typed not() {
+		if (accept("!")) {
+			final Predicate operand = bool(not());
+			return new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return !operand.test(tuple);
+				}
+			});
+		}
+		return comparison();
+	}
+
+	private Typed comparison() {
+		final Typed left = sum();
+		if (token != Token.SYMBOL)
+			return left;
+		final String op = text;
+		if (!(op.equals("==") || op.equals("!=") || op.equals("<")
+				|| op.equals("<=") || op.equals(">") || op.equals(">=")))
+			return left;
+		next();
+		final Typed right = sum();
+
+		if (left.kind == Kind.LONG && right.kind == Kind.LONG)
+			return new Typed(compare(op, left.integer, right.integer));
+		if (left.isNumeric() && right.isNumeric())
+			return new Typed(compare(op, left.asDouble(), right.asDouble()));
+		if (left.kind == Kind.STRING && right.kind == Kind.STRING)
+			return new Typed(compare(op, left.string, right.string));
+		if (left.kind == Kind.BOOLEAN && right.kind == Kind.BOOLEAN
+				&& (op.equals("==") || op.equals("!="))) {
+			final Predicate l = left.bool;
+			final Predicate r = right.bool;
+			final boolean equal = op.equals("==");
+			return new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return (l.test(tuple) == r.test(tuple)) == equal;
+				}
+			});
+		}
+		throw error("Cannot compare " + left.kind + " with " + right.kind + " using " + op);
+	}
+
+	private Typed sum() {
+		Typed left = term();
+		while (token == Token.SYMBOL && (text.equals("+") || text.equals("-"))) {
+			final String op = text;
+			next();
+			left = arithmetic(op, left, term());
+		}
+		return left;
+	}
+
+	private Typed term() {
+		Typed left = unary();
+		while (token == Token.SYMBOL && (text.equals("*") || text.equals("/") || text.equals("%"))) {
+			final String op = text;
+			next();
+			left = arithmetic(op, left, unary());
+		}
+		return left;
+	}
+
+	private Typed unary() {
+		if (accept("-")) {
+			final Typed operand = unary();
+			if (operand.kind == Kind.LONG) {
+				final LongNode l = operand.integer;
+				return new Typed(new LongNode() {
+					@Override
+					long eval(Tuple tuple) {
+						return -l.eval(tuple);
+					}
+				});
+			}
+			if (operand.kind == Kind.DOUBLE) {
+				final DoubleNode d = operand.real;
+				return new Typed(new DoubleNode() {
+					@Override
+					double eval(Tuple tuple) {
+						return -d.eval(tuple);
+					}
+				});
+			}
+			throw error("Cannot negate " + operand.kind);
+		}
+		return primary();
+	}
+
+	private Typed primary() {
+		switch (token) {
+		case INTEGER:
+			final long l;
+			try {
+				l = Long.parseLong(text);
+			} catch (NumberFormatException e) {
+				throw error("Invalid number " + text);
+			}
+			next();
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return l;
+				}
+			});
+		case DECIMAL:
+			final double d;
+			try {
+				d = Double.parseDouble(text);
+			} catch (NumberFormatException e) {
+				throw error("Invalid number " + text);
+			}
+			next();
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return d;
+				}
+			});
+		case STRING:
+			final String s = text;
+			next();
+			return new Typed(new StringNode() {
+				@Override
+				String eval(Tuple tuple) {
+					return s;
+				}
+			});
+		case NAME:
+			final String name = text;
+			final int at = start;
+			next();
+			if (accept("("))
+				return function(name, at);
+			if (name.equals("true") || name.equals("false")) {
+				final boolean b = Boolean.parseBoolean(name);
+				return new Typed(new Predicate() {
+					@Override
+					boolean test(Tuple tuple) {
+						return b;
+					}
+				});
+			}
+			return attribute(name, at);
+		case SYMBOL:
+			if (accept("(")) {
+				final Typed inner = or();
+				expect(")");
+				return inner;
+			}
+			// fall through
+		default:
+			throw error("Unexpected " + text);
+		}
+	}
+
+	private Typed function(String name, int at) {
+		final StringNode first = string(or());
+		if (name.equals("length")) {
+			expect(")");
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return first.eval(tuple).length();
+				}
+			});
+		}
+		expect(",");
+		final StringNode second = string(or());
+		expect(")");
+		if (name.equals("startsWith")) {
+			return new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return first.eval(tuple).startsWith(second.eval(tuple));
+				}
+			});
+		}
+		if (name.equals("endsWith")) {
+			return new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return first.eval(tuple).endsWith(second.eval(tuple));
+				}
+			});
+		}
+		if (name.equals("contains")) {
+			return new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return first.eval(tuple).contains(second.eval(tuple));
+				}
+			});
+		}
+		throw error("Unknown function " + name, at);
+	}
+
+	private StringNode string(Typed operand) {
+		if (operand.kind != Kind.STRING)
+			throw error("Expected a string expression");
+		return operand.string;
+	}
+
+	private Typed attribute(String name, int at) {
+		final Attribute attribute = schema.getAttribute(name);
+		if (attribute == null)
+			throw error("Unknown attribute " + name, at);
+		final int index = attribute.getIndex();
+		switch (attribute.getType().getMetaType()) {
+		case BOOLEAN:
+			return new Typed(new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return tuple.getBoolean(index);
+				}
+			});
+		case INT8:
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return tuple.getByte(index);
+				}
+			});
+		case UINT8:
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return tuple.getByte(index) & 0xFF;
+				}
+			});
+		case INT16:
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return tuple.getShort(index);
+				}
+			});
+		case UINT16:
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return tuple.getShort(index) & 0xFFFF;
+				}
+			});
+		case INT32:
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return tuple.getInt(index);
+				}
+			});
+		case UINT32:
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return tuple.getInt(index) & 0xFFFFFFFFL;
+				}
+			});
+		case INT64:
+			return new Typed(new LongNode() {
+				@Override
+				long eval(Tuple tuple) {
+					return tuple.getLong(index);
+				}
+			});
+		case FLOAT32:
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return tuple.getFloat(index);
+				}
+			});
+		case FLOAT64:
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return tuple.getDouble(index);
+				}
+			});
+		case RSTRING:
+		case USTRING:
+			return new Typed(new StringNode() {
+				@Override
+				String eval(Tuple tuple) {
+					return tuple.getString(index);
+				}
+			});
+		default:
+			throw error("Unsupported type " + attribute.getType().getLanguageType()
+					+ " for attribute " + name, at);
+		}
+	}
+
+	private Typed arithmetic(String op, Typed left, Typed right) {
+		if (!left.isNumeric() || !right.isNumeric())
+			throw error("Cannot apply " + op + " to " + left.kind + " and " + right.kind);
+		if (left.kind == Kind.LONG && right.kind == Kind.LONG) {
+			final LongNode l = left.integer;
+			final LongNode r = right.integer;
+			switch (op.charAt(0)) {
+			case '+':
+				return new Typed(new LongNode() {
+					@Override
+					long eval(Tuple tuple) {
+						return l.eval(tuple) + r.eval(tuple);
+					}
+				});
+			case '-':
+				return new Typed(new LongNode() {
+					@Override
+					long eval(Tuple tuple) {
+						return l.eval(tuple) - r.eval(tuple);
+					}
+				});
+			case '*':
+				return new Typed(new LongNode() {
+					@Override
+					long eval(Tuple tuple) {
+						return l.eval(tuple) * r.eval(tuple);
+					}
+				});
+			case '/':
+				integerDivision = true;
+				return new Typed(new LongNode() {
+					@Override
+					long eval(Tuple tuple) {
+						return l.eval(tuple) / r.eval(tuple);
+					}
+				});
+			default:
+				integerDivision = true;
+				return new Typed(new LongNode() {
+					@Override
+					long eval(Tuple tuple) {
+						return l.eval(tuple) % r.eval(tuple);
+					}
+				});
+			}
+		}
+		final DoubleNode l = left.asDouble();
+		final DoubleNode r = right.asDouble();
+		switch (op.charAt(0)) {
+		case '+':
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return l.eval(tuple) + r.eval(tuple);
+				}
+			});
+		case '-':
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return l.eval(tuple) - r.eval(tuple);
+				}
+			});
+		case '*':
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return l.eval(tuple) * r.eval(tuple);
+				}
+			});
+		case '/':
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return l.eval(tuple) / r.eval(tuple);
+				}
+			});
+		default:
+			return new Typed(new DoubleNode() {
+				@Override
+				double eval(Tuple tuple) {
+					return l.eval(tuple) % r.eval(tuple);
+				}
+			});
+		}
+	}
+
+	private static Predicate compare(String op, final LongNode l, final LongNode r) {
+		if (op.equals("=="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) == r.eval(tuple);
+				}
+			};
+		if (op.equals("!="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) != r.eval(tuple);
+				}
+			};
+		if (op.equals("<"))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) < r.eval(tuple);
+				}
+			};
+		if (op.equals("<="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) <= r.eval(tuple);
+				}
+			};
+		if (op.equals(">"))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) > r.eval(tuple);
+				}
+			};
+		return new Predicate() {
+			@Override
+			boolean test(Tuple tuple) {
+				return l.eval(tuple) >= r.eval(tuple);
+			}
+		};
+	}
+
+	private static Predicate compare(String op, final DoubleNode l, final DoubleNode r) {
+		if (op.equals("=="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) == r.eval(tuple);
+				}
+			};
+		if (op.equals("!="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) != r.eval(tuple);
+				}
+			};
+		if (op.equals("<"))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) < r.eval(tuple);
+				}
+			};
+		if (op.equals("<="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) <= r.eval(tuple);
+				}
+			};
+		if (op.equals(">"))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple) > r.eval(tuple);
+				}
+			};
+		return new Predicate() {
+			@Override
+			boolean test(Tuple tuple) {
+				return l.eval(tuple) >= r.eval(tuple);
+			}
+		};
+	}
+
+	private static Predicate compare(String op, final StringNode l, final StringNode r) {
+		if (op.equals("=="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return l.eval(tuple).equals(r.eval(tuple));
+				}
+			};
+		if (op.equals("!="))
+			return new Predicate() {
+				@Override
+				boolean test(Tuple tuple) {
+					return !l.eval(tuple).equals(r.eval(tuple));
+				}
+			};
+		final int sign = op.charAt(0) == '<' ? -1 : 1;
+		final boolean orEqual = op.length() == 2;
+		return new Predicate() {
+			@Override
+			boolean test(Tuple tuple) {
+				final int c = Integer.signum(l.eval(tuple).compareTo(r.eval(tuple)));
+				return c == sign || (orEqual && c == 0);
+			}
+		};
+	}
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Filter that limits the rate of tuples passing to {@code rate}
+ * tuples per second, allowing bursts of up to {@code burst} tuples.
+ * Tuples over the limit are submitted to the second output port if
+ * it exists, otherwise they are discarded.
+ * <P>
+ * The limit is a token bucket, holding up to {@code burst} tokens
+ * and refilled at {@code rate} tokens per second, with each passing
+ * tuple taking a token. The bucket is represented by the time at which
+ * it will next be full, updated by compare-and-set, so tuples arriving
+ * on multiple threads are limited without locking. Time is read
+ * from {@link #nanoTime()}.
+ * </P>
+ * @see SamplingFilter
+ */
+public class RateLimitFilter extends Filter {
+
+	private double rate;
+	private int burst = 1;
+
+	/**
+	 * Nanoseconds to refill one token.
+	 */
+	private long interval;
+	/**
+	 * Nanoseconds the bucket may be ahead of
+	 * the current time and still hold a token.
+	 */
+	private long tolerance;
+	/**
+	 * Time at which the bucket would be full if no more tuples passed.
+	 */
+	private final AtomicLong full = new AtomicLong();
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Starts with a full bucket.
+	 * </P>
+	 */
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+		interval = Math.max(1L, Math.round(1E9 / getRate()));
+		tolerance = (getBurst() - 1) * interval;
+		full.set(nanoTime());
+	}
+
+	/**
+	 * Current time used to refill the bucket.
+	 * <BR>
+	 * This implementation returns {@code System.nanoTime()}.
+	 * @return Time in nanoseconds, only differences are significant.
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Returns {@code true} if a token was taken from the bucket.
+	 */
+	@Override
+	protected boolean filter(Tuple tuple) throws Exception {
+		for (;;) {
+			final long now = nanoTime();
+			final long current = full.get();
+			final long start = current - now < 0 ? now : current;
+			if (start - now > tolerance)
+				return false;
+			if (full.compareAndSet(current, start + interval))
+				return true;
+		}
+	}
+
+	/**
+	 * Maximum sustained rate of tuples passing.
+	 * @return Rate in tuples per second.
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	@Parameter(description="Maximum sustained rate, in tuples per second, of tuples passing the filter.")
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * Maximum number of tuples passing in a burst.
+	 * @return Burst size in tuples.
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	@Parameter(optional=true, description="Maximum number of tuples that pass the filter in a burst, after a period of fewer tuples than the rate. Defaults to 1.")
+	public void setBurst(int burst) {
+		this.burst = burst;
+	}
+
+	/**
+	 * Check the rate and burst, at runtime as their
+	 * values may be expressions when compiling.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck(compile=false)
+	public static void checkRate(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> rate = context.getParameterValues("rate");
+		if (!rate.isEmpty() && !(Double.parseDouble(rate.get(0)) > 0.0))
+			checker.setInvalidContext("The rate parameter must be greater than zero.", null);
+		List<String> burst = context.getParameterValues("burst");
+		if (!burst.isEmpty() && Integer.parseInt(burst.get(0)) < 1)
+			checker.setInvalidContext("The burst parameter must be at least 1.", null);
+	}
+}
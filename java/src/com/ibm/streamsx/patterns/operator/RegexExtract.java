@@ -0,0 +1,642 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ibm.streams.operator.AbstractOperator;
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingData;
+import com.ibm.streams.operator.StreamingInput;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.InputPortSet;
+import com.ibm.streams.operator.model.InputPorts;
+import com.ibm.streams.operator.model.OutputPortSet;
+import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
+import com.ibm.streams.operator.model.OutputPorts;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streams.operator.types.RString;
+
+/**
+ * Pattern that extracts capture groups of a regular expression
+ * into the attributes of output tuples, using
+ * {@code java.util.regex.Pattern} and {@code Matcher}.
+ * <P>
+ * The character sequence returned by {@link #getTupleSequence(Tuple)} is
+ * matched once against the expression returned by {@link #getExpression()}.
+ * When it matches an output tuple is submitted to the first output port,
+ * with each attribute that is mapped to a capture group set from that group.
+ * An output attribute is mapped to the named group with the same name, and
+ * the {@code groupAttributes} parameter maps output attributes to numbered
+ * groups, its first attribute to group 1 and so on. Other output attributes
+ * are copied from the input attribute with the same name and type, if any.
+ * Tuples that do not match are submitted to the second output port
+ * if it exists, otherwise they are discarded.
+ * </P>
+ * <P>
+ * Groups are read from the sequence using the offsets of the match.
+ * Integer and boolean attributes are parsed directly from the sequence,
+ * without creating a {@code String}, as are {@code float32} and
+ * {@code float64} attributes written as plain decimals, such as
+ * {@code -12.5}, with few enough digits to be converted exactly. Other
+ * floating point groups, for example with an exponent, are parsed from a
+ * {@code String}. Copied attributes are read and set using the primitive
+ * accessors for their type. {@code rstring} attributes are
+ * copied directly from the bytes when the sequence is a view returned by
+ * {@link #getByteSequence(Tuple, int)}. Supported attribute types are
+ * {@code rstring}, {@code ustring}, signed and unsigned integers,
+ * {@code float32}, {@code float64} and {@code boolean}. A group that did
+ * not participate in the match leaves its attribute with its default value.
+ * A tuple whose group is not a valid value for its attribute's type
+ * is treated as not matching.
+ * </P>
+ * <P>
+ * By default matching is serialized through a single {@code Matcher}.
+ * When the {@code concurrentMatching} parameter is {@code true} each
+ * thread delivering tuples uses its own {@code Matcher}.
+ * </P>
+ * <P>
+ * Compiled patterns are shared through a process wide cache, so
+ * operators fused into the same PE with the same expression compile
+ * it once. When the {@code warmupInputs} parameter is set each sample
+ * input is matched {@code warmupIterations} times during initialization,
+ * so that the first tuples are not matched by interpreted code.
+ * </P>
+ */
+@InputPorts(@InputPortSet(cardinality=1,id="input", description="Tuples to be matched."))
+@OutputPorts({
+	@OutputPortSet(cardinality=1,description="Tuples with the attributes extracted from matching tuples.",
+			windowPunctuationOutputMode=WindowPunctuationOutputMode.Preserving,
+			windowPunctuationInputPort="input"),
+	@OutputPortSet(cardinality=1,optional=true,description="Input tuples that do not match.")
+})
+public abstract class RegexExtract extends AbstractOperator {
+
+	private List<String> groupAttributes;
+	private boolean concurrentMatching;
+	private List<String> warmupInputs;
+	private int warmupIterations = 1000;
+
+	private Matcher matcher;
+	private ThreadLocal<Matcher> threadMatcher;
+
+	private StreamingOutput<OutputTuple> extractPort;
+	private StreamingOutput<?> notMatchPort;
+
+	/**
+	 * Group number, output attribute index and type of each mapped group.
+	 */
+	private int[] groups;
+	private int[] groupIndexes;
+	private MetaType[] groupTypes;
+
+	/**
+	 * Input and output attribute indexes of copied attributes.
+	 */
+	private int[] copyFrom;
+	private int[] copyTo;
+	private MetaType[] copyTypes;
+
+	private final ThreadLocal<ByteSequence> byteSequence = new ThreadLocal<ByteSequence>() {
+		@Override
+		protected ByteSequence initialValue() {
+			return new ByteSequence();
+		}
+	};
+
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+		extractPort = getOutput(0);
+		if (context.getNumberOfStreamingOutputs() >= 2)
+			notMatchPort = getOutput(1);
+
+		final Pattern pattern = createPattern();
+		final int groupCount = pattern.matcher("").groupCount();
+		final Map<String,Integer> named = PatternSyntax.namedGroups(pattern);
+		final List<String> numbered = getGroupAttributes();
+
+		final StreamSchema input = context.getStreamingInputs().get(0).getStreamSchema();
+		final StreamSchema output = extractPort.getStreamSchema();
+		final List<Integer> mapped = new ArrayList<Integer>();
+		final List<Integer> copied = new ArrayList<Integer>();
+		for (Attribute attribute : output) {
+			int group = numbered == null ? -1 : numbered.indexOf(attribute.getName());
+			if (group >= 0)
+				group++;
+			else if (named.containsKey(attribute.getName()))
+				group = named.get(attribute.getName());
+
+			if (group > 0) {
+				if (group > groupCount)
+					throw new IllegalArgumentException("Attribute " + attribute.getName()
+							+ " is mapped to group " + group + " but the expression has "
+							+ groupCount + " groups: " + pattern.pattern());
+				if (!isSupported(attribute.getType().getMetaType()))
+					throw new IllegalArgumentException("Attribute " + attribute.getName()
+							+ " has a type that cannot be extracted: " + attribute.getType().getMetaType());
+				mapped.add(group);
+				mapped.add(attribute.getIndex());
+				continue;
+			}
+			final Attribute from = input.getAttribute(attribute.getName());
+			if (from != null && from.getType().getMetaType() == attribute.getType().getMetaType()) {
+				copied.add(from.getIndex());
+				copied.add(attribute.getIndex());
+			}
+		}
+
+		groups = new int[mapped.size() / 2];
+		groupIndexes = new int[groups.length];
+		groupTypes = new MetaType[groups.length];
+		for (int g = 0; g < groups.length; g++) {
+			groups[g] = mapped.get(g * 2);
+			groupIndexes[g] = mapped.get(g * 2 + 1);
+			groupTypes[g] = output.getAttribute(groupIndexes[g]).getType().getMetaType();
+		}
+		copyFrom = new int[copied.size() / 2];
+		copyTo = new int[copyFrom.length];
+		copyTypes = new MetaType[copyFrom.length];
+		for (int c = 0; c < copyFrom.length; c++) {
+			copyFrom[c] = copied.get(c * 2);
+			copyTo[c] = copied.get(c * 2 + 1);
+			copyTypes[c] = output.getAttribute(copyTo[c]).getType().getMetaType();
+		}
+
+		if (isConcurrentMatching()) {
+			threadMatcher = new ThreadLocal<Matcher>() {
+				@Override
+				protected Matcher initialValue() {
+					return pattern.matcher("");
+				}
+			};
+		} else {
+			matcher = pattern.matcher("");
+		}
+
+		if (getWarmupInputs() != null)
+			PatternCache.warmUp(new Pattern[] {pattern}, getWarmupInputs(), getWarmupIterations());
+	}
+
+	private static boolean isSupported(MetaType type) {
+		switch (type) {
+		case RSTRING:
+		case USTRING:
+		case INT8:
+		case UINT8:
+		case INT16:
+		case UINT16:
+		case INT32:
+		case UINT32:
+		case INT64:
+		case UINT64:
+		case FLOAT32:
+		case FLOAT64:
+		case BOOLEAN:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Compile the expression returned by {@link #getExpression()}.
+	 * This implementation returns the pattern from a process wide
+	 * cache, shared with any other operator using the same expression.
+	 * @return Compiled pattern.
+	 */
+	protected Pattern createPattern() {
+		return PatternCache.compile(getExpression(), 0);
+	}
+
+	/**
+	 * Match the character sequence returned by {@link #getTupleSequence(Tuple)}
+	 * and submit an output tuple with the extracted attributes if it matches,
+	 * otherwise submit {@code tuple} to the second output port if it exists.
+	 * <BR>
+	 * Unless {@link #isConcurrentMatching()} is {@code true} matching
+	 * is {@code synchronized} as a {@code Matcher} is not thread safe.
+	 */
+	@Override
+	public void process(StreamingInput<Tuple> stream, Tuple tuple)
+			throws Exception {
+		final OutputTuple extracted;
+		if (threadMatcher != null) {
+			extracted = extract(threadMatcher.get(), tuple);
+		} else {
+			synchronized (this) {
+				extracted = extract(matcher, tuple);
+			}
+		}
+
+		if (extracted != null)
+			extractPort.submit(extracted);
+		else if (notMatchPort != null)
+			notMatchPort.submit(tuple);
+	}
+
+	/**
+	 * Create the output tuple if the tuple matches.
+	 * @return Output tuple or {@code null} if the tuple does not match.
+	 */
+	private OutputTuple extract(final Matcher m, final Tuple tuple) throws Exception {
+		final CharSequence sequence = getTupleSequence(tuple);
+		if (!m.reset(sequence).matches())
+			return null;
+
+		final OutputTuple out = extractPort.newTuple();
+		try {
+			for (int g = 0; g < groups.length; g++) {
+				final int start = m.start(groups[g]);
+				if (start >= 0)
+					set(out, groupIndexes[g], groupTypes[g], sequence, start, m.end(groups[g]));
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		for (int c = 0; c < copyFrom.length; c++)
+			copy(tuple, copyFrom[c], out, copyTo[c], copyTypes[c]);
+		return out;
+	}
+
+	/**
+	 * Copy an attribute, using the primitive accessors for
+	 * primitive types so that the value is not boxed.
+	 */
+	private static void copy(final Tuple tuple, final int from, final OutputTuple out,
+			final int to, final MetaType type) {
+		switch (type) {
+		case BOOLEAN:
+			out.setBoolean(to, tuple.getBoolean(from));
+			break;
+		case INT8:
+		case UINT8:
+			out.setByte(to, tuple.getByte(from));
+			break;
+		case INT16:
+		case UINT16:
+			out.setShort(to, tuple.getShort(from));
+			break;
+		case INT32:
+		case UINT32:
+			out.setInt(to, tuple.getInt(from));
+			break;
+		case INT64:
+		case UINT64:
+			out.setLong(to, tuple.getLong(from));
+			break;
+		case FLOAT32:
+			out.setFloat(to, tuple.getFloat(from));
+			break;
+		case FLOAT64:
+			out.setDouble(to, tuple.getDouble(from));
+			break;
+		default:
+			out.setObject(to, tuple.getObject(from));
+			break;
+		}
+	}
+
+	/**
+	 * Set an attribute from the characters from {@code start}
+	 * (inclusive) to {@code end} (exclusive) of {@code sequence}.
+	 */
+	private static void set(final OutputTuple out, final int index, final MetaType type,
+			final CharSequence sequence, final int start, final int end) {
+		switch (type) {
+		case RSTRING:
+			if (sequence instanceof ByteSequence)
+				out.setObject(index, new RString(((ByteSequence) sequence).toBytes(start, end)));
+			else
+				out.setObject(index, new RString(sequence.subSequence(start, end).toString()));
+			break;
+		case USTRING:
+			out.setString(index, sequence.subSequence(start, end).toString());
+			break;
+		case INT8:
+			out.setByte(index, (byte) parseLong(sequence, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE));
+			break;
+		case UINT8:
+			out.setByte(index, (byte) parseLong(sequence, start, end, 0, 0xFF));
+			break;
+		case INT16:
+			out.setShort(index, (short) parseLong(sequence, start, end, Short.MIN_VALUE, Short.MAX_VALUE));
+			break;
+		case UINT16:
+			out.setShort(index, (short) parseLong(sequence, start, end, 0, 0xFFFF));
+			break;
+		case INT32:
+			out.setInt(index, (int) parseLong(sequence, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE));
+			break;
+		case UINT32:
+			out.setInt(index, (int) parseLong(sequence, start, end, 0, 0xFFFFFFFFL));
+			break;
+		case INT64:
+			out.setLong(index, parseLong(sequence, start, end, Long.MIN_VALUE, Long.MAX_VALUE));
+			break;
+		case UINT64:
+			out.setLong(index, parseUnsignedLong(sequence, start, end));
+			break;
+		case FLOAT32:
+			out.setFloat(index, parseFloat(sequence, start, end));
+			break;
+		case FLOAT64:
+			out.setDouble(index, parseDouble(sequence, start, end));
+			break;
+		default:
+			out.setBoolean(index, isTrue(sequence, start, end));
+			break;
+		}
+	}
+
+	/**
+	 * Parse a decimal integer with an optional sign.
+	 * @throws NumberFormatException If the value is not
+	 * a decimal integer from {@code min} to {@code max}.
+	 */
+	static long parseLong(final CharSequence sequence, int start, final int end,
+			final long min, final long max) {
+		boolean negative = false;
+		if (start < end) {
+			final char sign = sequence.charAt(start);
+			if (sign == '-' || sign == '+') {
+				negative = sign == '-';
+				start++;
+			}
+		}
+		if (start == end)
+			throw new NumberFormatException();
+		// Accumulate negatively as Long.MIN_VALUE has no positive value.
+		final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		final long multiplyLimit = limit / 10;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			final int digit = sequence.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || value < multiplyLimit)
+				throw new NumberFormatException();
+			value *= 10;
+			if (value < limit + digit)
+				throw new NumberFormatException();
+			value -= digit;
+		}
+		if (!negative)
+			value = -value;
+		if (value < min || value > max)
+			throw new NumberFormatException();
+		return value;
+	}
+
+	/**
+	 * Parse a decimal integer from zero to 2<sup>64</sup>-1 with an
+	 * optional sign, returning its two's complement representation.
+	 * @throws NumberFormatException If the value is not in range.
+	 */
+	static long parseUnsignedLong(final CharSequence sequence, int start, final int end) {
+		boolean negative = false;
+		if (start < end) {
+			final char sign = sequence.charAt(start);
+			if (sign == '-' || sign == '+') {
+				negative = sign == '-';
+				start++;
+			}
+		}
+		if (start == end)
+			throw new NumberFormatException();
+		// Largest value that can be multiplied by ten, (2^64-1)/10.
+		final long multiplyLimit = 1844674407370955161L;
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			final int digit = sequence.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException();
+			// Unsigned comparison, value is negative once above 2^63-1.
+			if (value < 0 || value > multiplyLimit
+					|| (value == multiplyLimit && digit > 5))
+				throw new NumberFormatException();
+			value = value * 10 + digit;
+		}
+		if (negative && value != 0)
+			throw new NumberFormatException();
+		return value;
+	}
+
+	/**
+	 * Exactly representable powers of ten.
+	 */
+	private static final double[] DOUBLE_POWERS = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final float[] FLOAT_POWERS = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	/**
+	 * Parse a {@code float64} value. A plain decimal whose digits fit in
+	 * 53 bits with at most 22 fraction digits is the quotient of two exact
+	 * doubles, so a single correctly rounded division gives the same
+	 * result as {@code Double.parseDouble}, otherwise that is used.
+	 */
+	static double parseDouble(final CharSequence sequence, final int start, final int end) {
+		final long digits = decimalDigits(sequence, start, end, 1L << 53);
+		final int scale = (int) (digits >>> 56);
+		if (digits >= 0 && scale < DOUBLE_POWERS.length) {
+			final double value = (digits & MANTISSA) / DOUBLE_POWERS[scale];
+			return sequence.charAt(start) == '-' ? -value : value;
+		}
+		return Double.parseDouble(sequence.subSequence(start, end).toString());
+	}
+
+	/**
+	 * Parse a {@code float32} value, as {@link #parseDouble(CharSequence, int, int)}
+	 * with digits that fit in 24 bits and at most 10 fraction digits.
+	 */
+	static float parseFloat(final CharSequence sequence, final int start, final int end) {
+		final long digits = decimalDigits(sequence, start, end, 1L << 24);
+		final int scale = (int) (digits >>> 56);
+		if (digits >= 0 && scale < FLOAT_POWERS.length) {
+			final float value = (digits & MANTISSA) / FLOAT_POWERS[scale];
+			return sequence.charAt(start) == '-' ? -value : value;
+		}
+		return Float.parseFloat(sequence.subSequence(start, end).toString());
+	}
+
+	private static final long MANTISSA = (1L << 56) - 1;
+
+	/**
+	 * Read a plain decimal, an optional sign, digits and an optional
+	 * fraction, with at least one digit.
+	 * @return Digits as an integer in the low 56 bits and the number of
+	 * fraction digits in the next 7 bits, or {@code -1} if the sequence
+	 * is not a plain decimal or its digits are not less than {@code limit}.
+	 */
+	private static long decimalDigits(final CharSequence sequence, int start, final int end, final long limit) {
+		if (start < end) {
+			final char sign = sequence.charAt(start);
+			if (sign == '-' || sign == '+')
+				start++;
+		}
+		long value = 0;
+		int count = 0;
+		int scale = -1;
+		for (int i = start; i < end; i++) {
+			final char c = sequence.charAt(i);
+			if (c == '.' && scale < 0) {
+				scale = 0;
+				continue;
+			}
+			final int digit = c - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			value = value * 10 + digit;
+			if (value >= limit)
+				return -1;
+			count++;
+			if (scale >= 0 && ++scale > 0x7F)
+				return -1;
+		}
+		if (count == 0)
+			return -1;
+		return ((long) Math.max(scale, 0) << 56) | value;
+	}
+
+	private static boolean isTrue(final CharSequence sequence, final int start, final int end) {
+		if (regionEquals(sequence, start, end, "true"))
+			return true;
+		if (regionEquals(sequence, start, end, "false"))
+			return false;
+		throw new NumberFormatException();
+	}
+
+	private static boolean regionEquals(final CharSequence sequence, final int start, final int end, final String value) {
+		if (end - start != value.length())
+			return false;
+		for (int i = 0; i < value.length(); i++) {
+			if (Character.toLowerCase(sequence.charAt(start + i)) != value.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Output attributes mapped to numbered groups.
+	 * @return Names of the output attributes set from groups 1, 2 and so on,
+	 * or {@code null} if only named groups are mapped.
+	 */
+	public List<String> getGroupAttributes() {
+		return groupAttributes;
+	}
+
+	@Parameter(optional=true, cardinality=-1, description="Names of the output attributes set from the numbered capture groups, the first from group 1, the second from group 2 and so on. Output attributes with the same name as a named group are set from that group.")
+	public void setGroupAttributes(List<String> groupAttributes) {
+		this.groupAttributes = groupAttributes;
+	}
+
+	/**
+	 * Is matching performed using a {@code Matcher} per thread.
+	 * @return {@code true} if each thread uses its own {@code Matcher},
+	 * {@code false} if matching is serialized.
+	 */
+	public boolean isConcurrentMatching() {
+		return concurrentMatching;
+	}
+
+	@Parameter(optional=true, description="If true each thread delivering tuples matches using its own Matcher, otherwise matching is serialized. Defaults to false.")
+	public void setConcurrentMatching(boolean concurrentMatching) {
+		this.concurrentMatching = concurrentMatching;
+	}
+
+	/**
+	 * Sample inputs matched during initialization.
+	 * @return Warm-up inputs, or {@code null} if there is no warm-up.
+	 */
+	public List<String> getWarmupInputs() {
+		return warmupInputs;
+	}
+
+	@Parameter(optional=true, cardinality=-1, description="Sample inputs matched against the expression during initialization, so that the first tuples are matched at steady state speed. Defaults to no warm-up.")
+	public void setWarmupInputs(List<String> warmupInputs) {
+		this.warmupInputs = warmupInputs;
+	}
+
+	/**
+	 * Number of times each warm-up input is matched.
+	 * @return Warm-up iterations.
+	 */
+	public int getWarmupIterations() {
+		return warmupIterations;
+	}
+
+	@Parameter(optional=true, description="Number of times each warm-up input is matched during initialization. Defaults to 1000.")
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	/**
+	 * Return a character sequence view of the {@code rstring}
+	 * or {@code blob} attribute at {@code index}, for returning from
+	 * {@link #getTupleSequence(Tuple)} without decoding the bytes
+	 * into a {@code String}. Bytes are decoded as ISO-8859-1, so this
+	 * is only suitable for ASCII or Latin-1 data. For a {@code ustring}
+	 * attribute its {@code String} value is returned.
+	 * <BR>
+	 * The view is reused by each thread, so it is only valid until
+	 * the next call to this method by the same thread.
+	 * {@code rstring} output attributes are copied directly
+	 * from the bytes of the view.
+	 * @param tuple Input tuple.
+	 * @param index Index of the attribute.
+	 * @return View of the attribute's value.
+	 * @see ByteSequence
+	 */
+	protected CharSequence getByteSequence(Tuple tuple, int index) {
+		return byteSequence.get().reset(tuple, index);
+	}
+
+	/**
+	 * Regular expression to be used to match input tuples.
+	 * This is called once, during {@link #initialize(OperatorContext)}.
+	 * @return Regular expression whose groups are extracted.
+	 */
+	protected abstract String getExpression();
+
+	/**
+	 * Return the character sequence from {@code tuple} to be
+	 * matched against the regular expression.
+	 * @param tuple Input tuple.
+	 * @return The character sequence to be matched.
+	 * @throws Exception Exception determining the tuple sequence.
+	 */
+	protected abstract CharSequence getTupleSequence(Tuple tuple) throws Exception;
+
+	/**
+	 * Check the schema of the second output port, if present,
+	 * matches the input port.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkMatchingSchemas(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		if (context.getNumberOfStreamingOutputs() >= 2) {
+			StreamingData inputPort = context.getStreamingInputs().get(0);
+			checker.checkMatchingSchemas(inputPort,
+					context.getStreamingOutputs().get(1));
+		}
+	}
+}
@@ -4,31 +4,313 @@
  *******************************************************************************/
 package com.ibm.streamsx.patterns.operator;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingData;
+import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.StreamingInput;
 import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.model.InputPortSet;
+import com.ibm.streams.operator.model.InputPorts;
+import com.ibm.streams.operator.model.OutputPortSet;
+import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
+import com.ibm.streams.operator.model.OutputPorts;
+import com.ibm.streams.operator.model.Parameter;
 
 /**
  * Filter based upon a regular expression using
  * {@code java.util.regex.Pattern and Matcher}.
- *
+ * <P>
+ * By default matching is serialized through a single {@code Matcher}.
+ * When the {@code concurrentMatching} parameter is {@code true} each
+ * thread delivering tuples uses its own {@code Matcher} created
+ * from the single compiled {@code Pattern}, so that tuples arriving
+ * on multiple threads are matched without contention.
+ * </P>
+ * <P>
+ * When the {@code literalPrefilter} parameter is {@code true} the literal
+ * strings required by the expression, for example {@code ERROR} and
+ * {@code code=} for {@code .*ERROR.*code=\d+.*}, are searched for
+ * using Boyer-Moore-Horspool before the regular expression is evaluated.
+ * Tuples missing any required literal do not pass the filter without
+ * regular expression evaluation, counted by the {@code nPrefilterRejected} metric.
+ * </P>
+ * <P>
+ * {@link #getByteSequence(Tuple, int)} provides a view of an {@code rstring}
+ * or {@code blob} attribute that avoids decoding the attribute into a
+ * {@code String} for every tuple.
+ * </P>
+ * <P>
+ * The expression can be replaced without restarting the operator,
+ * by tuples arriving on the optional control port, whose first attribute
+ * is the new expression, or by calling {@link #updateExpression(String)}.
+ * A replacement is compiled before it is used, so an invalid expression
+ * is rejected leaving the active expression in place. Replacements are
+ * counted by the {@code nExpressionUpdates} and
+ * {@code nExpressionUpdatesRejected} metrics.
+ * </P>
+ * <P>
+ * When the {@code evaluationBudget} parameter is greater than zero
+ * matching a tuple is abandoned once the {@code Matcher} has read more
+ * than {@code evaluationBudget} characters, bounding the time spent on
+ * input that causes excessive backtracking. Such tuples are submitted
+ * to the third output port if it exists, otherwise they are discarded,
+ * and are counted by the {@code nBudgetExceeded} metric. Tuples are
+ * submitted to the third port directly, not batched or queued.
+ * An evaluation budget cannot be combined with {@code parallelism}
+ * or {@code evaluationBatchSize}.
+ * </P>
+ * <P>
+ * Compiled patterns are shared through a process wide cache, so
+ * operators fused into the same PE with the same expression compile
+ * it once. When the {@code warmupInputs} parameter is set each sample
+ * input is matched {@code warmupIterations} times during initialization,
+ * so that the first tuples are not matched by interpreted code.
+ * Warm-up does not update the operator's metrics.
+ * </P>
  */
+@InputPorts({
+	@InputPortSet(cardinality=1,id="input", description="Tuples to be filtered."),
+	@InputPortSet(cardinality=1,optional=true,controlPort=true,id="control",
+			description="Replacement expressions, the first attribute of each tuple (rstring or ustring) replaces the active expression.")
+})
+@OutputPorts({
+	@OutputPortSet(cardinality=1,description="Tuples that pass the filter.",
+			windowPunctuationOutputMode=WindowPunctuationOutputMode.Preserving,
+			windowPunctuationInputPort="input"),
+	@OutputPortSet(cardinality=1,optional=true,description="Tuples that do not pass the filter."),
+	@OutputPortSet(cardinality=1,optional=true,description="Tuples whose evaluation exceeded the evaluation budget.")
+})
 public abstract class RegexFilter extends Filter {
 	
+	private static final Logger trace = Logger.getLogger(RegexFilter.class.getName());
+	
+	/**
+	 * Index of the control port.
+	 */
+	private static final int CONTROL_PORT = 1;
+	
+	/**
+	 * Index of the output port for tuples exceeding the evaluation budget.
+	 */
+	private static final int BUDGET_PORT = 2;
+	
+	private boolean concurrentMatching;
+	private boolean literalPrefilter;
+	private long evaluationBudget;
+	private List<String> warmupInputs;
+	private int warmupIterations = 1000;
+	
+	private volatile Rules rules;
+	private final Object updateLock = new Object();
+	
 	private Matcher matcher;
+	private ThreadLocal<Matcher> threadMatcher;
+	
+	private Metric prefilterRejected;
+	private Metric updates;
+	private Metric updatesRejected;
+	private Metric budgetExceeded;
+	
+	private ThreadLocal<BudgetedSequence> budgeted;
+	
+	private final ThreadLocal<ByteSequence> byteSequence = new ThreadLocal<ByteSequence>() {
+		@Override
+		protected ByteSequence initialValue() {
+			return new ByteSequence();
+		}
+	};
 	
 	@Override
 	public synchronized void initialize(OperatorContext context)
 			throws Exception {
 		super.initialize(context);
 		
-		matcher = createPattern().matcher("");
+		if (isLiteralPrefilter()) {
+			prefilterRejected = context.getMetrics().createCustomMetric(
+					"nPrefilterRejected",
+					"Number of tuples that did not pass the literal prefilter.",
+					Metric.Kind.COUNTER);
+		}
+		
+		updates = context.getMetrics().createCustomMetric(
+				"nExpressionUpdates",
+				"Number of times the expression was replaced.",
+				Metric.Kind.COUNTER);
+		updatesRejected = context.getMetrics().createCustomMetric(
+				"nExpressionUpdatesRejected",
+				"Number of replacement expressions rejected as invalid.",
+				Metric.Kind.COUNTER);
+		
+		if (getEvaluationBudget() > 0) {
+			budgetExceeded = context.getMetrics().createCustomMetric(
+					"nBudgetExceeded",
+					"Number of tuples whose evaluation exceeded the evaluation budget.",
+					Metric.Kind.COUNTER);
+			final long budget = getEvaluationBudget();
+			budgeted = new ThreadLocal<BudgetedSequence>() {
+				@Override
+				protected BudgetedSequence initialValue() {
+					return new BudgetedSequence(budget);
+				}
+			};
+		}
+		
+		rules = new Rules(createPattern(), isLiteralPrefilter());
+		warmUp(rules);
+		
+		if (isConcurrentMatching()) {
+			threadMatcher = new ThreadLocal<Matcher>() {
+				@Override
+				protected Matcher initialValue() {
+					return rules.pattern.matcher("");
+				}
+			};
+		} else {
+			matcher = rules.pattern.matcher("");
+		}
+	}
+	
+	/**
+	 * Compiled expression and the literals it requires, replaced
+	 * as a whole so that a tuple is never matched against
+	 * a partially replaced expression.
+	 */
+	private static final class Rules {
+		final Pattern pattern;
+		final Horspool[] required;
+		
+		Rules(Pattern pattern, boolean prefilter) {
+			this.pattern = pattern;
+			final String[] literals = prefilter ? PatternSyntax.requiredLiterals(pattern) : new String[0];
+			if (literals.length == 0) {
+				required = null;
+				return;
+			}
+			// Longest literals are the least likely to be present.
+			Arrays.sort(literals, new Comparator<String>() {
+				@Override
+				public int compare(String l1, String l2) {
+					return l2.length() - l1.length();
+				}
+			});
+			required = new Horspool[literals.length];
+			for (int i = 0; i < literals.length; i++)
+				required[i] = new Horspool(literals[i]);
+		}
+	}
+	
+	/**
+	 * Match the warm-up inputs against the prefilter and
+	 * the expression, without updating the metrics.
+	 */
+	private void warmUp(final Rules r) {
+		final List<String> inputs = getWarmupInputs();
+		if (inputs == null || inputs.isEmpty())
+			return;
+		final int iterations = getWarmupIterations();
+		if (r.required != null) {
+			for (int i = 0; i < iterations; i++) {
+				for (String input : inputs) {
+					for (Horspool literal : r.required)
+						literal.in(input);
+				}
+			}
+		}
+		PatternCache.warmUp(new Pattern[] {r.pattern}, inputs, iterations);
 	}
 	
 	protected Pattern createPattern() {
-		return Pattern.compile(getExpression());
+		return createPattern(getExpression());
+	}
+	
+	/**
+	 * Compile {@code expression}, for the initial expression
+	 * and each replacement expression.
+	 * This implementation returns the pattern from a process wide
+	 * cache, shared with any other operator using the same expression.
+	 * @param expression Regular expression.
+	 * @return Compiled pattern.
+	 */
+	protected Pattern createPattern(String expression) {
+		return PatternCache.compile(expression, 0);
+	}
+	
+	/**
+	 * Replace the expression tuples are matched against.
+	 * <BR>
+	 * The expression is compiled by the calling thread and then
+	 * published with a single volatile write, so {@link #filter(Tuple)}
+	 * does not wait for a replacement and each tuple is matched
+	 * against either the previous or the new expression.
+	 * Cached filter results are discarded. The replacement is counted
+	 * by the {@code nExpressionUpdates} or, if it is rejected, the
+	 * {@code nExpressionUpdatesRejected} metric.
+	 * @param expression Replacement regular expression.
+	 * @throws PatternSyntaxException If the expression is invalid,
+	 * in which case the active expression is not changed.
+	 */
+	public void updateExpression(String expression) {
+		final Rules replacement;
+		try {
+			replacement = new Rules(createPattern(expression), isLiteralPrefilter());
+		} catch (IllegalArgumentException e) {
+			updatesRejected.increment();
+			throw e;
+		}
+		synchronized (updateLock) {
+			rules = replacement;
+			invalidateCache();
+		}
+		updates.increment();
+	}
+	
+	/**
+	 * Tuples arriving on the control port replace the expression
+	 * using {@link #updateExpression(String)}, other tuples are filtered.
+	 */
+	@Override
+	public void process(StreamingInput<Tuple> stream, Tuple tuple)
+			throws Exception {
+		if (stream.getPortNumber() != CONTROL_PORT) {
+			try {
+				super.process(stream, tuple);
+			} catch (BudgetedSequence.BudgetExceededException e) {
+				budgetExceeded.increment();
+				if (getOperatorContext().getNumberOfStreamingOutputs() > BUDGET_PORT)
+					getOutput(BUDGET_PORT).submit(tuple);
+			}
+			return;
+		}
+		final String expression = tuple.getString(0);
+		try {
+			updateExpression(expression);
+		} catch (IllegalArgumentException e) {
+			trace.log(Level.WARNING, "Rejected replacement expression: " + expression, e);
+		}
+	}
+	
+	/**
+	 * Punctuation arriving on the control port is not forwarded.
+	 */
+	@Override
+	public void processPunctuation(StreamingInput<Tuple> stream,
+			Punctuation mark) throws Exception {
+		if (stream.getPortNumber() != CONTROL_PORT)
+			super.processPunctuation(stream, mark);
 	}
 
 	/**
@@ -36,21 +318,146 @@ public abstract class RegexFilter extends Filter {
 	 * {@link #getTupleSequence(Tuple)} using the
 	 * pattern returned by {@link #getExpression()}.
 	 * <BR>
-	 * Method is {@code synchronized} as a {@code Matcher} is
-	 * not thread safe.
+	 * Unless {@link #isConcurrentMatching()} is {@code true} matching
+	 * is {@code synchronized} as a {@code Matcher} is not thread safe.
 	 * 
 	 * @return {@code true} if the pattern matches the expression,
 	 * {@code false} otherwise.
 	 */
 	@Override
-	protected synchronized boolean filter(Tuple tuple) throws Exception {
-		matcher.reset(getTupleSequence(tuple));
-		return matcher.matches();
+	protected boolean filter(Tuple tuple) throws Exception {
+		final Rules r = rules;
+		if (threadMatcher != null) {
+			Matcher m = threadMatcher.get();
+			if (m.pattern() != r.pattern) {
+				m = r.pattern.matcher("");
+				threadMatcher.set(m);
+			}
+			return matches(r, m, getTupleSequence(tuple));
+		}
+		
+		synchronized (this) {
+			if (matcher.pattern() != r.pattern)
+				matcher = r.pattern.matcher("");
+			return matches(r, matcher, getTupleSequence(tuple));
+		}
+	}
+	
+	private boolean matches(final Rules r, final Matcher m, final CharSequence sequence) {
+		if (r.required != null) {
+			for (Horspool literal : r.required) {
+				if (!literal.in(sequence)) {
+					prefilterRejected.increment();
+					return false;
+				}
+			}
+		}
+		if (budgeted != null)
+			return m.reset(budgeted.get().reset(sequence)).matches();
+		return m.reset(sequence).matches();
+	}
+	
+	/**
+	 * Returns the character sequence from {@link #getTupleSequence(Tuple)}
+	 * as a {@code String}, as the match result is determined solely by it.
+	 */
+	@Override
+	protected Object getCacheKey(Tuple tuple) throws Exception {
+		return getTupleSequence(tuple).toString();
+	}
+	
+	/**
+	 * Is matching performed using a {@code Matcher} per thread.
+	 * @return {@code true} if each thread uses its own {@code Matcher},
+	 * {@code false} if matching is serialized.
+	 */
+	public boolean isConcurrentMatching() {
+		return concurrentMatching;
+	}
+
+	@Parameter(optional=true, description="If true each thread delivering tuples matches using its own Matcher, otherwise matching is serialized. Defaults to false.")
+	public void setConcurrentMatching(boolean concurrentMatching) {
+		this.concurrentMatching = concurrentMatching;
+	}
+	
+	/**
+	 * Are tuples checked for the literals required by the
+	 * expression before the regular expression is evaluated.
+	 * @return {@code true} if the literal prefilter is enabled.
+	 */
+	public boolean isLiteralPrefilter() {
+		return literalPrefilter;
+	}
+
+	@Parameter(optional=true, description="If true literals required by the expression are searched for before matching, tuples missing any of them do not pass the filter. Defaults to false.")
+	public void setLiteralPrefilter(boolean literalPrefilter) {
+		this.literalPrefilter = literalPrefilter;
+	}
+	
+	/**
+	 * Maximum number of characters read matching a tuple.
+	 * @return Evaluation budget, {@code 0} if evaluation is not bounded.
+	 */
+	public long getEvaluationBudget() {
+		return evaluationBudget;
+	}
+
+	@Parameter(optional=true, description="Maximum number of characters read by the Matcher evaluating a tuple, tuples exceeding it are submitted to the third output port if it exists, otherwise discarded. Defaults to 0, evaluation is not bounded.")
+	public void setEvaluationBudget(long evaluationBudget) {
+		this.evaluationBudget = evaluationBudget;
+	}
+	
+	/**
+	 * Sample inputs matched during initialization.
+	 * @return Warm-up inputs, or {@code null} if there is no warm-up.
+	 */
+	public List<String> getWarmupInputs() {
+		return warmupInputs;
+	}
+
+	@Parameter(optional=true, cardinality=-1, description="Sample inputs matched against the expression during initialization, so that the first tuples are matched at steady state speed. Defaults to no warm-up.")
+	public void setWarmupInputs(List<String> warmupInputs) {
+		this.warmupInputs = warmupInputs;
+	}
+	
+	/**
+	 * Number of times each warm-up input is matched.
+	 * @return Warm-up iterations.
+	 */
+	public int getWarmupIterations() {
+		return warmupIterations;
+	}
+
+	@Parameter(optional=true, description="Number of times each warm-up input is matched during initialization. Defaults to 1000.")
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+	
+	/**
+	 * Return a character sequence view of the {@code rstring}
+	 * or {@code blob} attribute at {@code index}, for returning from
+	 * {@link #getTupleSequence(Tuple)} without decoding the bytes
+	 * into a {@code String}. Bytes are decoded as ISO-8859-1, so this
+	 * is only suitable for ASCII or Latin-1 data. For a {@code ustring}
+	 * attribute its {@code String} value is returned.
+	 * <BR>
+	 * The view is reused by each thread, so it is only valid until
+	 * the next call to this method by the same thread. Resolving
+	 * {@code index} once, in {@link #initialize(OperatorContext)},
+	 * avoids looking up the attribute by name for every tuple.
+	 * @param tuple Input tuple.
+	 * @param index Index of the attribute.
+	 * @return View of the attribute's value.
+	 * @see ByteSequence
+	 */
+	protected CharSequence getByteSequence(Tuple tuple, int index) {
+		return byteSequence.get().reset(tuple, index);
 	}
 	
 	/**
 	 * Regular expression to be used to match input tuples.
-	 * This is called once, during {@link #initialize(OperatorContext)}.
+	 * This is called once, during {@link #initialize(OperatorContext)},
+	 * the expression may then be replaced using {@link #updateExpression(String)}.
 	 * @return Regular expression for pattern matching.
 	 */
 	protected abstract String getExpression();
@@ -64,4 +471,41 @@ public abstract class RegexFilter extends Filter {
 	 * @throws Exception Exception determ
 	 */
 	protected abstract CharSequence getTupleSequence(Tuple tuple) throws Exception;
+	
+	/**
+	 * Check that the first attribute of the control port,
+	 * if present, is a string.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkControlPort(OperatorContextChecker checker) {
+		
+		OperatorContext context = checker.getOperatorContext();
+		
+		if (context.getNumberOfStreamingInputs() <= CONTROL_PORT)
+			return;
+		StreamSchema schema = context.getStreamingInputs().get(CONTROL_PORT).getStreamSchema();
+		MetaType type = schema.getAttributeCount() == 0 ? null : schema.getAttribute(0).getType().getMetaType();
+		if (type != MetaType.RSTRING && type != MetaType.USTRING)
+			checker.setInvalidContext("The first attribute of the control port must be an rstring or ustring expression.", null);
+	}
+	
+	/**
+	 * Check the schema of the evaluation budget port, if present,
+	 * matches the input port, and parallel or batch evaluation is not
+	 * used with an evaluation budget.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkEvaluationBudget(OperatorContextChecker checker) {
+		
+		OperatorContext context = checker.getOperatorContext();
+		
+		if (context.getNumberOfStreamingOutputs() > BUDGET_PORT) {
+			StreamingData inputPort = context.getStreamingInputs().get(0);
+			checker.checkMatchingSchemas(inputPort,
+					context.getStreamingOutputs().get(BUDGET_PORT));
+		}
+		checker.checkExcludedParameters("evaluationBudget", "parallelism", "evaluationBatchSize");
+	}
 }
@@ -4,11 +4,30 @@
  *******************************************************************************/
 package com.ibm.streamsx.patterns.operator;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.StreamingInput;
 import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.meta.CollectionType;
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.model.InputPortSet;
+import com.ibm.streams.operator.model.InputPorts;
+import com.ibm.streams.operator.model.Parameter;
 
 /**
  * Split the input stream based upon regular expressions using
@@ -17,27 +36,410 @@ import com.ibm.streams.operator.Tuple;
  * value returned by {{@link #getTupleSequence(Tuple)}. The first expression
  * that has a match determines which output port the tuple is sent to, based upon
  * the index of the expression in the return of {@link #getExpressions()}.
+ * <P>
+ * When the {@code allMatches} parameter is {@code true} a tuple is
+ * instead submitted to the output port of every expression that matches,
+ * once to each port. With {@code combinedMatching} the set of matching
+ * expressions is determined in a single scan of the character sequence.
+ * At most 64 output ports are supported in this mode, and
+ * it cannot be combined with {@code unorderedExpressions}.
+ * </P>
+ * <P>
+ * By default matching is serialized through a single set of {@code Matcher}s.
+ * When the {@code concurrentMatching} parameter is {@code true} each
+ * thread delivering tuples uses its own set of {@code Matcher}s created
+ * from the compiled {@code Pattern}s, so that tuples arriving
+ * on multiple threads are matched without contention.
+ * </P>
+ * <P>
+ * When the {@code combinedMatching} parameter is {@code true} the
+ * expressions are combined into a single automaton so that the
+ * character sequence is scanned once regardless of the number of
+ * expressions, with the first expression that matches still
+ * determining the destination. Expressions the automaton does
+ * not support, such as those using back references or lookaround,
+ * are evaluated using {@code Matcher}s in order.
+ * </P>
+ * <P>
+ * When the {@code literalPrefilter} parameter is {@code true} the literal
+ * strings required by each expression, for example {@code ERROR} and
+ * {@code code=} for {@code .*ERROR.*code=\d+.*}, are searched for
+ * using a single Aho-Corasick pass. Expressions whose required literals
+ * are not all present are not evaluated, and tuples for which no
+ * expression remains are discarded, counted by the
+ * {@code nPrefilterRejected} metric.
+ * </P>
+ * <P>
+ * When the expressions are mutually exclusive the order they are
+ * evaluated in does not change the result. Setting the
+ * {@code unorderedExpressions} parameter to {@code true} declares
+ * this, and the evaluation order is then recalculated every
+ * {@code reorderPeriod} seconds from a sample of tuples, so
+ * that expressions that are cheap and likely to match are evaluated
+ * first. The destination is still the index of the matching expression
+ * in {@link #getExpressions()}. The position of each expression in the
+ * evaluation order is shown by its {@code expression<i>.rank} metric.
+ * Ordering does not apply to expressions evaluated by the combined automaton.
+ * </P>
+ * <P>
+ * {@link #getByteSequence(Tuple, int)} provides a view of an {@code rstring}
+ * or {@code blob} attribute that avoids decoding the attribute into a
+ * {@code String} for every tuple.
+ * </P>
+ * <P>
+ * The expressions can be replaced without restarting the operator,
+ * by tuples arriving on the optional control port, whose first attribute
+ * is a list of the new expressions, or by calling
+ * {@link #updateExpressions(String...)}. A replacement set is compiled
+ * before it is used, so a set containing an invalid expression is rejected
+ * leaving the active expressions in place. Replacements are counted by the
+ * {@code nExpressionUpdates} and {@code nExpressionUpdatesRejected} metrics.
+ * </P>
+ * <P>
+ * When the {@code evaluationBudget} parameter is greater than zero
+ * evaluating a tuple is abandoned once the {@code Matcher}s have read more
+ * than {@code evaluationBudget} characters in total, bounding the time spent
+ * on input that causes excessive backtracking. Such tuples are submitted to
+ * the port {@code budgetExceededPort}, by default they are discarded, and
+ * are counted by the {@code nBudgetExceeded} metric. The port must not be
+ * the port of any expression, so that such tuples, which may be crafted
+ * input, are never mixed with matching tuples. Expressions evaluated
+ * by the combined automaton take time linear in the length of the input
+ * and do not use the budget.
+ * </P>
+ * <P>
+ * Compiled patterns and combined automata are shared through a process
+ * wide cache, so operators fused into the same PE with the same
+ * expressions compile them once, and expressions common to several
+ * operators share a single {@code Pattern}. When the {@code warmupInputs}
+ * parameter is set each sample input is evaluated {@code warmupIterations}
+ * times during initialization, by the prefilter, the automaton and each
+ * expression, so that the first tuples are not evaluated by interpreted
+ * code and the automaton has built the states they need.
+ * Warm-up does not update the operator's metrics.
+ * </P>
  */
+@InputPorts({
+	@InputPortSet(cardinality=1,id="input", description="Tuples to be split across multiple output ports."),
+	@InputPortSet(cardinality=1,optional=true,controlPort=true,id="control",
+			description="Replacement expressions, the first attribute of each tuple (list<rstring> or list<ustring>) replaces the active expressions.")
+})
 public abstract class RegexSplit extends Split {
 	
-	private Matcher[] matchers;
+	private static final Logger trace = Logger.getLogger(RegexSplit.class.getName());
+	
+	/**
+	 * Index of the control port.
+	 */
+	private static final int CONTROL_PORT = 1;
+	
+	private boolean concurrentMatching;
+	private boolean combinedMatching;
+	private boolean allMatches;
+	
+	private boolean literalPrefilter;
+	private boolean unorderedExpressions;
+	private double reorderPeriod = 10.0;
+	private long evaluationBudget;
+	private int budgetExceededPort = -1;
+	private List<String> warmupInputs;
+	private int warmupIterations = 1000;
+	
+	private volatile Rules rules;
+	private final Object updateLock = new Object();
+	
+	private Matching matching;
+	private ThreadLocal<Matching> threadMatching;
+	
+	private Metric prefilterRejected;
+	private Metric updates;
+	private Metric updatesRejected;
+	private Metric budgetExceeded;
+	
+	private AdaptiveOrder order;
+	
+	private final ThreadLocal<ByteSequence> byteSequence = new ThreadLocal<ByteSequence>() {
+		@Override
+		protected ByteSequence initialValue() {
+			return new ByteSequence();
+		}
+	};
 	
 	@Override
 	public synchronized void initialize(OperatorContext context)
 			throws Exception {
 		super.initialize(context);
 		
-		final String[] expressions = getExpressions();
+		if (isLiteralPrefilter()) {
+			prefilterRejected = context.getMetrics().createCustomMetric(
+					"nPrefilterRejected",
+					"Number of tuples discarded by the literal prefilter without regular expression evaluation.",
+					Metric.Kind.COUNTER);
+		}
+		
+		updates = context.getMetrics().createCustomMetric(
+				"nExpressionUpdates",
+				"Number of times the expressions were replaced.",
+				Metric.Kind.COUNTER);
+		updatesRejected = context.getMetrics().createCustomMetric(
+				"nExpressionUpdatesRejected",
+				"Number of replacement expression sets rejected as invalid.",
+				Metric.Kind.COUNTER);
 		
-		matchers = new Matcher[expressions.length];
+		if (getEvaluationBudget() > 0) {
+			budgetExceeded = context.getMetrics().createCustomMetric(
+					"nBudgetExceeded",
+					"Number of tuples whose evaluation exceeded the evaluation budget.",
+					Metric.Kind.COUNTER);
+		}
+		
+		rules = compile(getExpressions());
+		warmUp(rules);
+		
+		if (isUnorderedExpressions()) {
+			order = new AdaptiveOrder(rules.patterns.length, true);
+			order.createMetrics(context.getMetrics(), "expression");
+			order.start(context.getScheduledExecutorService(), getReorderPeriod());
+		}
+		
+		if (isConcurrentMatching()) {
+			threadMatching = new ThreadLocal<Matching>() {
+				@Override
+				protected Matching initialValue() {
+					return new Matching(rules, getEvaluationBudget());
+				}
+			};
+		} else {
+			matching = new Matching(rules, getEvaluationBudget());
+		}
+	}
+	
+	/**
+	 * Compile the expressions with the automaton and
+	 * prefilter for them, as enabled by the parameters.
+	 */
+	private Rules compile(String[] expressions) {
+		final int budgetPort = getBudgetExceededPort();
+		if (budgetPort >= 0 && expressions.length > budgetPort)
+			throw new IllegalArgumentException("Expression " + budgetPort
+					+ " cannot use budgetExceededPort " + budgetPort);
+		
+		final Pattern[] patterns = new Pattern[expressions.length];
 		
 		for (int i = 0; i < expressions.length; i++) {
-			matchers[i] = createPattern(expressions[i]).matcher("");
+			patterns[i] = createPattern(expressions[i]);
+		}
+		
+		final Rules r = new Rules(patterns);
+		
+		if (isCombinedMatching()) {
+			r.automaton = PatternCache.automaton(patterns);
+			int count = 0;
+			final int[] indexes = new int[patterns.length];
+			for (int i = 0; i < patterns.length; i++) {
+				if (!r.automaton.isSupported(i))
+					indexes[count++] = i;
+			}
+			r.unsupported = Arrays.copyOf(indexes, count);
+		}
+		
+		// When the automaton handles all the expressions
+		// the sequence is already only scanned once.
+		if (isLiteralPrefilter() && (r.automaton == null || r.unsupported.length != 0))
+			createPrefilter(r);
+		return r;
+	}
+	
+	/**
+	 * Evaluate the warm-up inputs using the prefilter, the automaton
+	 * and each expression, without updating the metrics.
+	 */
+	private void warmUp(final Rules r) {
+		final List<String> inputs = getWarmupInputs();
+		if (inputs == null || inputs.isEmpty())
+			return;
+		final int iterations = getWarmupIterations();
+		if (r.literals != null || r.automaton != null) {
+			final long[] found = r.literals == null ? null : new long[r.literals.words()];
+			for (int i = 0; i < iterations; i++) {
+				for (String input : inputs) {
+					if (found != null)
+						r.literals.scan(input, found);
+					if (r.automaton != null) {
+						if (isAllMatches())
+							r.automaton.matchesAll(input);
+						else
+							r.automaton.matches(input);
+					}
+				}
+			}
 		}
+		PatternCache.warmUp(r.patterns, inputs, iterations);
 	}
 	
+	/**
+	 * Create the Aho-Corasick search across the literals
+	 * required by all the expressions.
+	 */
+	private static void createPrefilter(final Rules r) {
+		final Pattern[] patterns = r.patterns;
+		final Map<String,Integer> ids = new LinkedHashMap<String,Integer>();
+		final String[][] expressionLiterals = new String[patterns.length][];
+		for (int i = 0; i < patterns.length; i++) {
+			expressionLiterals[i] = PatternSyntax.requiredLiterals(patterns[i]);
+			for (String literal : expressionLiterals[i]) {
+				if (!ids.containsKey(literal))
+					ids.put(literal, ids.size());
+			}
+		}
+		if (ids.isEmpty())
+			return;
+		
+		final AhoCorasick literals = new AhoCorasick(ids.keySet().toArray(new String[ids.size()]));
+		final long[][] required = new long[patterns.length][];
+		for (int i = 0; i < patterns.length; i++) {
+			if (expressionLiterals[i].length == 0)
+				continue;
+			required[i] = new long[literals.words()];
+			for (String literal : expressionLiterals[i]) {
+				final int id = ids.get(literal);
+				required[i][id >> 6] |= 1L << id;
+			}
+		}
+		r.literals = literals;
+		r.required = required;
+	}
+	
+	/**
+	 * Compiled expressions with their automaton and prefilter,
+	 * replaced as a whole so that a tuple is never matched against
+	 * a partially replaced set of expressions. Not modified once published.
+	 */
+	private static final class Rules {
+		final Pattern[] patterns;
+		
+		PatternAutomaton automaton;
+		int[] unsupported;
+		
+		AhoCorasick literals;
+		/**
+		 * Per expression bit set of the literals it requires,
+		 * {@code null} if the expression has no required literals.
+		 */
+		long[][] required;
+		
+		Rules(Pattern[] patterns) {
+			this.patterns = patterns;
+		}
+	}
+	
+	/**
+	 * Matching state, a {@code Matcher} for each compiled pattern,
+	 * the literals found by the prefilter and the budgeted view of
+	 * the sequence being matched.
+	 */
+	private static final class Matching {
+		final Rules rules;
+		final Matcher[] matchers;
+		final long[] found;
+		final BudgetedSequence budgeted;
+		
+		Matching(Rules rules, long budget) {
+			this.rules = rules;
+			matchers = new Matcher[rules.patterns.length];
+			for (int i = 0; i < matchers.length; i++)
+				matchers[i] = rules.patterns[i].matcher("");
+			found = rules.literals == null ? null : new long[rules.literals.words()];
+			budgeted = budget > 0 ? new BudgetedSequence(budget) : null;
+		}
+	}
+	
+	@Override
+	public void shutdown() throws Exception {
+		if (order != null)
+			order.close();
+		super.shutdown();
+	}
+	
+	/**
+	 * Compile {@code expression}, for the initial expressions
+	 * and each replacement set of expressions.
+	 * This implementation returns the pattern from a process wide
+	 * cache, shared with any other operator using the same expression.
+	 * @param expression Regular expression.
+	 * @return Compiled pattern.
+	 */
 	protected Pattern createPattern(String expression) {
-		return Pattern.compile(expression);
+		return PatternCache.compile(expression, 0);
+	}
+	
+	/**
+	 * Replace the expressions tuples are matched against.
+	 * <BR>
+	 * The expressions are compiled by the calling thread and then
+	 * published with a single volatile write, so {@link #destination(Tuple)}
+	 * does not wait for a replacement and each tuple is matched against
+	 * either the previous or the new set of expressions. Cached destinations
+	 * are discarded, and with {@code unorderedExpressions} the evaluation
+	 * order is reset. The replacement is counted by the
+	 * {@code nExpressionUpdates} or, if it is rejected, the
+	 * {@code nExpressionUpdatesRejected} metric.
+	 * @param expressions Replacement regular expressions.
+	 * @throws PatternSyntaxException If any expression is invalid,
+	 * in which case the active expressions are not changed.
+	 * @throws IllegalArgumentException If {@code unorderedExpressions}
+	 * is {@code true} and the number of expressions is changed.
+	 */
+	public void updateExpressions(String... expressions) {
+		final Rules replacement;
+		try {
+			if (order != null && expressions.length != rules.patterns.length)
+				throw new IllegalArgumentException("Unordered expressions cannot change from "
+						+ rules.patterns.length + " to " + expressions.length + " expressions");
+			replacement = compile(expressions);
+		} catch (IllegalArgumentException e) {
+			updatesRejected.increment();
+			throw e;
+		}
+		synchronized (updateLock) {
+			rules = replacement;
+			if (order != null)
+				order.reset();
+			invalidateCache();
+		}
+		updates.increment();
+	}
+	
+	/**
+	 * Tuples arriving on the control port replace the expressions
+	 * using {@link #updateExpressions(String...)}, other tuples are split.
+	 */
+	@Override
+	public void process(StreamingInput<Tuple> stream, Tuple tuple)
+			throws Exception {
+		if (stream.getPortNumber() != CONTROL_PORT) {
+			super.process(stream, tuple);
+			return;
+		}
+		final List<?> values = (List<?>) tuple.getObject(0);
+		final String[] expressions = new String[values.size()];
+		for (int i = 0; i < expressions.length; i++)
+			expressions[i] = values.get(i).toString();
+		try {
+			updateExpressions(expressions);
+		} catch (IllegalArgumentException e) {
+			trace.log(Level.WARNING, "Rejected replacement expressions: " + values, e);
+		}
+	}
+	
+	/**
+	 * Punctuation arriving on the control port is not forwarded.
+	 */
+	@Override
+	public void processPunctuation(StreamingInput<Tuple> stream,
+			Punctuation mark) throws Exception {
+		if (stream.getPortNumber() != CONTROL_PORT)
+			super.processPunctuation(stream, mark);
 	}
 
 	/**
@@ -45,23 +447,421 @@ public abstract class RegexSplit extends Split {
 	 * {@link #getTupleSequence(Tuple)} using the
 	 * patterns returned by {@link #getExpressions()}.
 	 * <BR>
-	 * Method is {@code synchronized} as a {@code Matcher} is
-	 * not thread safe.
+	 * Unless {@link #isConcurrentMatching()} is {@code true} matching
+	 * is {@code synchronized} as a {@code Matcher} is not thread safe.
 	 * 
 	 * @return index of expression if the pattern matches an expression,
 	 * {@code -1} otherwise.
 	 */
 	@Override
-	protected synchronized int destination(Tuple tuple) throws Exception {
-		final CharSequence sequence = getTupleSequence(tuple);
-		final Matcher[] ms = matchers;
+	protected int destination(Tuple tuple) throws Exception {
+		final Rules r = rules;
+		if (r.automaton != null && r.unsupported.length == 0) {
+			final CharSequence sequence = getTupleSequence(tuple);
+			final int destination = r.automaton.matches(sequence);
+			if (destination != PatternAutomaton.UNDECIDED)
+				return destination;
+			return destination(r, sequence, true);
+		}
+		
+		return destination(r, getTupleSequence(tuple), false);
+	}
+	
+	/**
+	 * @param undecided {@code true} if the automaton has already
+	 * returned {@link PatternAutomaton#UNDECIDED} for {@code sequence}.
+	 */
+	private int destination(final Rules r, final CharSequence sequence, final boolean undecided) {
+		if (threadMatching != null)
+			return destination(threadMatching(r), sequence, undecided);
+		
+		synchronized (this) {
+			return destination(matching(r), sequence, undecided);
+		}
+	}
+	
+	/**
+	 * Matching state of the calling thread for {@code r}.
+	 */
+	private Matching threadMatching(final Rules r) {
+		Matching m = threadMatching.get();
+		if (m.rules != r) {
+			m = new Matching(r, getEvaluationBudget());
+			threadMatching.set(m);
+		}
+		return m;
+	}
+	
+	/**
+	 * Shared matching state for {@code r}, the caller
+	 * must be synchronized on this operator.
+	 */
+	private Matching matching(final Rules r) {
+		if (matching.rules != r)
+			matching = new Matching(r, getEvaluationBudget());
+		return matching;
+	}
+	
+	/**
+	 * Apply the prefilter and combine the result of the automaton
+	 * with the unsupported expressions that precede it.
+	 * {@code Matcher}s read the sequence through the budgeted view.
+	 */
+	private int destination(final Matching m, final CharSequence sequence, final boolean undecided) {
+		if (m.budgeted == null)
+			return destination(m, sequence, sequence, undecided);
+		try {
+			return destination(m, sequence, m.budgeted.reset(sequence), undecided);
+		} catch (BudgetedSequence.BudgetExceededException e) {
+			budgetExceeded.increment();
+			return getBudgetExceededPort();
+		}
+	}
+	
+	private int destination(final Matching m, final CharSequence sequence, final CharSequence text,
+			final boolean undecided) {
+		final Rules r = m.rules;
+		final long[] found = m.found;
+		if (found != null) {
+			r.literals.scan(sequence, found);
+			if (!anyCandidate(r, found)) {
+				prefilterRejected.increment();
+				return -1;
+			}
+		}
+		
+		final Matcher[] ms = m.matchers;
+		if (r.automaton == null || undecided)
+			return firstMatch(r, ms, text, found);
+		
+		final int destination = r.automaton.matches(sequence);
+		if (destination == PatternAutomaton.UNDECIDED)
+			return firstMatch(r, ms, text, found);
+		
+		for (int i : r.unsupported) {
+			if (destination >= 0 && i > destination)
+				break;
+			if (isCandidate(r, i, found) && ms[i].reset(text).matches())
+				return i;
+		}
+		return destination;
+	}
+	
+	private int firstMatch(final Rules r, final Matcher[] ms, final CharSequence sequence, final long[] found) {
+		if (order != null)
+			return order.sample() ? sampledMatch(r, ms, sequence, found) : orderedMatch(r, ms, sequence, found);
+		
 		for (int i = 0; i < ms.length; i++) {
-			if (ms[i].reset(sequence).matches())
+			if (isCandidate(r, i, found) && ms[i].reset(sequence).matches())
 				return i;
 		}
 		return -1;
 	}
 	
+	/**
+	 * Evaluate unordered expressions using the current order.
+	 */
+	private int orderedMatch(final Rules r, final Matcher[] ms, final CharSequence sequence, final long[] found) {
+		for (int i : order.order()) {
+			if (isCandidate(r, i, found) && ms[i].reset(sequence).matches())
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Evaluate unordered expressions using the current order,
+	 * recording the cost and result of each expression.
+	 */
+	private int sampledMatch(final Rules r, final Matcher[] ms, final CharSequence sequence, final long[] found) {
+		try {
+			for (int i : order.order()) {
+				if (!isCandidate(r, i, found))
+					continue;
+				final long start = System.nanoTime();
+				final boolean matches = ms[i].reset(sequence).matches();
+				order.record(i, System.nanoTime() - start, matches);
+				if (matches)
+					return i;
+			}
+			return -1;
+		} finally {
+			order.sampled();
+		}
+	}
+	
+	/**
+	 * With {@code allMatches} the routing decision is the
+	 * set of ports of all the matching expressions.
+	 */
+	@Override
+	long decision(final Tuple tuple) throws Exception {
+		if (!isAllMatches())
+			return super.decision(tuple);
+		
+		final Rules r = rules;
+		final CharSequence sequence = getTupleSequence(tuple);
+		if (r.automaton != null && r.unsupported.length == 0) {
+			final long[] accepted = r.automaton.matchesAll(sequence);
+			if (accepted != null)
+				return ports(r, accepted);
+		}
+		
+		if (threadMatching != null)
+			return allMatches(threadMatching(r), sequence);
+		
+		synchronized (this) {
+			return allMatches(matching(r), sequence);
+		}
+	}
+	
+	@Override
+	void decisionBatch(final Tuple[] tuples, final int n, final long[] decisions) throws Exception {
+		if (!isAllMatches()) {
+			super.decisionBatch(tuples, n, decisions);
+			return;
+		}
+		for (int i = 0; i < n; i++)
+			decisions[i] = decision(tuples[i]);
+	}
+	
+	@Override
+	void route(final long decision, final Tuple tuple) throws Exception {
+		if (isAllMatches())
+			multicast(decision, tuple);
+		else
+			super.route(decision, tuple);
+	}
+	
+	/**
+	 * Ports of the expressions in the automaton's match set.
+	 */
+	private long ports(final Rules r, final long[] accepted) {
+		long ports = 0;
+		for (int i = 0; i < r.patterns.length; i++) {
+			if ((accepted[i >>> 6] & (1L << i)) != 0)
+				ports |= portBit(i);
+		}
+		return ports;
+	}
+	
+	private long allMatches(final Matching m, final CharSequence sequence) {
+		if (m.budgeted == null)
+			return allMatches(m, sequence, sequence);
+		try {
+			return allMatches(m, sequence, m.budgeted.reset(sequence));
+		} catch (BudgetedSequence.BudgetExceededException e) {
+			budgetExceeded.increment();
+			return portBit(getBudgetExceededPort());
+		}
+	}
+	
+	/**
+	 * Evaluate every expression whose port has not already been
+	 * selected, taking the result of supported expressions from
+	 * the automaton when it can evaluate the sequence.
+	 */
+	private long allMatches(final Matching m, final CharSequence sequence, final CharSequence text) {
+		final Rules r = m.rules;
+		final long[] found = m.found;
+		if (found != null) {
+			r.literals.scan(sequence, found);
+			if (!anyCandidate(r, found)) {
+				prefilterRejected.increment();
+				return 0;
+			}
+		}
+		
+		final long[] accepted = r.automaton == null ? null : r.automaton.matchesAll(sequence);
+		final Matcher[] ms = m.matchers;
+		long ports = 0;
+		for (int i = 0; i < ms.length; i++) {
+			final long port = portBit(i);
+			if ((ports & port) != 0)
+				continue;
+			if (accepted != null && r.automaton.isSupported(i)) {
+				if ((accepted[i >>> 6] & (1L << i)) != 0)
+					ports |= port;
+			} else if (isCandidate(r, i, found) && ms[i].reset(text).matches()) {
+				ports |= port;
+			}
+		}
+		return ports;
+	}
+	
+	/**
+	 * Does the sequence contain all the literals required by expression {@code i}.
+	 */
+	private static boolean isCandidate(final Rules r, final int i, final long[] found) {
+		if (found == null)
+			return true;
+		final long[] req = r.required[i];
+		if (req == null)
+			return true;
+		for (int w = 0; w < req.length; w++) {
+			if ((found[w] & req[w]) != req[w])
+				return false;
+		}
+		return true;
+	}
+	
+	private static boolean anyCandidate(final Rules r, final long[] found) {
+		for (int i = 0; i < r.required.length; i++) {
+			if (isCandidate(r, i, found))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the character sequence from {@link #getTupleSequence(Tuple)}
+	 * as a {@code String}, as the destination is determined solely by it.
+	 */
+	@Override
+	protected Object getCacheKey(Tuple tuple) throws Exception {
+		return getTupleSequence(tuple).toString();
+	}
+	
+	/**
+	 * Is matching performed using a set of {@code Matcher}s per thread.
+	 * @return {@code true} if each thread uses its own {@code Matcher}s,
+	 * {@code false} if matching is serialized.
+	 */
+	public boolean isConcurrentMatching() {
+		return concurrentMatching;
+	}
+
+	@Parameter(optional=true, description="If true each thread delivering tuples matches using its own Matchers, otherwise matching is serialized. Defaults to false.")
+	public void setConcurrentMatching(boolean concurrentMatching) {
+		this.concurrentMatching = concurrentMatching;
+	}
+	
+	/**
+	 * Are the expressions combined into a single automaton.
+	 * @return {@code true} if the character sequence is scanned
+	 * once for all supported expressions, {@code false} if each
+	 * expression is matched in turn.
+	 */
+	public boolean isCombinedMatching() {
+		return combinedMatching;
+	}
+
+	@Parameter(optional=true, description="If true the expressions are combined into a single automaton that scans the input once, expressions it does not support are matched using java.util.regex. Defaults to false.")
+	public void setCombinedMatching(boolean combinedMatching) {
+		this.combinedMatching = combinedMatching;
+	}
+	
+	/**
+	 * Is each tuple submitted to the ports of all matching expressions.
+	 * @return {@code true} if tuples are submitted to the port of every
+	 * matching expression, {@code false} if only the first matching
+	 * expression determines the port.
+	 */
+	public boolean isAllMatches() {
+		return allMatches;
+	}
+
+	@Parameter(optional=true, description="If true each tuple is submitted to the output port of every expression that matches, otherwise only the first matching expression determines the output port. Defaults to false.")
+	public void setAllMatches(boolean allMatches) {
+		this.allMatches = allMatches;
+	}
+	
+	/**
+	 * Are tuples checked for the literals required by the
+	 * expressions before any regular expression is evaluated.
+	 * @return {@code true} if the literal prefilter is enabled.
+	 */
+	public boolean isLiteralPrefilter() {
+		return literalPrefilter;
+	}
+
+	@Parameter(optional=true, description="If true literals required by the expressions are searched for in a single pass before matching, expressions whose literals are not all present are skipped. Defaults to false.")
+	public void setLiteralPrefilter(boolean literalPrefilter) {
+		this.literalPrefilter = literalPrefilter;
+	}
+	
+	/**
+	 * Are the expressions mutually exclusive, allowing
+	 * them to be evaluated in any order.
+	 * @return {@code true} if the evaluation order adapts
+	 * to the observed cost and match rate of each expression.
+	 */
+	public boolean isUnorderedExpressions() {
+		return unorderedExpressions;
+	}
+
+	@Parameter(optional=true, description="If true the expressions are mutually exclusive and are evaluated in an order that adapts to their observed cost and match rate. Defaults to false.")
+	public void setUnorderedExpressions(boolean unorderedExpressions) {
+		this.unorderedExpressions = unorderedExpressions;
+	}
+
+	/**
+	 * Period in seconds between recalculations of the
+	 * evaluation order of unordered expressions.
+	 * @return Reorder period in seconds.
+	 */
+	public double getReorderPeriod() {
+		return reorderPeriod;
+	}
+
+	@Parameter(optional=true, description="Period in seconds between recalculations of the evaluation order when unorderedExpressions is true. Defaults to 10.0.")
+	public void setReorderPeriod(double reorderPeriod) {
+		this.reorderPeriod = reorderPeriod;
+	}
+	
+	/**
+	 * Maximum number of characters read matching a tuple.
+	 * @return Evaluation budget, {@code 0} if evaluation is not bounded.
+	 */
+	public long getEvaluationBudget() {
+		return evaluationBudget;
+	}
+
+	@Parameter(optional=true, description="Maximum number of characters read by the Matchers evaluating a tuple, tuples exceeding it are submitted to budgetExceededPort. Defaults to 0, evaluation is not bounded.")
+	public void setEvaluationBudget(long evaluationBudget) {
+		this.evaluationBudget = evaluationBudget;
+	}
+
+	/**
+	 * Output port for tuples exceeding the evaluation budget,
+	 * which must not be the port of any expression.
+	 * @return Port index, {@code -1} if such tuples are discarded.
+	 */
+	public int getBudgetExceededPort() {
+		return budgetExceededPort;
+	}
+
+	@Parameter(optional=true, description="Index of the output port tuples exceeding evaluationBudget are submitted to, which must be greater than the index of every expression. Defaults to -1, such tuples are discarded.")
+	public void setBudgetExceededPort(int budgetExceededPort) {
+		this.budgetExceededPort = budgetExceededPort;
+	}
+	
+	/**
+	 * Sample inputs evaluated during initialization.
+	 * @return Warm-up inputs, or {@code null} if there is no warm-up.
+	 */
+	public List<String> getWarmupInputs() {
+		return warmupInputs;
+	}
+
+	@Parameter(optional=true, cardinality=-1, description="Sample inputs evaluated against the expressions during initialization, so that the first tuples are evaluated at steady state speed. Defaults to no warm-up.")
+	public void setWarmupInputs(List<String> warmupInputs) {
+		this.warmupInputs = warmupInputs;
+	}
+	
+	/**
+	 * Number of times each warm-up input is evaluated.
+	 * @return Warm-up iterations.
+	 */
+	public int getWarmupIterations() {
+		return warmupIterations;
+	}
+
+	@Parameter(optional=true, description="Number of times each warm-up input is evaluated during initialization. Defaults to 1000.")
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+	
 	/**
 	 * Regular expressions to be used to match input tuples.
 	 * <BR>
@@ -70,11 +870,33 @@ public abstract class RegexSplit extends Split {
 	 * (in the returned array) of the first expression that
 	 * matches (starting from 0) is used as the destination index.
 	 * <BR>
-	 * This is called once, during {@link #initialize(OperatorContext)}.
+	 * This is called once, during {@link #initialize(OperatorContext)},
+	 * the expressions may then be replaced using {@link #updateExpressions(String...)}.
 	 * @return Regular expressions for pattern matching.
 	 */
 	protected abstract String[] getExpressions();
 	
+	/**
+	 * Return a character sequence view of the {@code rstring}
+	 * or {@code blob} attribute at {@code index}, for returning from
+	 * {@link #getTupleSequence(Tuple)} without decoding the bytes
+	 * into a {@code String}. Bytes are decoded as ISO-8859-1, so this
+	 * is only suitable for ASCII or Latin-1 data. For a {@code ustring}
+	 * attribute its {@code String} value is returned.
+	 * <BR>
+	 * The view is reused by each thread, so it is only valid until
+	 * the next call to this method by the same thread. Resolving
+	 * {@code index} once, in {@link #initialize(OperatorContext)},
+	 * avoids looking up the attribute by name for every tuple.
+	 * @param tuple Input tuple.
+	 * @param index Index of the attribute.
+	 * @return View of the attribute's value.
+	 * @see ByteSequence
+	 */
+	protected CharSequence getByteSequence(Tuple tuple, int index) {
+		return byteSequence.get().reset(tuple, index);
+	}
+	
 	/**
 	 * Return the character sequence from {@tuple} to be
 	 * matched against the regular expressions.
@@ -84,4 +906,68 @@ public abstract class RegexSplit extends Split {
 	 * @throws Exception Exception determining the tuple sequence.
 	 */
 	protected abstract CharSequence getTupleSequence(Tuple tuple) throws Exception;
+	
+	/**
+	 * Check that the first attribute of the control port,
+	 * if present, is a list of {@code rstring} or {@code ustring}
+	 * expressions.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkControlPort(OperatorContextChecker checker) {
+		
+		OperatorContext context = checker.getOperatorContext();
+		
+		if (context.getNumberOfStreamingInputs() <= CONTROL_PORT)
+			return;
+		StreamSchema schema = context.getStreamingInputs().get(CONTROL_PORT).getStreamSchema();
+		Type type = schema.getAttributeCount() == 0 ? null : schema.getAttribute(0).getType();
+		MetaType elementType = null;
+		if (type != null && (type.getMetaType() == MetaType.LIST || type.getMetaType() == MetaType.BLIST))
+			elementType = ((CollectionType) type).getElementType().getMetaType();
+		if (elementType != MetaType.RSTRING && elementType != MetaType.USTRING)
+			checker.setInvalidContext("The first attribute of the control port must be a list of rstring or ustring expressions.", null);
+	}
+	
+	/**
+	 * Check the budget exceeded port exists, at runtime as its value
+	 * may be an expression when compiling. That no expression uses
+	 * the port is checked when the expressions are compiled.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck(compile=false)
+	public static void checkBudgetExceededPort(OperatorContextChecker checker) {
+		
+		OperatorContext context = checker.getOperatorContext();
+		
+		List<String> port = context.getParameterValues("budgetExceededPort");
+		if (port.isEmpty())
+			return;
+		int value = Integer.parseInt(port.get(0));
+		if (value < -1 || value >= context.getNumberOfStreamingOutputs())
+			checker.setInvalidContext("The budgetExceededPort parameter must be -1 or the index of an output port.", null);
+	}
+	
+	/**
+	 * Check that submitting tuples to all matching expressions is
+	 * not combined with unordered expressions and that every output
+	 * port can be selected.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkAllMatches(OperatorContextChecker checker) {
+		
+		OperatorContext context = checker.getOperatorContext();
+		
+		if (!isTrue(context, "allMatches"))
+			return;
+		if (isTrue(context, "unorderedExpressions"))
+			checker.setInvalidContext("The allMatches and unorderedExpressions parameters cannot be combined.", null);
+		MulticastSplit.checkPortCount(checker, "RegexSplit");
+	}
+	
+	private static boolean isTrue(OperatorContext context, String parameter) {
+		List<String> values = context.getParameterValues(parameter);
+		return !values.isEmpty() && Boolean.valueOf(values.get(0));
+	}
 }
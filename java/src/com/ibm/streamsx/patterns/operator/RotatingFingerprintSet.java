@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Set of recently added 64-bit fingerprints, held in a ring of
+ * generations that each cover an equal share of the window.
+ * <P>
+ * Fingerprints are added to the current generation, and a fingerprint
+ * is in the set if it is in any generation. When the current generation
+ * holds its share of the window, or {@link #rotate()} is called, the
+ * oldest generation is discarded and a cleared spare generation becomes
+ * the current generation. With {@code G} generations each holding
+ * {@code capacity/(G-1)} fingerprints at least the {@code capacity}
+ * most recently added fingerprints are always in the set.
+ * </P>
+ * <P>
+ * Each generation is an open-addressing table of primitive longs with
+ * a load factor of at most one half, allocated once, so the memory used
+ * is fixed and adding fingerprints creates no garbage.
+ * </P>
+ * <P>
+ * Rotation only exchanges references, the discarded generation is
+ * cleared by {@code clearer} to become the next spare, so adding a
+ * fingerprint never clears a table unless the previous clear has not
+ * completed by the next rotation. The previous generations are
+ * immutable once rotated and published with a volatile write, so
+ * they are searched without locking. Only the current generation
+ * is searched and updated holding the lock.
+ * </P>
+ */
+final class RotatingFingerprintSet {
+
+	private final int limit;
+	private final int mask;
+	private final Executor clearer;
+
+	/**
+	 * Previous generations, newest first, replaced on rotation.
+	 */
+	private volatile long[][] previous;
+
+	private long[] current;
+	private int size;
+
+	private long[] spare;
+	/**
+	 * Clearing of the spare, {@code null} if it is already clear.
+	 */
+	private FutureTask<Void> clearing;
+
+	/**
+	 * @param capacity Minimum number of fingerprints retained.
+	 * @param generationCount Number of generations, at least two.
+	 * @param clearer Executor clearing discarded generations.
+	 */
+	RotatingFingerprintSet(int capacity, int generationCount, Executor clearer) {
+		this.clearer = clearer;
+		limit = (int) ((capacity + generationCount - 2L) / (generationCount - 1));
+		int slots = 2;
+		while (slots < limit * 2L)
+			slots <<= 1;
+		mask = slots - 1;
+		previous = new long[generationCount - 1][slots];
+		current = new long[slots];
+		spare = new long[slots];
+	}
+
+	/**
+	 * Add {@code fingerprint}, which must not be zero, to the set.
+	 * @return {@code true} if it was not already in the set.
+	 */
+	boolean add(final long fingerprint) {
+		final int start = (int) KeyFingerprint.mix(fingerprint) & mask;
+		final long[][] searched = previous;
+		if (contains(searched, start, fingerprint))
+			return false;
+
+		synchronized (this) {
+			// A rotation since the search moved the current
+			// generation into the previous generations.
+			if (searched != previous && contains(previous, start, fingerprint))
+				return false;
+
+			final long[] table = current;
+			int slot = start;
+			for (long value; (value = table[slot]) != 0; slot = (slot + 1) & mask) {
+				if (value == fingerprint)
+					return false;
+			}
+			table[slot] = fingerprint;
+			if (++size >= limit)
+				rotate();
+			return true;
+		}
+	}
+
+	private boolean contains(final long[][] tables, final int start, final long fingerprint) {
+		for (long[] table : tables) {
+			for (int slot = start;; slot = (slot + 1) & mask) {
+				final long value = table[slot];
+				if (value == fingerprint)
+					return true;
+				if (value == 0)
+					break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Discard the oldest generation, starting a new current generation.
+	 */
+	synchronized void rotate() {
+		awaitSpare();
+		final long[][] old = previous;
+		final long[][] rotated = new long[old.length][];
+		rotated[0] = current;
+		System.arraycopy(old, 0, rotated, 1, old.length - 1);
+		final long[] discarded = old[old.length - 1];
+
+		current = spare;
+		size = 0;
+		previous = rotated;
+
+		spare = discarded;
+		clearing = new FutureTask<Void>(new Runnable() {
+			@Override
+			public void run() {
+				Arrays.fill(discarded, 0L);
+			}
+		}, null);
+		try {
+			clearer.execute(clearing);
+		} catch (RejectedExecutionException e) {
+			// cleared by the next rotation
+		}
+	}
+
+	/**
+	 * Wait for the spare to be cleared, clearing it on this
+	 * thread if the clearer has not started.
+	 */
+	private void awaitSpare() {
+		if (clearing == null)
+			return;
+		clearing.run();
+		boolean interrupted = false;
+		for (;;) {
+			try {
+				clearing.get();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		clearing = null;
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Filter that passes a sample of the input tuples, each tuple
+ * passing with probability {@code probability}. Tuples not
+ * in the sample are submitted to the second output port if
+ * it exists, otherwise they are discarded.
+ * <P>
+ * By default each tuple is sampled independently (Bernoulli sampling)
+ * using a random number generator per thread, so sampling tuples
+ * arriving on multiple threads involves no shared state.
+ * When {@code keyAttributes} is set the decision is instead made from
+ * a 64-bit fingerprint of the key attributes, so all tuples with the same
+ * key are either in or not in the sample, and a key is in the sample
+ * of every operator with the same {@code probability}.
+ * </P>
+ * @see RateLimitFilter
+ */
+public class SamplingFilter extends Filter {
+
+	private double probability;
+	private List<String> keyAttributes;
+
+	/**
+	 * Tuples pass when the top 53 bits of a random
+	 * value or fingerprint are less than this.
+	 */
+	private long threshold;
+	private KeyFingerprint key;
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Resolves the key attributes, if any.
+	 * </P>
+	 */
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+		threshold = (long) (getProbability() * (1L << 53));
+		if (getKeyAttributes() != null)
+			key = new KeyFingerprint(context.getStreamingInputs().get(0).getStreamSchema(),
+					getKeyAttributes());
+	}
+
+	/**
+	 * Returns {@code true} if the tuple is in the sample.
+	 */
+	@Override
+	protected boolean filter(Tuple tuple) throws Exception {
+		final long value = key == null ? ThreadLocalRandom.current().nextLong() : key.fingerprint(tuple);
+		return (value >>> 11) < threshold;
+	}
+
+	/**
+	 * Probability a tuple or key is in the sample.
+	 * @return Sampling probability.
+	 */
+	public double getProbability() {
+		return probability;
+	}
+
+	@Parameter(description="Probability, from 0.0 to 1.0, that a tuple, or a key when keyAttributes is set, is in the sample.")
+	public void setProbability(double probability) {
+		this.probability = probability;
+	}
+
+	/**
+	 * Names of the key attributes.
+	 * @return Names of the attributes the sample is determined by,
+	 * {@code null} if tuples are sampled independently.
+	 */
+	public List<String> getKeyAttributes() {
+		return keyAttributes;
+	}
+
+	@Parameter(optional=true, cardinality=-1, description="Names of the input attributes that determine whether a tuple is in the sample, so that all tuples with the same key are either in or not in the sample. By default tuples are sampled independently.")
+	public void setKeyAttributes(List<String> keyAttributes) {
+		this.keyAttributes = keyAttributes;
+	}
+
+	/**
+	 * Check that the key attributes, if any, exist in the input schema.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkKeyAttributes(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> keys = context.getParameterValues("keyAttributes");
+		if (!keys.isEmpty())
+			checker.checkRequiredAttributes(context.getStreamingInputs().get(0),
+					keys.toArray(new String[keys.size()]));
+	}
+
+	/**
+	 * Check the probability, at runtime as its value
+	 * may be an expression when compiling.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck(compile=false)
+	public static void checkProbability(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> probability = context.getParameterValues("probability");
+		if (!probability.isEmpty()) {
+			final double p = Double.parseDouble(probability.get(0));
+			if (!(p >= 0.0 && p <= 1.0))
+				checker.setInvalidContext("The probability parameter must be from 0.0 to 1.0.", null);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.operator;
+
+import java.io.File;
+import java.util.List;
+
+import com.ibm.streams.operator.Attribute;
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.OperatorContext.ContextCheck;
+import com.ibm.streams.operator.StreamingInput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type.MetaType;
+import com.ibm.streams.operator.compile.OperatorContextChecker;
+import com.ibm.streams.operator.model.Parameter;
+
+/**
+ * Filter that passes tuples whose key attribute is in a set of keys,
+ * or with {@code invert} set, is not in the set. The set may hold tens
+ * or hundreds of millions of keys, such as account identifiers
+ * or IP addresses.
+ * <P>
+ * The keys are read from {@code keyFile}, one per line, and stored as
+ * 64-bit fingerprints in an open-addressing hash table in {@code tableFile},
+ * which is memory-mapped rather than loaded onto the Java heap. The table
+ * is built when it does not exist or is older than the key file, otherwise
+ * initialization only maps the existing file, and operators in any
+ * number of processing elements on a host share the same pages.
+ * When {@code bloomFilter} is true the table includes a Bloom filter
+ * that rejects most keys not in the set with a single memory access.
+ * </P>
+ * <P>
+ * The key attribute must be an integral type, with keys in the file in
+ * decimal, or a {@code rstring} or {@code ustring}. As keys are stored
+ * as fingerprints a key not in a set of {@code n} keys is reported as
+ * a member with a probability of about {@code n/2^64}.
+ * </P>
+ */
+public class SetMembershipFilter extends Filter {
+
+	private String keyAttribute;
+	private String keyFile;
+	private String tableFile;
+	private boolean bloomFilter;
+	private boolean invert;
+
+	private int keyIndex;
+	private MetaType keyType;
+	private FingerprintTable table;
+
+	/**
+	 * {@inheritDoc}
+	 * <P>
+	 * Maps the fingerprint table, building it from the key file first
+	 * if it does not exist or is older than the key file.
+	 * </P>
+	 */
+	@Override
+	public synchronized void initialize(OperatorContext context)
+			throws Exception {
+		super.initialize(context);
+
+		final Attribute key = context.getStreamingInputs().get(0).getStreamSchema().getAttribute(getKeyAttribute());
+		keyIndex = key.getIndex();
+		keyType = key.getType().getMetaType();
+		final boolean integral = isIntegral(keyType);
+
+		final File keys = resolve(context, getKeyFile());
+		final File file = getTableFile() == null
+				? new File(keys.getPath() + ".fpt") : resolve(context, getTableFile());
+		if (!file.exists() || file.lastModified() < keys.lastModified())
+			FingerprintTable.build(keys, file, integral, isBloomFilter());
+		table = FingerprintTable.open(file, integral);
+	}
+
+	private static File resolve(OperatorContext context, String path) {
+		final File file = new File(path);
+		if (file.isAbsolute())
+			return file;
+		return new File(context.getPE().getDataDirectory(), path);
+	}
+
+	/**
+	 * Is the tuple's key in the set, negated if {@code invert} is true.
+	 */
+	@Override
+	protected boolean filter(Tuple tuple) throws Exception {
+		final long fingerprint;
+		switch (keyType) {
+		case INT8:
+			fingerprint = FingerprintTable.fingerprint(tuple.getByte(keyIndex));
+			break;
+		case UINT8:
+			fingerprint = FingerprintTable.fingerprint(tuple.getByte(keyIndex) & 0xFFL);
+			break;
+		case INT16:
+			fingerprint = FingerprintTable.fingerprint(tuple.getShort(keyIndex));
+			break;
+		case UINT16:
+			fingerprint = FingerprintTable.fingerprint(tuple.getShort(keyIndex) & 0xFFFFL);
+			break;
+		case INT32:
+			fingerprint = FingerprintTable.fingerprint(tuple.getInt(keyIndex));
+			break;
+		case UINT32:
+			fingerprint = FingerprintTable.fingerprint(tuple.getInt(keyIndex) & 0xFFFFFFFFL);
+			break;
+		case INT64:
+		case UINT64:
+			fingerprint = FingerprintTable.fingerprint(tuple.getLong(keyIndex));
+			break;
+		default:
+			fingerprint = FingerprintTable.fingerprint(tuple.getString(keyIndex));
+			break;
+		}
+		return table.contains(fingerprint) != invert;
+	}
+
+	private static boolean isIntegral(MetaType type) {
+		switch (type) {
+		case INT8:
+		case UINT8:
+		case INT16:
+		case UINT16:
+		case INT32:
+		case UINT32:
+		case INT64:
+		case UINT64:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Name of the key attribute.
+	 * @return Name of the attribute looked up in the set.
+	 */
+	public String getKeyAttribute() {
+		return keyAttribute;
+	}
+
+	@Parameter(description="Name of the input attribute looked up in the set, of an integral type, rstring or ustring.")
+	public void setKeyAttribute(String keyAttribute) {
+		this.keyAttribute = keyAttribute;
+	}
+
+	/**
+	 * File containing the keys.
+	 * @return Path of the key file.
+	 */
+	public String getKeyFile() {
+		return keyFile;
+	}
+
+	@Parameter(description="File containing the set of keys, one per line. A relative path is relative to the data directory.")
+	public void setKeyFile(String keyFile) {
+		this.keyFile = keyFile;
+	}
+
+	/**
+	 * File containing the fingerprint table.
+	 * @return Path of the table file, or {@code null} if not set.
+	 */
+	public String getTableFile() {
+		return tableFile;
+	}
+
+	@Parameter(optional=true, description="File holding the memory-mapped fingerprint table, built from keyFile if it does not exist or is older than keyFile. A relative path is relative to the data directory. Defaults to keyFile with the suffix .fpt.")
+	public void setTableFile(String tableFile) {
+		this.tableFile = tableFile;
+	}
+
+	/**
+	 * Does a built table include a Bloom filter.
+	 * @return {@code true} if a Bloom filter is included.
+	 */
+	public boolean isBloomFilter() {
+		return bloomFilter;
+	}
+
+	@Parameter(optional=true, description="If true a table built by this operator includes a Bloom filter, so that most keys not in the set are rejected with a single memory access. Defaults to false.")
+	public void setBloomFilter(boolean bloomFilter) {
+		this.bloomFilter = bloomFilter;
+	}
+
+	/**
+	 * Do tuples pass when their key is not in the set.
+	 * @return {@code true} if tuples with keys not in the set pass.
+	 */
+	public boolean isInvert() {
+		return invert;
+	}
+
+	@Parameter(optional=true, description="If true tuples whose key is not in the set pass the filter. Defaults to false.")
+	public void setInvert(boolean invert) {
+		this.invert = invert;
+	}
+
+	/**
+	 * Check that the key attribute exists in the input schema
+	 * and is of a supported type.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkKeyAttribute(OperatorContextChecker checker) {
+
+		OperatorContext context = checker.getOperatorContext();
+
+		List<String> key = context.getParameterValues("keyAttribute");
+		StreamingInput<Tuple> input = context.getStreamingInputs().get(0);
+		if (!checker.checkRequiredAttributes(input, key.get(0)))
+			return;
+		MetaType type = input.getStreamSchema().getAttribute(key.get(0)).getType().getMetaType();
+		if (!isIntegral(type) && type != MetaType.RSTRING && type != MetaType.USTRING)
+			checker.setInvalidContext("Key attribute " + key.get(0) + " must be an integral type, rstring or ustring: " + type, null);
+	}
+}
@@ -8,6 +8,7 @@ import com.ibm.streams.operator.AbstractOperator;
 import com.ibm.streams.operator.OperatorContext;
 import com.ibm.streams.operator.OperatorContext.ContextCheck;
 import com.ibm.streams.operator.StreamingData;
+import com.ibm.streams.operator.StreamingData.Punctuation;
 import com.ibm.streams.operator.StreamingInput;
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.compile.OperatorContextChecker;
@@ -16,13 +17,64 @@ import com.ibm.streams.operator.model.InputPorts;
 import com.ibm.streams.operator.model.OutputPortSet;
 import com.ibm.streams.operator.model.OutputPortSet.WindowPunctuationOutputMode;
 import com.ibm.streams.operator.model.OutputPorts;
+import com.ibm.streams.operator.model.Parameter;
 
 /**
  * Pattern that splits the stream into multiple output streams.
  * <P>
  * The schema of all output ports must exactly
  * match the schema of the input port.
- *
+ * <P>
+ * When the {@code batchSize} parameter is greater than one
+ * tuples are buffered per output port and submitted once
+ * {@code batchSize} tuples are buffered, or {@code batchTimeout}
+ * seconds have passed, whichever comes first. All buffered tuples
+ * are submitted before punctuation is forwarded. Batching does not
+ * reduce the cost of submitting each tuple, as a batch is still
+ * submitted one tuple at a time, it only groups submissions into
+ * bursts at the cost of delaying each tuple by up to {@code batchTimeout}.
+ * </P>
+ * <P>
+ * When the {@code cacheSize} parameter is greater than zero the
+ * result of {@link #destination(Tuple)} is cached against the key returned
+ * by {@link #getCacheKey(Tuple)}, for up to {@code cacheSize} keys.
+ * Cache effectiveness is shown by the {@code nCacheHits} and
+ * {@code nCacheMisses} metrics.
+ * </P>
+ * <P>
+ * When the {@code metricsSampling} parameter is greater than zero
+ * the number of tuples submitted to each port ({@code portN.nSubmitted} for port {@code N})
+ * and discarded ({@code nDiscarded}) are counted, and one in
+ * {@code metricsSampling} invocations of {@link #destination(Tuple)}
+ * is timed, with the percentiles published as the
+ * {@code evaluationNanos.p50}, {@code evaluationNanos.p99} and
+ * {@code evaluationNanos.max} metrics.
+ * </P>
+ * <P>
+ * When the {@code asyncQueueSize} parameter is greater than zero each
+ * output port has a queue of up to {@code asyncQueueSize} tuples drained
+ * by a thread dedicated to the port, so that a slow consumer of one port
+ * does not delay the other ports. {@code asyncOverflow} determines whether
+ * submission waits ({@code BLOCK}, the default), or discards the tuple
+ * being submitted ({@code DROP_NEWEST}) or the oldest queued tuple
+ * ({@code DROP_OLDEST}) when a queue is full. Punctuation is forwarded once
+ * all queued tuples have been submitted. A failure submitting a queued
+ * tuple is thrown by the next submission or punctuation. Queue depths are
+ * shown by the {@code portN.queueDepth} metrics and discarded tuples by
+ * {@code portN.nDropped}.
+ * Asynchronous submission cannot be combined with {@code batchSize}.
+ * </P>
+ * <P>
+ * When the {@code evaluationBatchSize} parameter is greater than one
+ * input tuples are buffered and evaluated together by
+ * {@link #destinationBatch(Tuple[], int, int[])} once
+ * {@code evaluationBatchSize} tuples are buffered, or
+ * {@code evaluationBatchTimeout} seconds have passed, whichever comes first.
+ * All buffered tuples are evaluated before punctuation is forwarded.
+ * Subclasses can override {@link #destinationBatch(Tuple[], int, int[])}
+ * to evaluate a batch in a single loop, for example over primitive
+ * attribute values. Batch evaluation cannot be combined with {@code cacheSize}.
+ * </P>
  */
 
 @InputPorts(@InputPortSet(cardinality=1,id="input", description="Tuples to be split across multiple output ports."))
@@ -34,7 +86,24 @@ import com.ibm.streams.operator.model.OutputPorts;
 })
 public abstract class Split extends AbstractOperator {
 	
+	private int batchSize = 1;
+	private double batchTimeout = 0.01;
+	private int cacheSize;
+	private int metricsSampling;
+	private int asyncQueueSize;
+	private OverflowPolicy asyncOverflow = OverflowPolicy.BLOCK;
+	private int evaluationBatchSize = 1;
+	private double evaluationBatchTimeout = 0.01;
+	
 	private int outputPortCount;
+	private long allPorts;
+	
+	private OutputBatches batches;
+	private AsyncPorts async;
+	private DecisionCache cache;
+	private EvaluationMetrics metrics;
+	private InputBatch inputBatch;
+	private int[] batchDestinations;
 	
 	/**
 	 * {@inheritDoc}
@@ -48,22 +117,191 @@ public abstract class Split extends AbstractOperator {
 			throws Exception {
 		super.initialize(context);
 		outputPortCount = context.getNumberOfStreamingOutputs();
+		allPorts = outputPortCount >= Long.SIZE ? -1L : (1L << outputPortCount) - 1;
+		
+		if (getBatchSize() > 1)
+			batches = new OutputBatches(context.getStreamingOutputs(),
+					getBatchSize(), getBatchTimeout(),
+					context.getScheduledExecutorService());
+		
+		if (getAsyncQueueSize() > 0)
+			async = new AsyncPorts(context.getStreamingOutputs(),
+					getAsyncQueueSize(), getAsyncOverflow(),
+					context.getThreadFactory(), context.getMetrics());
+		
+		if (getCacheSize() > 0)
+			cache = new DecisionCache(getCacheSize(), context.getMetrics());
+		
+		if (getMetricsSampling() > 0) {
+			metrics = new EvaluationMetrics(context.getMetrics(),
+					outputPortCount, getMetricsSampling());
+			metrics.start(context.getScheduledExecutorService());
+		}
+		
+		if (getEvaluationBatchSize() > 1) {
+			final long[] decisions = new long[getEvaluationBatchSize()];
+			batchDestinations = new int[getEvaluationBatchSize()];
+			inputBatch = new InputBatch(getEvaluationBatchSize(), getEvaluationBatchTimeout(),
+					context.getScheduledExecutorService(), new InputBatch.Evaluation() {
+				@Override
+				public void evaluate(Tuple[] tuples, int n) throws Exception {
+					if (metrics != null && metrics.sample()) {
+						final long start = System.nanoTime();
+						decisionBatch(tuples, n, decisions);
+						metrics.record((System.nanoTime() - start) / n);
+					} else {
+						decisionBatch(tuples, n, decisions);
+					}
+					for (int i = 0; i < n; i++)
+						route(decisions[i], tuples[i]);
+				}
+			});
+		}
 	}
 	
 	/**
-	 * Invokes {@link #filter(Tuple)} on {@code tuple}. If it
-	 * returns {@code true} then the tuple is submitted to the
-	 * first output port. If it returns {@code false} then
-	 * the tuple is submitted to the second output port if it exists,
-	 * otherwise it is discarded.
+	 * Invokes {@link #destination(Tuple)} on {@code tuple}. If it
+	 * returns a value less than zero the tuple is discarded,
+	 * otherwise it is submitted to the output port selected
+	 * by the returned index.
 	 */
 	@Override
 	public void process(StreamingInput<Tuple> stream, final Tuple tuple)
 			throws Exception {
 		
-		final int destination = destination(tuple);
-		if (destination >= 0)
-			getOutput(destination % outputPortCount).submit(tuple);
+		if (inputBatch != null) {
+			inputBatch.add(tuple);
+			return;
+		}
+		
+		final long decision = metrics == null ? evaluate(tuple) : measuredEvaluate(tuple);
+		route(decision, tuple);
+	}
+	
+	/**
+	 * Determine the routing decision for {@code tuple},
+	 * the result of {@link #destination(Tuple)}.
+	 */
+	long decision(final Tuple tuple) throws Exception {
+		return destination(tuple);
+	}
+	
+	/**
+	 * Determine the routing decisions for a batch of tuples,
+	 * the results of {@link #destinationBatch(Tuple[], int, int[])}.
+	 */
+	void decisionBatch(final Tuple[] tuples, final int n, final long[] decisions) throws Exception {
+		final int[] destinations = batchDestinations;
+		destinationBatch(tuples, n, destinations);
+		for (int i = 0; i < n; i++)
+			decisions[i] = destinations[i];
+	}
+	
+	/**
+	 * Submit {@code tuple} according to its routing decision,
+	 * a destination index modded by the number of output ports.
+	 */
+	void route(final long decision, final Tuple tuple) throws Exception {
+		if (decision < 0) {
+			if (metrics != null)
+				metrics.discarded();
+			return;
+		}
+		submit((int) (decision % outputPortCount), tuple);
+	}
+	
+	/**
+	 * Submit {@code tuple} to each output port whose bit is set
+	 * in {@code ports}, in port order. Bits for ports that do not
+	 * exist are ignored, and if no port is selected the tuple is discarded.
+	 */
+	final void multicast(long ports, final Tuple tuple) throws Exception {
+		ports &= allPorts;
+		if (ports == 0) {
+			if (metrics != null)
+				metrics.discarded();
+			return;
+		}
+		do {
+			submit(Long.numberOfTrailingZeros(ports), tuple);
+			ports &= ports - 1;
+		} while (ports != 0);
+	}
+	
+	/**
+	 * Bit for the output port a destination index selects,
+	 * {@code 0} if the index is less than zero.
+	 */
+	final long portBit(final int destination) {
+		return destination < 0 ? 0 : 1L << (destination % outputPortCount);
+	}
+	
+	private void submit(final int port, final Tuple tuple) throws Exception {
+		if (metrics != null)
+			metrics.submitted(port);
+		if (async != null)
+			async.submit(port, tuple);
+		else if (batches != null)
+			batches.submit(port, tuple);
+		else
+			getOutput(port).submit(tuple);
+	}
+	
+	private long evaluate(final Tuple tuple) throws Exception {
+		return cache == null ? decision(tuple) : cachedDecision(tuple);
+	}
+	
+	private long measuredEvaluate(final Tuple tuple) throws Exception {
+		if (!metrics.sample())
+			return evaluate(tuple);
+		final long start = System.nanoTime();
+		final long decision = evaluate(tuple);
+		metrics.record(System.nanoTime() - start);
+		return decision;
+	}
+	
+	private long cachedDecision(final Tuple tuple) throws Exception {
+		final Object key = getCacheKey(tuple);
+		if (key == null)
+			return decision(tuple);
+		
+		final DecisionCache.Entry cached = cache.get(key);
+		if (cached != null)
+			return cached.decision;
+		
+		final long generation = cache.generation();
+		final long decision = decision(tuple);
+		cache.put(key, decision, generation);
+		return decision;
+	}
+	
+	/**
+	 * Submits any batched or queued tuples before the punctuation
+	 * is processed.
+	 */
+	@Override
+	public void processPunctuation(StreamingInput<Tuple> stream,
+			Punctuation mark) throws Exception {
+		if (inputBatch != null)
+			inputBatch.flush();
+		if (async != null)
+			async.flush();
+		if (batches != null)
+			batches.flush();
+		super.processPunctuation(stream, mark);
+	}
+	
+	@Override
+	public void shutdown() throws Exception {
+		if (inputBatch != null)
+			inputBatch.close();
+		if (batches != null)
+			batches.close();
+		if (async != null)
+			async.close();
+		if (metrics != null)
+			metrics.close();
+		super.shutdown();
 	}
 	
 	/**
@@ -84,6 +322,163 @@ public abstract class Split extends AbstractOperator {
 	 */
 	protected abstract int destination(Tuple tuple) throws Exception;
 	
+	/**
+	 * Determine the destination indexes for a batch of tuples, when the
+	 * {@code evaluationBatchSize} parameter is greater than one.
+	 * {@code destinations[i]} must be set to the destination index for
+	 * {@code tuples[i]}, as described for {@link #destination(Tuple)}.
+	 * Tuples are then submitted in order.
+	 * <BR>
+	 * {@code tuples} and {@code destinations} are reused for each
+	 * batch, so must not be retained once this returns.
+	 * <BR>
+	 * This implementation invokes {@link #destination(Tuple)} for each tuple.
+	 * @param tuples Tuples to be split, the first {@code n} elements.
+	 * @param n Number of tuples in the batch.
+	 * @param destinations Destination index for each tuple.
+	 * @throws Exception Exception determining the tuples' destinations.
+	 */
+	protected void destinationBatch(Tuple[] tuples, int n, int[] destinations) throws Exception {
+		for (int i = 0; i < n; i++)
+			destinations[i] = destination(tuples[i]);
+	}
+	
+	/**
+	 * Return the key the result of {@link #destination(Tuple)} is cached
+	 * against when the {@code cacheSize} parameter is greater than zero.
+	 * Tuples with equal keys must have the same destination, and the
+	 * key must be immutable.
+	 * <BR>
+	 * This implementation returns {@code null}.
+	 * @param tuple Tuple to be split.
+	 * @return Key for the destination, or {@code null} if the
+	 * destination for {@code tuple} is not to be cached.
+	 * @throws Exception Exception determining the key.
+	 */
+	protected Object getCacheKey(Tuple tuple) throws Exception {
+		return null;
+	}
+	
+	/**
+	 * Discard all cached results of {@link #destination(Tuple)}, when the
+	 * result for a key changes, for example when the rules the
+	 * result is determined by are replaced. Results being determined
+	 * concurrently with this call are not cached.
+	 */
+	protected void invalidateCache() {
+		if (cache != null)
+			cache.clear();
+	}
+	
+	/**
+	 * Maximum number of tuples buffered per output port.
+	 * Buffered tuples are still submitted individually,
+	 * so the cost of submitting each tuple is not reduced.
+	 * @return Batch size, {@code 1} if tuples are submitted individually.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of tuples buffered per output port before they are submitted. Buffered tuples are still submitted one at a time, so batching does not reduce the per-tuple submission cost. Defaults to 1, tuples are submitted without buffering.")
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Maximum time in seconds a tuple is buffered when batching.
+	 * @return Batch timeout in seconds.
+	 */
+	public double getBatchTimeout() {
+		return batchTimeout;
+	}
+
+	@Parameter(optional=true, description="Maximum time in seconds a tuple is buffered before it is submitted, when batchSize is greater than one. This adds latency without reducing the per-tuple submission cost. Defaults to 0.01.")
+	public void setBatchTimeout(double batchTimeout) {
+		this.batchTimeout = batchTimeout;
+	}
+
+	/**
+	 * Maximum number of keys with a cached destination.
+	 * @return Cache size, {@code 0} if destinations are not cached.
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of keys with a cached destination. Defaults to 0, destinations are not cached.")
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Sampling rate for evaluation metrics.
+	 * @return One in this number of evaluations is timed,
+	 * {@code 0} if metrics are disabled.
+	 */
+	public int getMetricsSampling() {
+		return metricsSampling;
+	}
+
+	@Parameter(optional=true, description="Enables metrics counting tuples submitted to each port and discarded, and timing one in metricsSampling invocations of the destination. Defaults to 0, metrics are disabled.")
+	public void setMetricsSampling(int metricsSampling) {
+		this.metricsSampling = metricsSampling;
+	}
+
+	/**
+	 * Maximum number of tuples queued per output port
+	 * when submitting asynchronously.
+	 * @return Queue size, {@code 0} if tuples are submitted on the calling thread.
+	 */
+	public int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of tuples queued per output port, each port's queue is submitted by its own thread. Defaults to 0, tuples are submitted on the thread calling process.")
+	public void setAsyncQueueSize(int asyncQueueSize) {
+		this.asyncQueueSize = asyncQueueSize;
+	}
+
+	/**
+	 * Action when an asynchronous output port's queue is full.
+	 * @return Overflow policy.
+	 */
+	public OverflowPolicy getAsyncOverflow() {
+		return asyncOverflow;
+	}
+
+	@Parameter(optional=true, description="Action when an output port's queue is full, BLOCK, DROP_NEWEST or DROP_OLDEST. Defaults to BLOCK.")
+	public void setAsyncOverflow(OverflowPolicy asyncOverflow) {
+		this.asyncOverflow = asyncOverflow;
+	}
+
+	/**
+	 * Maximum number of input tuples evaluated as a batch.
+	 * @return Evaluation batch size, {@code 1} if tuples are evaluated individually.
+	 */
+	public int getEvaluationBatchSize() {
+		return evaluationBatchSize;
+	}
+
+	@Parameter(optional=true, description="Maximum number of input tuples buffered and evaluated together by destinationBatch. Defaults to 1, tuples are evaluated individually as they arrive.")
+	public void setEvaluationBatchSize(int evaluationBatchSize) {
+		this.evaluationBatchSize = evaluationBatchSize;
+	}
+
+	/**
+	 * Maximum time in seconds an input tuple is buffered
+	 * before it is evaluated, when evaluating batches.
+	 * @return Evaluation batch timeout in seconds.
+	 */
+	public double getEvaluationBatchTimeout() {
+		return evaluationBatchTimeout;
+	}
+
+	@Parameter(optional=true, description="Maximum time in seconds an input tuple is buffered before it is evaluated, when evaluationBatchSize is greater than one. Defaults to 0.01.")
+	public void setEvaluationBatchTimeout(double evaluationBatchTimeout) {
+		this.evaluationBatchTimeout = evaluationBatchTimeout;
+	}
+	
 	/**
 	 * Check that the schemas for all output
 	 * ports match the first input port, as the tuples are directly
@@ -100,4 +495,22 @@ public abstract class Split extends AbstractOperator {
 		for (StreamingData outputPort : context.getStreamingOutputs())
 		    checker.checkMatchingSchemas(inputPort, outputPort);	
 	}
+
+	/**
+	 * Check that asynchronous submission is not combined with batching.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkAsyncParameters(OperatorContextChecker checker) {
+		checker.checkExcludedParameters("asyncQueueSize", "batchSize", "batchTimeout");
+	}
+
+	/**
+	 * Check that batch evaluation is not combined with caching.
+	 * @param checker Context checker object.
+	 */
+	@ContextCheck
+	public static void checkEvaluationBatchParameters(OperatorContextChecker checker) {
+		checker.checkExcludedParameters("evaluationBatchSize", "cacheSize");
+	}
 }
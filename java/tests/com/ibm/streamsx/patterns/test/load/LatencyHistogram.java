@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds, recorded concurrently.
+ * Values below 64 have their own bucket, larger values have
+ * 32 buckets per power of two, so percentiles are within about 3%.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 32;
+    private static final int BUCKETS = 64 + (63 - 5) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        long current;
+        while ((current = max.get()) < nanos && !max.compareAndSet(current, nanos))
+            ;
+    }
+
+    public long count() {
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++)
+            total += counts.get(b);
+        return total;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Value at percentile {@code p}, the upper bound of its bucket.
+     * @param p Percentile from 0.0 to 1.0.
+     * @return Latency in nanoseconds, {@code 0} if nothing was recorded.
+     */
+    public long percentile(double p) {
+        long total = count();
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * p));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank)
+                return Math.min(upperBound(b), max());
+        }
+        return max();
+    }
+
+    static int bucket(long value) {
+        if (value < 64)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return (exponent - 4) * SUB_BUCKETS + (int) ((value >>> (exponent - 5)) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 64)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + 4;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 5);
+        return lower + (1L << (exponent - 5)) - 1;
+    }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.patterns.operator.CompositeFilter;
+
+/**
+ * Composite filter whose first component is an expensive scan
+ * of the line and whose last is a cheap, selective key check.
+ */
+public class LoadCompositeFilterOp extends CompositeFilter {
+
+    @Override
+    protected List<Component> getComponents() {
+        return Arrays.<Component>asList(
+                new Component() {
+                    @Override
+                    public boolean test(Tuple tuple) throws Exception {
+                        return tuple.getString(2).contains("path=/api/");
+                    }
+                },
+                new Component() {
+                    @Override
+                    public boolean test(Tuple tuple) throws Exception {
+                        return !tuple.getString(2).endsWith("latency=0ms");
+                    }
+                },
+                new Component() {
+                    @Override
+                    public boolean test(Tuple tuple) throws Exception {
+                        return tuple.getInt(1) % 20 == 0;
+                    }
+                });
+    }
+}
@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.patterns.operator.Filter;
+
+/**
+ * Filter passing tuples with a key below half of the key range.
+ */
+public class LoadFilterOp extends Filter {
+
+    @Override
+    protected boolean filter(Tuple tuple) throws Exception {
+        return tuple.getInt(1) < LoadSource.KEYS / 2;
+    }
+}
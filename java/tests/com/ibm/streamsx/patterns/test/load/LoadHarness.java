@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamHandler;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Sustained load test of the pattern operators.
+ * <P>
+ * Each {@link LoadScenario} is driven at a fixed rate by one or more
+ * injector threads for a warm up period and then a measurement period.
+ * End-to-end latency is measured from the time each tuple was due to be
+ * submitted, so an operator that falls behind its rate shows the queueing
+ * delay it causes rather than hiding it. Results are written as properties
+ * ({@code <scenario>.throughput} in tuples per second, {@code <scenario>.p50},
+ * {@code .p99}, {@code .p999} and {@code .max} in microseconds) and compared
+ * against a baseline file of the same format. The process exits with
+ * status 1 if any scenario regresses past the baseline, or if the
+ * baseline does not exist so a misconfigured run cannot pass silently.
+ * </P>
+ * <P>
+ * Configured by system properties:
+ * <UL>
+ * <LI>{@code load.scenarios} - Comma separated scenario names, default all.</LI>
+ * <LI>{@code load.rate} - Total tuples per second offered, default 10000.</LI>
+ * <LI>{@code load.threads} - Number of injector threads, default 1.</LI>
+ * <LI>{@code load.warmup} - Warm up seconds per scenario, default 10.</LI>
+ * <LI>{@code load.duration} - Measured seconds per scenario, default 60.</LI>
+ * <LI>{@code load.results} - Results file, default {@code build/load/results.properties}.</LI>
+ * <LI>{@code load.baseline} - Baseline file, results are not compared if empty,
+ * as when recording a new baseline, default {@code tests/load-baseline.properties}.</LI>
+ * <LI>{@code load.allowMissingBaseline} - If {@code true} a baseline file that does
+ * not exist is skipped, otherwise the process exits with status 1, default false.</LI>
+ * <LI>{@code load.tolerance} - Allowed relative regression, default 0.25.</LI>
+ * <LI>{@code load.latencySlack} - Allowed absolute latency increase in
+ * microseconds, so that small latencies are not flagged by noise, default 200.</LI>
+ * </UL>
+ * </P>
+ */
+public class LoadHarness {
+
+    private final int rate = Integer.getInteger("load.rate", 10000);
+    private final int threads = Integer.getInteger("load.threads", 1);
+    private final double warmup = Double.parseDouble(System.getProperty("load.warmup", "10"));
+    private final double duration = Double.parseDouble(System.getProperty("load.duration", "60"));
+    private final double tolerance = Double.parseDouble(System.getProperty("load.tolerance", "0.25"));
+    private final double latencySlack = Double.parseDouble(System.getProperty("load.latencySlack", "200"));
+
+    private final LoadSource source = new LoadSource();
+
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness();
+
+        List<LoadScenario> scenarios = LoadScenario.all();
+        String selected = System.getProperty("load.scenarios", "");
+        if (!selected.trim().isEmpty()) {
+            List<String> names = Arrays.asList(selected.trim().split("\\s*,\\s*"));
+            List<LoadScenario> chosen = new ArrayList<LoadScenario>();
+            for (LoadScenario scenario : scenarios) {
+                if (names.contains(scenario.getName()))
+                    chosen.add(scenario);
+            }
+            scenarios = chosen;
+        }
+
+        Properties results = new Properties();
+        for (LoadScenario scenario : scenarios)
+            harness.run(scenario).store(results);
+
+        File resultsFile = new File(System.getProperty("load.results", "build/load/results.properties"));
+        write(results, resultsFile);
+        System.out.println("Results written to " + resultsFile);
+
+        String baselineName = System.getProperty("load.baseline", "tests/load-baseline.properties");
+        if (baselineName.trim().isEmpty()) {
+            System.out.println("No baseline, results not compared.");
+            return;
+        }
+        File baselineFile = new File(baselineName);
+        if (!baselineFile.exists()) {
+            if (Boolean.getBoolean("load.allowMissingBaseline")) {
+                System.out.println("No baseline " + baselineFile + ", results not compared.");
+                return;
+            }
+            System.out.println("ERROR baseline " + baselineFile + " does not exist,"
+                    + " record one with the load.baseline target"
+                    + " or set load.allowMissingBaseline=true.");
+            System.exit(1);
+        }
+        Properties baseline = new Properties();
+        InputStream in = new FileInputStream(baselineFile);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+        List<String> regressions = harness.compare(baseline, results, scenarios);
+        for (String regression : regressions)
+            System.out.println("REGRESSION " + regression);
+        if (!regressions.isEmpty())
+            System.exit(1);
+        System.out.println("No regressions against " + baselineFile);
+    }
+
+    /**
+     * Drive a single scenario at the configured rate.
+     */
+    Result run(LoadScenario scenario) throws Exception {
+        JavaOperatorTester jot = new JavaOperatorTester();
+        OperatorInvocation<?> op = scenario.create(jot);
+        InputPortDeclaration input = op.addInput(LoadSource.SCHEMA);
+        final Recorder recorder = new Recorder();
+        List<OutputPortDeclaration> outputs = new ArrayList<OutputPortDeclaration>();
+        for (int p = 0; p < scenario.getOutputs(); p++)
+            outputs.add(op.addOutput(scenario.getOutputSchema(p)));
+        if (!op.graph().compileChecks())
+            throw new IllegalStateException("Invalid scenario: " + scenario.getName());
+        JavaTestableGraph tester = jot.tester(op);
+        for (OutputPortDeclaration output : outputs)
+            tester.registerStreamHandler(output, recorder);
+        final StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        final long interval = Math.max(1L, (long) (1E9 * threads / rate));
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        final long measureStart = start + (long) (warmup * 1E9);
+        final long end = measureStart + (long) (duration * 1E9);
+        recorder.from = measureStart;
+        final AtomicLong injected = new AtomicLong();
+
+        Thread[] injectors = new Thread[threads];
+        final Exception[] failure = new Exception[1];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            injectors[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long count = 0;
+                        int next = offset * (source.size() / threads);
+                        for (long due = start + offset * (interval / threads); due < end; due += interval) {
+                            long wait = due - System.nanoTime();
+                            if (wait > 0)
+                                LockSupport.parkNanos(wait);
+                            inject.submit(source.tuple(inject, next, due));
+                            if (++next == source.size())
+                                next = 0;
+                            if (due >= measureStart)
+                                count++;
+                        }
+                        injected.addAndGet(count);
+                    } catch (Exception e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            }, "injector-" + t);
+            injectors[t].start();
+        }
+        for (Thread injector : injectors)
+            injector.join();
+        // Measured from the first due time, so falling behind lowers throughput.
+        final double elapsed = (Math.max(System.nanoTime(), end) - measureStart) / 1E9;
+        inject.punctuate(Punctuation.FINAL_MARKER);
+        tester.shutdown().get();
+        synchronized (failure) {
+            if (failure[0] != null)
+                throw failure[0];
+        }
+
+        Result result = new Result(scenario.getName(), injected.get() / elapsed, recorder.latency);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Compare results against the baseline.
+     * @return Description of each regression.
+     */
+    List<String> compare(Properties baseline, Properties results, List<LoadScenario> scenarios) {
+        List<String> regressions = new ArrayList<String>();
+        for (LoadScenario scenario : scenarios) {
+            String name = scenario.getName();
+            double throughput = value(results, name, "throughput");
+            double baseThroughput = value(baseline, name, "throughput");
+            if (!Double.isNaN(baseThroughput) && throughput < baseThroughput * (1.0 - tolerance))
+                regressions.add(name + " throughput " + throughput + " tuples/s, baseline " + baseThroughput);
+            for (String latency : new String[] {"p50", "p99", "p999"}) {
+                double value = value(results, name, latency);
+                double baseValue = value(baseline, name, latency);
+                if (!Double.isNaN(baseValue) && value > baseValue * (1.0 + tolerance) + latencySlack)
+                    regressions.add(name + " " + latency + " latency " + value + "us, baseline " + baseValue + "us");
+            }
+        }
+        return regressions;
+    }
+
+    private static double value(Properties properties, String scenario, String key) {
+        String value = properties.getProperty(scenario + "." + key);
+        return value == null ? Double.NaN : Double.parseDouble(value);
+    }
+
+    private static void write(Properties properties, File file) throws Exception {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null)
+            dir.mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, "Pattern operator load test results");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Records the latency of tuples submitted during the measurement period.
+     */
+    private static final class Recorder implements StreamHandler<Tuple> {
+        final LatencyHistogram latency = new LatencyHistogram();
+        volatile long from;
+
+        @Override
+        public void tuple(Tuple tuple) throws Exception {
+            long sent = tuple.getLong("sent");
+            if (sent >= from)
+                latency.record(System.nanoTime() - sent);
+        }
+
+        @Override
+        public void mark(Punctuation mark) throws Exception {
+        }
+    }
+
+    /**
+     * Throughput and latency percentiles of a scenario.
+     */
+    static final class Result {
+        final String name;
+        final double throughput;
+        final long delivered;
+        final double p50, p99, p999, max;
+
+        Result(String name, double throughput, LatencyHistogram latency) {
+            this.name = name;
+            this.throughput = throughput;
+            this.delivered = latency.count();
+            this.p50 = latency.percentile(0.50) / 1E3;
+            this.p99 = latency.percentile(0.99) / 1E3;
+            this.p999 = latency.percentile(0.999) / 1E3;
+            this.max = latency.max() / 1E3;
+        }
+
+        void store(Properties properties) {
+            properties.setProperty(name + ".throughput", format(throughput));
+            properties.setProperty(name + ".delivered", Long.toString(delivered));
+            properties.setProperty(name + ".p50", format(p50));
+            properties.setProperty(name + ".p99", format(p99));
+            properties.setProperty(name + ".p999", format(p999));
+            properties.setProperty(name + ".max", format(max));
+        }
+
+        private static String format(double value) {
+            return Double.toString(Math.round(value * 10.0) / 10.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %10.1f tuples/s %10d delivered  p50 %8.1fus  p99 %8.1fus  p99.9 %8.1fus  max %8.1fus",
+                    name, throughput, delivered, p50, p99, p999, max);
+        }
+    }
+}
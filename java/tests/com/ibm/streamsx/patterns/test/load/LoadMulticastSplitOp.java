@@ -0,0 +1,25 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.patterns.operator.MulticastSplit;
+
+/**
+ * Multicast split submitting every tuple to port 0, as an archive,
+ * and {@code ERROR} and {@code WARN} lines also to ports 1 and 2.
+ */
+public class LoadMulticastSplitOp extends MulticastSplit {
+
+    @Override
+    protected long destinations(Tuple tuple) throws Exception {
+        String line = tuple.getString(2);
+        if (line.contains(" ERROR "))
+            return 1L | 2L;
+        if (line.contains(" WARN "))
+            return 1L | 4L;
+        return 1L;
+    }
+}
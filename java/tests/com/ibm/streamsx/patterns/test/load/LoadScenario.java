@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.Type;
+import com.ibm.streamsx.patterns.operator.DedupFilter;
+import com.ibm.streamsx.patterns.operator.ExpressionFilter;
+import com.ibm.streamsx.patterns.operator.ExpressionSplit;
+import com.ibm.streamsx.patterns.operator.HashSplit;
+import com.ibm.streamsx.patterns.operator.RateLimitFilter;
+import com.ibm.streamsx.patterns.operator.SamplingFilter;
+import com.ibm.streamsx.patterns.operator.SetMembershipFilter;
+
+/**
+ * A pattern operator and its configuration under load.
+ * Every output port must have an {@code int64 sent} attribute
+ * so that latency can be measured, which is true of ports
+ * with the {@link LoadSource#SCHEMA input schema}.
+ */
+public abstract class LoadScenario {
+
+    private static final String ERROR_PATTERN =
+            ".*ERROR code=E\\d+x\\d{2,4} (timeout|refused).*";
+
+    private static final String[] LEVEL_PATTERNS = {
+        ".*: ERROR .*", ".*: WARN .*", ".*: INFO .*"
+    };
+
+    private final String name;
+    private final int outputs;
+
+    protected LoadScenario(String name, int outputs) {
+        this.name = name;
+        this.outputs = outputs;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * Schema of output port {@code port}.
+     * This implementation returns the input schema.
+     */
+    public StreamSchema getOutputSchema(int port) {
+        return LoadSource.SCHEMA;
+    }
+
+    /**
+     * Create the invocation of the operator with its parameters set.
+     */
+    public abstract OperatorInvocation<?> create(JavaOperatorTester jot) throws Exception;
+
+    /**
+     * All scenarios, covering each pattern operator and
+     * the options affecting their concurrency.
+     */
+    public static List<LoadScenario> all() {
+        List<LoadScenario> scenarios = new ArrayList<LoadScenario>();
+        scenarios.add(new LoadScenario("filter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                return jot.singleOp(LoadFilterOp.class);
+            }
+        });
+        scenarios.add(new LoadScenario("filter.parallel", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadFilterOp> op = jot.singleOp(LoadFilterOp.class);
+                op.setIntParameter("parallelism", 4);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("split", 4) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                return jot.singleOp(LoadSplitOp.class);
+            }
+        });
+        scenarios.add(new LoadScenario("split.async", 4) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadSplitOp> op = jot.singleOp(LoadSplitOp.class);
+                op.setIntParameter("asyncQueueSize", 1024);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("multicastSplit", 3) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                return jot.singleOp(LoadMulticastSplitOp.class);
+            }
+        });
+        scenarios.add(new LoadScenario("regexFilter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadRegexFilterOp> op = jot.singleOp(LoadRegexFilterOp.class);
+                op.setStringParameter("pattern", ERROR_PATTERN);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("regexFilter.concurrent", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadRegexFilterOp> op = jot.singleOp(LoadRegexFilterOp.class);
+                op.setStringParameter("pattern", ERROR_PATTERN);
+                op.setBooleanParameter("concurrentMatching", true);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("regexSplit", 3) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadRegexSplitOp> op = jot.singleOp(LoadRegexSplitOp.class);
+                op.setStringParameter("patterns", LEVEL_PATTERNS);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("regexSplit.combined", 3) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadRegexSplitOp> op = jot.singleOp(LoadRegexSplitOp.class);
+                op.setStringParameter("patterns", LEVEL_PATTERNS);
+                op.setBooleanParameter("concurrentMatching", true);
+                op.setBooleanParameter("combinedMatching", true);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("regexExtract", 2) {
+            @Override
+            public StreamSchema getOutputSchema(int port) {
+                if (port == 0)
+                    return Type.Factory.getTupleType(
+                            "tuple<int64 sent, int32 key, rstring level, int32 latency>").getTupleSchema();
+                return super.getOutputSchema(port);
+            }
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadRegexExtractOp> op = jot.singleOp(LoadRegexExtractOp.class);
+                op.setStringParameter("pattern", "\\S+ \\S+ \\S+ (?<level>[A-Z]+) .* latency=(?<latency>\\d+)ms");
+                op.setBooleanParameter("concurrentMatching", true);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("expressionFilter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<ExpressionFilter> op = jot.singleOp(ExpressionFilter.class);
+                op.setStringParameter("predicate", "key < 500 && contains(line, \"WARN\")");
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("expressionSplit", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<ExpressionSplit> op = jot.singleOp(ExpressionSplit.class);
+                op.setStringParameter("predicates", "contains(line, \"ERROR\")", "key % 2 == 0");
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("hashSplit", 4) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<HashSplit> op = jot.singleOp(HashSplit.class);
+                op.setStringParameter("keyAttributes", "key");
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("compositeFilter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<LoadCompositeFilterOp> op = jot.singleOp(LoadCompositeFilterOp.class);
+                op.setDoubleParameter("reorderPeriod", 1.0);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("dedupFilter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<DedupFilter> op = jot.singleOp(DedupFilter.class);
+                op.setStringParameter("keyAttributes", "key");
+                op.setIntParameter("capacity", LoadSource.KEYS);
+                op.setDoubleParameter("windowTime", 1.0);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("samplingFilter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<SamplingFilter> op = jot.singleOp(SamplingFilter.class);
+                op.setDoubleParameter("probability", 0.1);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("rateLimitFilter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) {
+                OperatorInvocation<RateLimitFilter> op = jot.singleOp(RateLimitFilter.class);
+                op.setDoubleParameter("rate", 1000.0);
+                op.setIntParameter("burst", 100);
+                return op;
+            }
+        });
+        scenarios.add(new LoadScenario("setMembershipFilter", 2) {
+            @Override
+            public OperatorInvocation<?> create(JavaOperatorTester jot) throws Exception {
+                OperatorInvocation<SetMembershipFilter> op = jot.singleOp(SetMembershipFilter.class);
+                op.setStringParameter("keyAttribute", "key");
+                op.setStringParameter("keyFile", keyFile().getAbsolutePath());
+                op.setBooleanParameter("bloomFilter", true);
+                return op;
+            }
+        });
+        return scenarios;
+    }
+
+    /**
+     * Key file containing every tenth key.
+     */
+    private static File keyFile() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        File keys = File.createTempFile("loadkeys", ".txt", dir);
+        keys.deleteOnExit();
+        new File(keys.getPath() + ".fpt").deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(keys), "UTF-8");
+        try {
+            for (int key = 0; key < LoadSource.KEYS; key += 10)
+                writer.write(key + "\n");
+        } finally {
+            writer.close();
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import java.util.Random;
+
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+
+/**
+ * Generated keyed log events for load tests.
+ * <P>
+ * Tuples have the schema {@code tuple<int64 sent, int32 key, ustring line>}.
+ * {@code sent} is the time ({@code System.nanoTime()}) the tuple was due to
+ * be submitted, used to measure end-to-end latency. {@code key} is skewed
+ * towards low values, so that a few keys are hot. {@code line} is a log
+ * line such as
+ * {@code 2014-11-22T10:15:30.123Z host17 app[1234]: ERROR code=E3x1234 refused user=u42 latency=12ms},
+ * with 80% {@code INFO}, 15% {@code WARN} and 5% {@code ERROR} lines.
+ * </P>
+ * <P>
+ * Keys and lines are generated once, each tuple is created when
+ * it is submitted, as it would be by an upstream operator.
+ * </P>
+ */
+public class LoadSource {
+
+    public static final StreamSchema SCHEMA = Type.Factory.getTupleType(
+            "tuple<int64 sent, int32 key, ustring line>").getTupleSchema();
+
+    /**
+     * Keys are in {@code [0,KEYS)}.
+     */
+    public static final int KEYS = 10000;
+
+    private static final int COUNT = 4096;
+
+    private final int[] keys = new int[COUNT];
+    private final String[] lines = new String[COUNT];
+
+    public LoadSource() {
+        Random rand = new Random(42);
+        StringBuilder line = new StringBuilder(128);
+        for (int i = 0; i < COUNT; i++) {
+            double r = rand.nextDouble();
+            keys[i] = (int) (r * r * r * KEYS);
+
+            line.setLength(0);
+            line.append(String.format("2014-11-22T%02d:%02d:%02d.%03dZ host%d app[%d]: ",
+                    rand.nextInt(24), rand.nextInt(60), rand.nextInt(60),
+                    rand.nextInt(1000), rand.nextInt(32), 1000 + rand.nextInt(9000)));
+            int level = rand.nextInt(100);
+            if (level < 5) {
+                line.append("ERROR code=E").append(rand.nextInt(20)).append('x')
+                    .append(100 + rand.nextInt(9900))
+                    .append(rand.nextBoolean() ? " refused" : " timeout");
+            } else if (level < 20) {
+                line.append("WARN slow response path=/api/v1/item/").append(rand.nextInt(500));
+            } else {
+                line.append("INFO request served path=/api/v1/item/").append(rand.nextInt(500));
+            }
+            line.append(" user=u").append(keys[i])
+                .append(" latency=").append(1 + rand.nextInt(2000)).append("ms");
+            lines[i] = line.toString();
+        }
+    }
+
+    /**
+     * Number of distinct generated events.
+     */
+    public int size() {
+        return COUNT;
+    }
+
+    /**
+     * Create the tuple for event {@code i}.
+     * @param sent Time the tuple was due to be submitted.
+     */
+    public Tuple tuple(StreamingOutput<OutputTuple> inject, int i, long sent) {
+        OutputTuple tuple = inject.newTuple();
+        tuple.setLong(0, sent);
+        tuple.setInt(1, keys[i]);
+        tuple.setString(2, lines[i]);
+        return tuple;
+    }
+}
@@ -0,0 +1,20 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.load;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.patterns.operator.Split;
+
+/**
+ * Split by key, discarding one key in ten.
+ */
+public class LoadSplitOp extends Split {
+
+    @Override
+    protected int destination(Tuple tuple) throws Exception {
+        int key = tuple.getInt(1);
+        return key % 10 == 9 ? -1 : key;
+    }
+}
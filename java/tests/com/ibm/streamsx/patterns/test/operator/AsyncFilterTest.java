@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCollector;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingData.Punctuation;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+
+public class AsyncFilterTest {
+
+    private static final StreamSchema testSchema = Type.Factory.getTupleType(
+            "tuple<int32 a, ustring b>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test blocking lookups on the evaluation threads
+     * are submitted in arrival order.
+     */
+    @Test
+    public void testOrdered() throws Exception {
+        testFilter(false, true);
+    }
+
+    /**
+     * Test lookups completed by an asynchronous client
+     * are submitted in arrival order.
+     */
+    @Test
+    public void testOrderedAsyncClient() throws Exception {
+        testFilter(true, true);
+    }
+
+    /**
+     * Test lookups submitted as they complete, with
+     * punctuation held until all earlier tuples are submitted.
+     */
+    @Test
+    public void testUnordered() throws Exception {
+        testFilter(false, false);
+        testFilter(true, false);
+    }
+
+    private void testFilter(boolean asyncClient, boolean ordered) throws Exception {
+        OperatorInvocation<AsyncFilterTestOp> tf = jot.singleOp(AsyncFilterTestOp.class);
+        tf.setBooleanParameter("asyncClient", asyncClient);
+        tf.setBooleanParameter("preserveOrder", ordered);
+        tf.setIntParameter("maxInFlight", 16);
+        tf.setIntParameter("evaluationThreads", 8);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        OutputPortDeclaration notPass = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCollector<LinkedList<Tuple>, Tuple> passTuples = StreamCollector.newLinkedListCollector();
+        tester.registerStreamHandler(pass, passTuples);
+        StreamCounter<Tuple> notPassCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(notPass, notPassCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 1000; i++)
+            inject.submitAsTuple(i % 100, "v" + i);
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+
+        // All tuples are submitted before the punctuation is forwarded.
+        assertEquals(500, passTuples.getTuples().size());
+        assertEquals(500, notPassCount.getTupleCount());
+        assertEquals(1, notPassCount.getMarkCount(Punctuation.WINDOW_MARKER));
+
+        Set<Integer> sequences = new HashSet<Integer>();
+        int previous = -1;
+        for (Tuple tuple : passTuples.getTuples()) {
+            assertTrue(tuple.getInt("a") >= 50);
+            int sequence = Integer.parseInt(tuple.getString("b").substring(1));
+            assertTrue(sequences.add(sequence));
+            if (ordered)
+                assertTrue(sequence > previous);
+            previous = sequence;
+        }
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test a failed lookup discards its tuple and the
+     * exception is thrown processing the punctuation.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        OperatorInvocation<AsyncFilterTestOp> tf = jot.singleOp(AsyncFilterTestOp.class);
+        tf.setIntParameter("failKey", 60);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        inject.submitAsTuple(55, "v0");
+        inject.submitAsTuple(60, "v1");
+        inject.submitAsTuple(65, "v2");
+        try {
+            inject.punctuate(Punctuation.WINDOW_MARKER);
+            fail("Expected the lookup failure");
+        } catch (Exception e) {
+            // expected
+        }
+        assertEquals(2, passCount.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test the parameters of Filter that evaluate synchronously are rejected.
+     */
+    @Test
+    public void testUnsupportedParameters() throws Exception {
+        for (String name : new String[] {"parallelism", "cacheSize", "evaluationBatchSize"}) {
+            OperatorInvocation<AsyncFilterTestOp> tf = jot.singleOp(AsyncFilterTestOp.class);
+            tf.setIntParameter(name, 4);
+            tf.addInput(testSchema);
+            tf.addOutput(testSchema);
+            assertFalse(name, tf.graph().compileChecks());
+        }
+    }
+
+    @Test
+    public void testNonMatchingPorts() throws Exception {
+        FilterTest.testNonMatchingPorts(jot, AsyncFilterTestOp.class);
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streamsx.patterns.operator.AsyncFilter;
+
+/**
+ * Test AsyncFilter that looks up the attribute int32 a in an in-memory
+ * stand-in for a key-value store, holding {@code true} for keys greater
+ * than or equal to 50. Lookups of lower keys take longer, so that
+ * decisions complete out of order.
+ * 
+ */
+public class AsyncFilterTestOp extends AsyncFilter {
+    private boolean asyncClient;
+    private int failKey = -1;
+
+    private final Map<Integer, Boolean> store = new ConcurrentHashMap<Integer, Boolean>();
+    private ScheduledExecutorService client;
+
+    @Override
+    public synchronized void initialize(OperatorContext context)
+            throws Exception {
+        super.initialize(context);
+        for (int key = 0; key < 100; key++)
+            store.put(key, key >= 50);
+        if (isAsyncClient())
+            client = Executors.newScheduledThreadPool(4);
+    }
+
+    /**
+     * Blocking lookup.
+     */
+    @Override
+    protected boolean filter(Tuple tuple) throws Exception {
+        final int key = tuple.getInt("a");
+        Thread.sleep(0, (100 - key) * 1000);
+        return lookup(key);
+    }
+
+    /**
+     * Lookup through a client with an asynchronous interface,
+     * completing the decision from the client's thread.
+     */
+    @Override
+    protected void filterAsync(Tuple tuple, final Decision decision)
+            throws Exception {
+        if (!isAsyncClient()) {
+            super.filterAsync(tuple, decision);
+            return;
+        }
+        final int key = tuple.getInt("a");
+        client.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decision.complete(lookup(key));
+                } catch (Exception e) {
+                    decision.fail(e);
+                }
+            }
+        }, 100 - key, TimeUnit.MICROSECONDS);
+    }
+
+    private boolean lookup(int key) throws Exception {
+        if (key == getFailKey())
+            throw new IllegalStateException("Lookup failed: " + key);
+        return store.get(key);
+    }
+
+    @Override
+    public void shutdown() throws Exception {
+        if (client != null)
+            client.shutdownNow();
+        super.shutdown();
+    }
+
+    public boolean isAsyncClient() {
+        return asyncClient;
+    }
+
+    @Parameter(optional=true)
+    public void setAsyncClient(boolean asyncClient) {
+        this.asyncClient = asyncClient;
+    }
+
+    public int getFailKey() {
+        return failKey;
+    }
+
+    @Parameter(optional=true)
+    public void setFailKey(int failKey) {
+        this.failKey = failKey;
+    }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
+
+public class CompositeFilterTest {
+
+    private static final StreamSchema testSchema =
+            Type.Factory.getTupleType("tuple<int32 a>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test the cheap selective component moves to the
+     * front without changing the result of the filter.
+     */
+    @Test
+    public void testReorder() throws Exception {
+        OperatorInvocation<CompositeFilterTestOp> op = jot.singleOp(CompositeFilterTestOp.class);
+        op.setDoubleParameter("reorderPeriod", 0.05);
+        InputPortDeclaration input = op.addInput(testSchema);
+        OutputPortDeclaration pass = op.addOutput(testSchema);
+        OutputPortDeclaration reject = op.addOutput(testSchema);
+        op.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(op);
+        StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+        StreamCounter<Tuple> rejectCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passCount);
+        tester.registerStreamHandler(reject, rejectCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        OperatorMetrics metrics = tester.getOperatorInstance(op).getOperatorContext().getMetrics();
+        Metric rank = metrics.getCustomMetric("component1.rank");
+        assertEquals(1, rank.getValue());
+
+        int submitted = 0;
+        for (int w = 0; w < 200 && rank.getValue() != 0; w++) {
+            for (int i = 0; i < 1000; i++)
+                inject.submitAsTuple(submitted++);
+            Thread.sleep(10);
+        }
+        assertEquals(0, rank.getValue());
+        assertEquals(1, metrics.getCustomMetric("component0.rank").getValue());
+        assertEquals((submitted + 9) / 10, passCount.getTupleCount());
+        assertEquals(submitted - (submitted + 9) / 10, rejectCount.getTupleCount());
+
+        tester.shutdown().get();
+    }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.patterns.operator.CompositeFilter;
+
+/**
+ * Test CompositeFilter whose first component is expensive and rarely
+ * rejects tuples, and whose second is cheap and usually rejects tuples,
+ * passing tuples where the attribute int32 a is a multiple of ten.
+ */
+public class CompositeFilterTestOp extends CompositeFilter {
+
+    @Override
+    protected List<Component> getComponents() {
+        return Arrays.<Component>asList(
+                new Component() {
+                    @Override
+                    public boolean test(Tuple tuple) throws Exception {
+                        long end = System.nanoTime() + 20000;
+                        while (System.nanoTime() < end)
+                            ;
+                        return tuple.getInt("a") % 10 != 3;
+                    }
+                },
+                new Component() {
+                    @Override
+                    public boolean test(Tuple tuple) throws Exception {
+                        return tuple.getInt("a") % 10 == 0;
+                    }
+                });
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streamsx.patterns.operator.DedupFilter;
+
+public class DedupFilterTest {
+
+    private static final StreamSchema testSchema = Type.Factory.getTupleType(
+            "tuple<int32 a, ustring b, rstring c, float64 d>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    private StreamingOutput<OutputTuple> inject;
+    private StreamCounter<Tuple> passed;
+    private StreamCounter<Tuple> duplicates;
+
+    /**
+     * Test only the first tuple with each key passes,
+     * attributes not in the key being ignored.
+     */
+    @Test
+    public void testDuplicates() throws Exception {
+        JavaTestableGraph tester = dedup(1000, 0, 4, "a", "b", "c");
+
+        for (int r = 0; r < 3; r++) {
+            for (int i = 0; i < 100; i++) {
+                inject.submitAsTuple(i % 10, "b" + (i / 10), "c", (double) r);
+                inject.submitAsTuple(i % 10, "b" + (i / 10), "c" + r, 0.0);
+            }
+        }
+        assertEquals(100 + 300, passed.getTupleCount());
+        assertEquals(600 - 400, duplicates.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test at least the most recent capacity keys are remembered,
+     * and older keys are forgotten.
+     */
+    @Test
+    public void testCapacity() throws Exception {
+        JavaTestableGraph tester = dedup(100, 0, 4, "a");
+
+        for (int i = 0; i < 1000; i++)
+            inject.submitAsTuple(i, "b", "c", 0.0);
+        assertEquals(1000, passed.getTupleCount());
+
+        for (int i = 900; i < 1000; i++)
+            inject.submitAsTuple(i, "b", "c", 0.0);
+        assertEquals(100, duplicates.getTupleCount());
+
+        for (int i = 0; i < 100; i++)
+            inject.submitAsTuple(i, "b", "c", 0.0);
+        assertEquals(1100, passed.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test concurrent threads submitting the same keys, across rotations
+     * of the generations, pass each key exactly once.
+     */
+    @Test
+    public void testConcurrentRotation() throws Exception {
+        JavaTestableGraph tester = dedup(20000, 0, 4, "a");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < 10000; i++)
+                            inject.submitAsTuple(i, "b", "c", 0.0);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(10000, passed.getTupleCount());
+        assertEquals(30000, duplicates.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test keys are forgotten once the window time has passed.
+     */
+    @Test
+    public void testWindowTime() throws Exception {
+        JavaTestableGraph tester = dedup(1000, 0.2, 2, "b");
+
+        inject.submitAsTuple(1, "x", "c", 0.0);
+        inject.submitAsTuple(2, "x", "c", 0.0);
+        assertEquals(1, passed.getTupleCount());
+        assertEquals(1, duplicates.getTupleCount());
+
+        Thread.sleep(600);
+        inject.submitAsTuple(3, "x", "c", 0.0);
+        inject.submitAsTuple(4, "x", "c", 0.0);
+        assertEquals(2, passed.getTupleCount());
+        assertEquals(2, duplicates.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    @Test
+    public void testMissingKeyAttribute() throws Exception {
+        OperatorInvocation<DedupFilter> tf = jot.singleOp(DedupFilter.class);
+        tf.setStringParameter("keyAttributes", "a", "z");
+        tf.setIntParameter("capacity", 10);
+        tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        assertFalse(tf.graph().compileChecks());
+    }
+
+    private JavaTestableGraph dedup(int capacity, double windowTime,
+            int generations, String... keys) throws Exception {
+        OperatorInvocation<DedupFilter> tf = jot.singleOp(DedupFilter.class);
+        tf.setStringParameter("keyAttributes", keys);
+        tf.setIntParameter("capacity", capacity);
+        tf.setDoubleParameter("windowTime", windowTime);
+        tf.setIntParameter("generations", generations);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        OutputPortDeclaration duplicate = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        passed = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passed);
+        duplicates = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(duplicate, duplicates);
+        inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+        return tester;
+    }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streamsx.patterns.operator.ExpressionFilter;
+
+public class ExpressionFilterTest {
+
+    static final StreamSchema testSchema = Type.Factory.getTupleType(
+            "tuple<int32 a, ustring b, float64 c, rstring d, boolean e, int64 f,"
+            + " uint8 g, uint16 h, uint32 i, uint64 j>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test predicates against tuples with a in [0,100),
+     * b either "x<a>" or "y<a>", c = a / 4, d = "d<a % 10>",
+     * e true for even a, f = a * 1000, and unsigned g, h and i
+     * at or above 2^(n-1) for a >= 50. uint64 j is not supported.
+     */
+    @Test
+    public void testPredicates() throws Exception {
+        assertEquals(94, passCount("a > 5"));
+        assertEquals(44, passCount("a > 5 && startsWith(b, \"x\")"));
+        assertEquals(60, passCount("endsWith(b, \"7\") || e"));
+        assertEquals(10, passCount("d == \"d3\""));
+        assertEquals(90, passCount("d != \"d3\""));
+        assertEquals(25, passCount("c < 6.25"));
+        assertEquals(10, passCount("(a + 1) * 2 % 20 == 0"));
+        assertEquals(50, passCount("!e"));
+        assertEquals(10, passCount("f / 1000 >= 90"));
+        assertEquals(90, passCount("length(b) > 2"));
+        assertEquals(19, passCount("contains(b, \"3\")"));
+        assertEquals(100, passCount("-a <= 0 && true"));
+        assertEquals(1, passCount("b == \"y99\""));
+        assertEquals(50, passCount("b < \"y\""));
+    }
+
+    /**
+     * Test unsigned attributes are evaluated as non-negative values.
+     */
+    @Test
+    public void testUnsigned() throws Exception {
+        assertEquals(50, passCount("g >= 128"));
+        assertEquals(7, passCount("g > 170"));
+        assertEquals(50, passCount("h >= 32768"));
+        assertEquals(50, passCount("i >= 2147483648"));
+        assertEquals(100, passCount("g >= 78 && h > 0 && i > 0"));
+    }
+
+    /**
+     * Test a predicate dividing an integer by zero is false.
+     */
+    @Test
+    public void testDivisionByZero() throws Exception {
+        // a / (a % 10) divides by zero for 10 tuples, 9 of which have a > 5
+        assertEquals(85, passCount("a / (a % 10) >= 1 && a > 5"));
+        assertEquals(0, passCount("!(a % 0 == 1)"));
+        assertEquals(99, passCount("c / 0 > 0 || a > 0"));
+    }
+
+    @Test
+    public void testInvalidPredicates() throws Exception {
+        for (String predicate : new String[] {"z > 5", "a + 5", "a > \"x\"",
+                "startsWith(a, \"x\")", "a > 5 &&", "(a > 5", "b == \"x", "a >> 5", "j > 5"}) {
+            OperatorInvocation<ExpressionFilter> tf = jot.singleOp(ExpressionFilter.class);
+            tf.setStringParameter("predicate", predicate);
+            tf.addInput(testSchema);
+            tf.addOutput(testSchema);
+            assertFalse(predicate, tf.graph().compileChecks());
+        }
+    }
+
+    private int passCount(String predicate) throws Exception {
+        OperatorInvocation<ExpressionFilter> tf = jot.singleOp(ExpressionFilter.class);
+        tf.setStringParameter("predicate", predicate);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        assertTrue(predicate, tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        inject(inject);
+
+        tester.shutdown().get();
+        return (int) passCount.getTupleCount();
+    }
+
+    static void inject(StreamingOutput<OutputTuple> inject) throws Exception {
+        for (int a = 0; a < 100; a++)
+            inject.submitAsTuple(a, (a < 50 ? "x" : "y") + a, a / 4.0,
+                    "d" + (a % 10), (a % 2) == 0, a * 1000L,
+                    (byte) (a + 78), (short) (a + 32718), (int) (a + 2147483598L), (long) a);
+    }
+}
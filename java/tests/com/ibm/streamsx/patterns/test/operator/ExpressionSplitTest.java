@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.patterns.operator.ExpressionSplit;
+
+public class ExpressionSplitTest {
+
+    private static final StreamSchema testSchema = ExpressionFilterTest.testSchema;
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test the first predicate that is true determines the port.
+     */
+    @Test
+    public void testFirstMatch() throws Exception {
+        OperatorInvocation<ExpressionSplit> tf = jot.singleOp(ExpressionSplit.class);
+        tf.setStringParameter("predicates", "a < 10", "e", "startsWith(b, \"y\")");
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration[] outputs = new OutputPortDeclaration[3];
+        StreamCounter<?>[] counts = new StreamCounter<?>[3];
+        for (int p = 0; p < 3; p++)
+            outputs[p] = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        for (int p = 0; p < 3; p++) {
+            StreamCounter<Tuple> count = new StreamCounter<Tuple>();
+            tester.registerStreamHandler(outputs[p], count);
+            counts[p] = count;
+        }
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        ExpressionFilterTest.inject(inject);
+
+        // a < 10: 10, then even a in [10,100): 45, then odd a in [50,100): 25
+        assertEquals(10, counts[0].getTupleCount());
+        assertEquals(45, counts[1].getTupleCount());
+        assertEquals(25, counts[2].getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    @Test
+    public void testInvalidPredicate() throws Exception {
+        OperatorInvocation<ExpressionSplit> tf = jot.singleOp(ExpressionSplit.class);
+        tf.setStringParameter("predicates", "a < 10", "c");
+        tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        assertFalse(tf.graph().compileChecks());
+    }
+}
@@ -8,7 +8,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.LinkedList;
 import java.util.Random;
 
 import org.junit.Test;
@@ -17,13 +19,17 @@ import com.ibm.streams.flow.declare.InputPortDeclaration;
 import com.ibm.streams.flow.declare.OperatorInvocation;
 import com.ibm.streams.flow.declare.OutputPortDeclaration;
 import com.ibm.streams.flow.handlers.MostRecent;
+import com.ibm.streams.flow.handlers.StreamCollector;
+import com.ibm.streams.flow.handlers.StreamCounter;
 import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
 import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
 import com.ibm.streams.operator.OutputTuple;
 import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingData.Punctuation;
 import com.ibm.streams.operator.StreamingOutput;
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
 import com.ibm.streamsx.patterns.operator.Filter;
 
 public class FilterTest {
@@ -131,6 +137,213 @@ public class FilterTest {
         testNonMatchingPorts(jot, FilterTestOp.class);
     }
 
+    /**
+     * Test batched submission is flushed when the batch
+     * is full and by punctuation.
+     */
+    @Test
+    public void testBatchSize() throws Exception {
+        OperatorInvocation<FilterTestOp> tf = jot.singleOp(FilterTestOp.class);
+        tf.setIntParameter("threshold", 50);
+        tf.setIntParameter("batchSize", 10);
+        tf.setDoubleParameter("batchTimeout", 600.0);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        OutputPortDeclaration notPass = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passCount);
+        StreamCounter<Tuple> notPassCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(notPass, notPassCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 25; i++)
+            inject.submitAsTuple(75, "v75");
+        for (int i = 0; i < 5; i++)
+            inject.submitAsTuple(25, "v25");
+        assertEquals(20, passCount.getTupleCount());
+        assertEquals(0, notPassCount.getTupleCount());
+
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+        assertEquals(25, passCount.getTupleCount());
+        assertEquals(5, notPassCount.getTupleCount());
+        assertEquals(1, passCount.getMarkCount(Punctuation.WINDOW_MARKER));
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test batched submission is flushed by the timeout.
+     */
+    @Test
+    public void testBatchTimeout() throws Exception {
+        OperatorInvocation<FilterTestOp> tf = jot.singleOp(FilterTestOp.class);
+        tf.setIntParameter("batchSize", 1000);
+        tf.setDoubleParameter("batchTimeout", 0.05);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 5; i++)
+            inject.submitAsTuple(i, "v" + i);
+        for (int w = 0; w < 200 && passCount.getTupleCount() != 5; w++)
+            Thread.sleep(10);
+        assertEquals(5, passCount.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test batch evaluation evaluates full batches, flushes on
+     * punctuation and submits tuples in arrival order.
+     */
+    @Test
+    public void testEvaluationBatch() throws Exception {
+        OperatorInvocation<FilterTestOp> tf = jot.singleOp(FilterTestOp.class);
+        tf.setIntParameter("threshold", 50);
+        tf.setIntParameter("evaluationBatchSize", 8);
+        tf.setDoubleParameter("evaluationBatchTimeout", 600.0);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        OutputPortDeclaration notPass = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCollector<LinkedList<Tuple>, Tuple> passTuples = StreamCollector.newLinkedListCollector();
+        tester.registerStreamHandler(pass, passTuples);
+        StreamCounter<Tuple> notPassCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(notPass, notPassCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 20; i++)
+            inject.submitAsTuple(i % 2 == 0 ? 75 : 25, "v" + i);
+        assertEquals(8, passTuples.getTuples().size());
+        assertEquals(8, notPassCount.getTupleCount());
+
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+        assertEquals(10, passTuples.getTuples().size());
+        assertEquals(10, notPassCount.getTupleCount());
+        assertEquals(1, notPassCount.getMarkCount(Punctuation.WINDOW_MARKER));
+        int previous = -1;
+        for (Tuple tuple : passTuples.getTuples()) {
+            int sequence = Integer.parseInt(tuple.getString("b").substring(1));
+            assertTrue(sequence > previous);
+            previous = sequence;
+        }
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test a partial evaluation batch is evaluated by the timeout.
+     */
+    @Test
+    public void testEvaluationBatchTimeout() throws Exception {
+        OperatorInvocation<FilterTestOp> tf = jot.singleOp(FilterTestOp.class);
+        tf.setIntParameter("evaluationBatchSize", 1000);
+        tf.setDoubleParameter("evaluationBatchTimeout", 0.05);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 5; i++)
+            inject.submitAsTuple(i, "v" + i);
+        for (int w = 0; w < 200 && passCount.getTupleCount() != 5; w++)
+            Thread.sleep(10);
+        assertEquals(5, passCount.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test batch evaluation cannot be combined with parallel evaluation.
+     */
+    @Test
+    public void testEvaluationBatchParallel() throws Exception {
+        OperatorInvocation<FilterTestOp> tf = jot.singleOp(FilterTestOp.class);
+        tf.setIntParameter("evaluationBatchSize", 8);
+        tf.setIntParameter("parallelism", 4);
+        tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        assertFalse(tf.graph().compileChecks());
+    }
+
+    /**
+     * Test the metrics count passed and discarded tuples.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        OperatorInvocation<FilterTestOp> tf = jot.singleOp(FilterTestOp.class);
+        tf.setIntParameter("threshold", 50);
+        tf.setIntParameter("metricsSampling", 4);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 100; i++)
+            inject.submitAsTuple(i, "v" + i);
+
+        OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+        assertEquals(50, metrics.getCustomMetric("port0.nSubmitted").getValue());
+        assertEquals(50, metrics.getCustomMetric("nDiscarded").getValue());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test parallel evaluation submits tuples in arrival order,
+     * and punctuation after all earlier tuples.
+     */
+    @Test
+    public void testParallel() throws Exception {
+        OperatorInvocation<FilterTestOp> tf = jot.singleOp(FilterTestOp.class);
+        tf.setIntParameter("threshold", 50);
+        tf.setIntParameter("parallelism", 4);
+        tf.setIntParameter("parallelWindow", 16);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        OutputPortDeclaration notPass = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCollector<LinkedList<Tuple>, Tuple> passTuples = StreamCollector.newLinkedListCollector();
+        tester.registerStreamHandler(pass, passTuples);
+        StreamCounter<Tuple> notPassCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(notPass, notPassCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 2000; i++)
+            inject.submitAsTuple(i % 100, "v" + i);
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+
+        assertEquals(1000, passTuples.getTuples().size());
+        assertEquals(1000, notPassCount.getTupleCount());
+        assertEquals(1, notPassCount.getMarkCount(Punctuation.WINDOW_MARKER));
+        int previous = -1;
+        for (Tuple tuple : passTuples.getTuples()) {
+            int sequence = Integer.parseInt(tuple.getString("b").substring(1));
+            assertTrue(sequence > previous);
+            previous = sequence;
+        }
+
+        tester.shutdown().get();
+    }
+
     public static void testNonMatchingPorts(JavaOperatorTester jot,
             Class<? extends Filter> filterClass) throws Exception {
 
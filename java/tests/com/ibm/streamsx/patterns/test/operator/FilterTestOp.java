@@ -4,6 +4,8 @@
  *******************************************************************************/
 package com.ibm.streamsx.patterns.test.operator;
 
+import java.util.BitSet;
+
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.model.Parameter;
 import com.ibm.streamsx.patterns.operator.Filter;
@@ -21,6 +23,18 @@ public class FilterTestOp extends Filter {
         return tuple.getInt("a") >= getThreshold();
     }
 
+    /**
+     * Filter a batch in a single loop over the attribute values.
+     */
+    @Override
+    protected void filterBatch(Tuple[] tuples, int n, BitSet pass) throws Exception {
+        final int t = getThreshold();
+        for (int i = 0; i < n; i++) {
+            if (tuples[i].getInt(0) >= t)
+                pass.set(i);
+        }
+    }
+
     public int getThreshold() {
         return threshold;
     }
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCollector;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streamsx.patterns.operator.HashSplit;
+
+public class HashSplitTest {
+
+    private static final StreamSchema testSchema = Type.Factory.getTupleType(
+            "tuple<int32 a, ustring b, int64 c, float64 d, rstring e, boolean f>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test tuples with the same key are always submitted to the same port,
+     * and keys are spread across all ports.
+     */
+    @Test
+    public void testSameKeySamePort() throws Exception {
+        for (boolean consistent : new boolean[] {false, true}) {
+            Map<String,Integer> ports = split(consistent, 5, 1000,
+                    "a", "b", "c", "d", "e", "f");
+            assertEquals(1000, ports.size());
+            int[] counts = new int[5];
+            for (int port : ports.values())
+                counts[port]++;
+            for (int count : counts)
+                assertTrue(count > 100);
+        }
+    }
+
+    /**
+     * Test adding a port with consistent hashing only moves
+     * keys to the new port, and moves about 1/N of them.
+     */
+    @Test
+    public void testConsistentHashing() throws Exception {
+        Map<String,Integer> before = split(true, 4, 2000, "a", "b");
+        Map<String,Integer> after = split(true, 5, 2000, "a", "b");
+
+        int moved = 0;
+        for (Map.Entry<String,Integer> key : before.entrySet()) {
+            int port = after.get(key.getKey());
+            if (port != key.getValue()) {
+                assertEquals(4, port);
+                moved++;
+            }
+        }
+        assertTrue(moved > 300 && moved < 500);
+    }
+
+    @Test
+    public void testMissingKeyAttribute() throws Exception {
+        OperatorInvocation<HashSplit> tf = jot.singleOp(HashSplit.class);
+        tf.setStringParameter("keyAttributes", "a", "z");
+        tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        assertFalse(tf.graph().compileChecks());
+    }
+
+    /**
+     * Split {@code count} distinct keys, returning the port each key
+     * was submitted to. Each key is submitted twice.
+     */
+    private Map<String,Integer> split(boolean consistent, int portCount,
+            int count, String... keys) throws Exception {
+        OperatorInvocation<HashSplit> tf = jot.singleOp(HashSplit.class);
+        tf.setStringParameter("keyAttributes", keys);
+        tf.setBooleanParameter("consistentHashing", consistent);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration[] outputs = new OutputPortDeclaration[portCount];
+        for (int p = 0; p < portCount; p++)
+            outputs[p] = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        @SuppressWarnings("unchecked")
+        StreamCollector<LinkedList<Tuple>, Tuple>[] collectors = new StreamCollector[portCount];
+        for (int p = 0; p < portCount; p++) {
+            collectors[p] = StreamCollector.newLinkedListCollector();
+            tester.registerStreamHandler(outputs[p], collectors[p]);
+        }
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int r = 0; r < 2; r++) {
+            for (int i = 0; i < count; i++)
+                inject.submitAsTuple(i, "k" + (i % 3), (long) i * 7, i / 4.0, "r" + i, (i % 2) == 0);
+        }
+        tester.shutdown().get();
+
+        Map<String,Integer> ports = new HashMap<String,Integer>();
+        for (int p = 0; p < portCount; p++) {
+            for (Tuple tuple : collectors[p].getTuples()) {
+                Integer previous = ports.put(tuple.getInt("a") + "/" + tuple.getString("b"), p);
+                if (previous != null)
+                    assertEquals(p, previous.intValue());
+            }
+        }
+        return ports;
+    }
+}
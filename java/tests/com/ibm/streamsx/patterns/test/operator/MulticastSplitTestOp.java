@@ -0,0 +1,20 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streamsx.patterns.operator.MulticastSplit;
+
+/**
+ * Test MulticastSplit that uses the attribute int32 a
+ * as the mask of output ports.
+ */
+public class MulticastSplitTestOp extends MulticastSplit {
+
+    @Override
+    protected long destinations(Tuple tuple) throws Exception {
+        return tuple.getInt("a");
+    }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+
+public class RateLimitFilterTest {
+
+    private static final StreamSchema testSchema = Type.Factory.getTupleType(
+            "tuple<int32 a>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test a burst passes immediately, then tuples
+     * pass at the rate, from multiple threads.
+     */
+    @Test
+    public void testRateLimit() throws Exception {
+        RateLimitFilterTestOp.clock.set(0);
+        OperatorInvocation<RateLimitFilterTestOp> tf = jot.singleOp(RateLimitFilterTestOp.class);
+        tf.setDoubleParameter("rate", 100.0);
+        tf.setIntParameter("burst", 50);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration pass = tf.addOutput(testSchema);
+        OutputPortDeclaration limited = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(pass, passCount);
+        StreamCounter<Tuple> limitedCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(limited, limitedCount);
+        final StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 1000; i++)
+            inject.submitAsTuple(i);
+        assertEquals(50, passCount.getTupleCount());
+
+        // No time passes, so no tokens are refilled.
+        injectConcurrently(inject);
+        assertEquals(50, passCount.getTupleCount());
+
+        // Half a second refills 50 tokens, taken by exactly 50 tuples.
+        RateLimitFilterTestOp.clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        injectConcurrently(inject);
+        assertEquals(100, passCount.getTupleCount());
+
+        // A long idle period refills at most a burst.
+        RateLimitFilterTestOp.clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        injectConcurrently(inject);
+        assertEquals(150, passCount.getTupleCount());
+
+        assertEquals(1000 + 3 * 4 * 1000, passCount.getTupleCount() + limitedCount.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Submit 1000 tuples from each of four threads.
+     */
+    private static void injectConcurrently(final StreamingOutput<OutputTuple> inject) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<Void>> submitted = new ArrayList<Future<Void>>();
+        for (int t = 0; t < 4; t++) {
+            submitted.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < 1000; i++)
+                        inject.submitAsTuple(i);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> f : submitted)
+            f.get();
+        pool.shutdown();
+    }
+}
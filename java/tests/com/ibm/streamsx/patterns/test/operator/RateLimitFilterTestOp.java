@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.streamsx.patterns.operator.RateLimitFilter;
+
+/**
+ * RateLimitFilter using a clock advanced by the test,
+ * so the number of tuples passing does not depend on timing.
+ */
+public class RateLimitFilterTestOp extends RateLimitFilter {
+
+    static final AtomicLong clock = new AtomicLong();
+
+    @Override
+    protected long nanoTime() {
+        return clock.get();
+    }
+}
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.MostRecent;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+
+public class RegexExtractTest {
+
+    private static final StreamSchema outSchema =
+            Type.Factory.getTupleType("tuple<rstring user, int32 code, float64 latency, boolean ok, int32 id>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test named groups are extracted into attributes
+     * with the same name and other attributes are copied.
+     */
+    @Test
+    public void testNamedGroups() throws Exception {
+        testExtract("tuple<ustring a, int32 id>", false,
+                "user=(?<user>\\w+) code=(?<code>-?\\d+) latency=(?<latency>[0-9.]+) ok=(?<ok>\\w+)",
+                null);
+    }
+
+    /**
+     * Test numbered groups are extracted into the
+     * attributes listed by groupAttributes.
+     */
+    @Test
+    public void testNumberedGroups() throws Exception {
+        testExtract("tuple<ustring a, int32 id>", false,
+                "user=(\\w+) code=(-?\\d+) latency=([0-9.]+) ok=(\\w+)",
+                new String[] {"user", "code", "latency", "ok"});
+    }
+
+    /**
+     * Test groups are extracted from a view of rstring bytes.
+     */
+    @Test
+    public void testByteSequence() throws Exception {
+        testExtract("tuple<rstring a, int32 id>", true,
+                "user=(?<user>\\w+) code=(?<code>-?\\d+) latency=(?<latency>[0-9.]+) ok=(?<ok>\\w+)",
+                null);
+    }
+
+    private void testExtract(String inSchema, boolean bytes, String pattern, String[] groupAttributes) throws Exception {
+        OperatorInvocation<RegexExtractTestOp> op = jot.singleOp(RegexExtractTestOp.class);
+        op.setStringParameter("pattern", pattern);
+        op.setBooleanParameter("bytes", bytes);
+        if (groupAttributes != null)
+            op.setStringParameter("groupAttributes", groupAttributes);
+        StreamSchema schema = Type.Factory.getTupleType(inSchema).getTupleSchema();
+        InputPortDeclaration input = op.addInput(schema);
+        OutputPortDeclaration extracted = op.addOutput(outSchema);
+        OutputPortDeclaration notMatched = op.addOutput(schema);
+        op.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(op);
+        MostRecent<Tuple> lastExtracted = new MostRecent<Tuple>();
+        MostRecent<Tuple> lastNotMatched = new MostRecent<Tuple>();
+        tester.registerStreamHandler(extracted, lastExtracted);
+        tester.registerStreamHandler(notMatched, lastNotMatched);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        inject.submitAsTuple("user=fred code=-404 latency=12.5 ok=true", 7);
+        Tuple t = lastExtracted.getMostRecentTuple();
+        assertNotNull(t);
+        assertNull(lastNotMatched.getMostRecentTuple());
+        assertEquals("fred", t.getString("user"));
+        assertEquals(-404, t.getInt("code"));
+        assertEquals(12.5, t.getDouble("latency"), 0.0);
+        assertTrue(t.getBoolean("ok"));
+        assertEquals(7, t.getInt("id"));
+
+        lastExtracted.clear();
+        inject.submitAsTuple("user=bob code=200 latency=3 ok=FALSE", 8);
+        t = lastExtracted.getMostRecentTuple();
+        assertNotNull(t);
+        assertEquals("bob", t.getString("user"));
+        assertEquals(200, t.getInt("code"));
+        assertEquals(3.0, t.getDouble("latency"), 0.0);
+        assertFalse(t.getBoolean("ok"));
+        assertEquals(8, t.getInt("id"));
+
+        // Does not match.
+        lastExtracted.clear();
+        inject.submitAsTuple("user=bob", 9);
+        assertNull(lastExtracted.getMostRecentTuple());
+        assertNotNull(lastNotMatched.getMostRecentTuple());
+        assertEquals(9, lastNotMatched.getMostRecentTuple().getInt("id"));
+
+        // Matches but ok is not a boolean.
+        lastNotMatched.clear();
+        inject.submitAsTuple("user=bob code=1 latency=1 ok=maybe", 10);
+        assertNull(lastExtracted.getMostRecentTuple());
+        assertEquals(10, lastNotMatched.getMostRecentTuple().getInt("id"));
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test integer groups are range checked for their attribute's
+     * type, a value out of range is treated as not matching.
+     */
+    @Test
+    public void testIntegerRange() throws Exception {
+        StreamSchema schema = Type.Factory.getTupleType("tuple<ustring a, int32 id>").getTupleSchema();
+        StreamSchema rangeSchema = Type.Factory.getTupleType(
+                "tuple<int8 b, uint8 ub, int16 s, uint16 us, int32 i, uint32 ui, int64 l, uint64 ul, int32 id>").getTupleSchema();
+        OperatorInvocation<RegexExtractTestOp> op = jot.singleOp(RegexExtractTestOp.class);
+        op.setStringParameter("pattern", "(\\S+) (\\S+) (\\S+) (\\S+) (\\S+) (\\S+) (\\S+) (\\S+)");
+        op.setStringParameter("groupAttributes", "b", "ub", "s", "us", "i", "ui", "l", "ul");
+        InputPortDeclaration input = op.addInput(schema);
+        OutputPortDeclaration extracted = op.addOutput(rangeSchema);
+        OutputPortDeclaration notMatched = op.addOutput(schema);
+        op.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(op);
+        MostRecent<Tuple> lastExtracted = new MostRecent<Tuple>();
+        MostRecent<Tuple> lastNotMatched = new MostRecent<Tuple>();
+        tester.registerStreamHandler(extracted, lastExtracted);
+        tester.registerStreamHandler(notMatched, lastNotMatched);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        inject.submitAsTuple("-128 255 -32768 65535 -2147483648 4294967295"
+                + " -9223372036854775808 18446744073709551615", 1);
+        Tuple t = lastExtracted.getMostRecentTuple();
+        assertNotNull(t);
+        assertEquals(Byte.MIN_VALUE, t.getByte(0));
+        assertEquals((byte) 255, t.getByte(1));
+        assertEquals(Short.MIN_VALUE, t.getShort(2));
+        assertEquals((short) 65535, t.getShort(3));
+        assertEquals(Integer.MIN_VALUE, t.getInt(4));
+        assertEquals((int) 4294967295L, t.getInt(5));
+        assertEquals(Long.MIN_VALUE, t.getLong(6));
+        assertEquals(-1L, t.getLong(7));
+
+        lastExtracted.clear();
+        inject.submitAsTuple("127 0 32767 0 2147483647 0 9223372036854775807 +0", 2);
+        t = lastExtracted.getMostRecentTuple();
+        assertNotNull(t);
+        assertEquals(Byte.MAX_VALUE, t.getByte(0));
+        assertEquals(Short.MAX_VALUE, t.getShort(2));
+        assertEquals(Integer.MAX_VALUE, t.getInt(4));
+        assertEquals(Long.MAX_VALUE, t.getLong(6));
+        assertEquals(0L, t.getLong(7));
+
+        String[] outOfRange = {
+                "128 0 0 0 0 0 0 0",
+                "-129 0 0 0 0 0 0 0",
+                "0 256 0 0 0 0 0 0",
+                "0 -1 0 0 0 0 0 0",
+                "0 0 32768 0 0 0 0 0",
+                "0 0 0 65536 0 0 0 0",
+                "0 0 0 0 2147483648 0 0 0",
+                "0 0 0 0 0 4294967296 0 0",
+                "0 0 0 0 0 0 9223372036854775808 0",
+                "0 0 0 0 0 0 -9223372036854775809 0",
+                "0 0 0 0 0 0 0 18446744073709551616",
+                "0 0 0 0 0 0 0 -1",
+                "0 0 0 0 0 0 0 99999999999999999999",
+        };
+        for (int i = 0; i < outOfRange.length; i++) {
+            lastExtracted.clear();
+            lastNotMatched.clear();
+            inject.submitAsTuple(outOfRange[i], 10 + i);
+            assertNull(lastExtracted.getMostRecentTuple());
+            assertEquals(10 + i, lastNotMatched.getMostRecentTuple().getInt("id"));
+        }
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test floating point groups, with and without an exponent,
+     * and that attributes of primitive types are copied.
+     */
+    @Test
+    public void testFloatGroups() throws Exception {
+        StreamSchema schema = Type.Factory.getTupleType(
+                "tuple<ustring a, int64 id, float64 f, boolean b, uint16 u>").getTupleSchema();
+        StreamSchema floatSchema = Type.Factory.getTupleType(
+                "tuple<float32 x, float64 y, int64 id, float64 f, boolean b, uint16 u>").getTupleSchema();
+        OperatorInvocation<RegexExtractTestOp> op = jot.singleOp(RegexExtractTestOp.class);
+        op.setStringParameter("pattern", "(\\S+) (\\S+)");
+        op.setStringParameter("groupAttributes", "x", "y");
+        InputPortDeclaration input = op.addInput(schema);
+        OutputPortDeclaration extracted = op.addOutput(floatSchema);
+        OutputPortDeclaration notMatched = op.addOutput(schema);
+        op.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(op);
+        MostRecent<Tuple> lastExtracted = new MostRecent<Tuple>();
+        MostRecent<Tuple> lastNotMatched = new MostRecent<Tuple>();
+        tester.registerStreamHandler(extracted, lastExtracted);
+        tester.registerStreamHandler(notMatched, lastNotMatched);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        String[][] values = {{"-0.1", "0.30000000000000004"}, {"12.5", ".25"},
+                {"+3", "-0.0"}, {"1e3", "2.5E-3"}, {"16777217", "123456789012345678901234.5"}};
+        for (int i = 0; i < values.length; i++) {
+            lastExtracted.clear();
+            inject.submitAsTuple(values[i][0] + " " + values[i][1], (long) i, 1.5 * i, i % 2 == 0, (short) 65535);
+            Tuple t = lastExtracted.getMostRecentTuple();
+            assertNotNull(t);
+            assertEquals(Float.parseFloat(values[i][0]), t.getFloat(0), 0.0f);
+            assertEquals(Double.doubleToLongBits(Double.parseDouble(values[i][1])),
+                    Double.doubleToLongBits(t.getDouble(1)));
+            assertEquals(i, t.getLong(2));
+            assertEquals(1.5 * i, t.getDouble(3), 0.0);
+            assertEquals(i % 2 == 0, t.getBoolean(4));
+            assertEquals((short) 65535, t.getShort(5));
+        }
+
+        lastNotMatched.clear();
+        inject.submitAsTuple("1.2.3 1", 9L, 0.0, false, (short) 0);
+        assertEquals(9L, lastNotMatched.getMostRecentTuple().getLong(1));
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test a group number beyond the groups
+     * of the expression fails initialization.
+     */
+    @Test(expected=Exception.class)
+    public void testInvalidGroup() throws Exception {
+        OperatorInvocation<RegexExtractTestOp> op = jot.singleOp(RegexExtractTestOp.class);
+        op.setStringParameter("pattern", "user=(\\w+)");
+        op.setStringParameter("groupAttributes", "user", "code");
+        op.addInput(Type.Factory.getTupleType("tuple<ustring a, int32 id>").getTupleSchema());
+        op.addOutput(outSchema);
+        JavaTestableGraph tester = jot.tester(op);
+        tester.initialize().get();
+    }
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streamsx.patterns.operator.RegexExtract;
+
+/**
+ * Test RegexExtract that matches attribute a,
+ * optionally through a view of its bytes.
+ */
+public class RegexExtractTestOp extends RegexExtract {
+    private String pattern;
+    private boolean bytes;
+    private int index;
+
+    @Override
+    public synchronized void initialize(OperatorContext context)
+            throws Exception {
+        super.initialize(context);
+        index = context.getStreamingInputs().get(0).getStreamSchema().getAttributeIndex("a");
+    }
+
+    @Parameter
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Parameter(optional=true)
+    public void setBytes(boolean bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    protected String getExpression() {
+        return getPattern();
+    }
+
+    @Override
+    protected CharSequence getTupleSequence(Tuple tuple) throws Exception {
+        return bytes ? getByteSequence(tuple, index) : tuple.getString(index);
+    }
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import com.ibm.streams.operator.OperatorContext;
+import com.ibm.streams.operator.Tuple;
+
+/**
+ * Test RegexFilter that matches a view of the bytes
+ * of the rstring or blob attribute a.
+ */
+public class RegexFilterByteTestOp extends RegexFilterTestOp {
+    private int index;
+
+    @Override
+    public synchronized void initialize(OperatorContext context)
+            throws Exception {
+        super.initialize(context);
+        index = context.getStreamingInputs().get(0).getStreamSchema().getAttributeIndex("a");
+    }
+
+    @Override
+    protected CharSequence getTupleSequence(Tuple tuple) throws Exception {
+        return getByteSequence(tuple, index);
+    }
+}
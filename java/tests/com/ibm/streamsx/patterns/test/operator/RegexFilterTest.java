@@ -5,8 +5,22 @@
 package com.ibm.streamsx.patterns.test.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.junit.Test;
 
@@ -14,6 +28,7 @@ import com.ibm.streams.flow.declare.InputPortDeclaration;
 import com.ibm.streams.flow.declare.OperatorInvocation;
 import com.ibm.streams.flow.declare.OutputPortDeclaration;
 import com.ibm.streams.flow.handlers.MostRecent;
+import com.ibm.streams.flow.handlers.StreamCounter;
 import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
 import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
 import com.ibm.streams.operator.OutputTuple;
@@ -21,7 +36,10 @@ import com.ibm.streams.operator.StreamSchema;
 import com.ibm.streams.operator.StreamingOutput;
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
 import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streams.operator.types.RString;
+import com.ibm.streams.operator.types.ValueFactory;
 import com.ibm.streamsx.patterns.operator.RegexFilter;
 
 public class RegexFilterTest {
@@ -99,11 +117,363 @@ public class RegexFilterTest {
 		tester.shutdown().get();
 	}
 	
+	/**
+	 * Test matching a view of rstring and blob attributes.
+	 */
+	@Test
+	public void testByteSequence() throws Exception {
+		for (String type : new String[] {"rstring", "blob"}) {
+			StreamSchema schema = Type.Factory.getTupleType("tuple<" + type + " a>").getTupleSchema();
+			OperatorInvocation<RegexFilterByteTestOp> tf = jot.singleOp(RegexFilterByteTestOp.class);
+			tf.setStringParameter("pattern", "tst.*22");
+			tf.setBooleanParameter("literalPrefilter", true);
+			InputPortDeclaration input = tf.addInput(schema);
+			OutputPortDeclaration pass = tf.addOutput(schema);
+			tf.graph().compileChecks();
+			JavaTestableGraph tester = jot.tester(tf);
+			StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+			tester.registerStreamHandler(pass, passCount);
+			StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+			tester.initialize().get().allPortsReady().get();
+
+			for (String value : new String[] {"tst9fa922", "tst9fa92a", "xtst22", "tst\u00e922"}) {
+				byte[] bytes = value.getBytes("ISO-8859-1");
+				OutputTuple tuple = inject.newTuple();
+				if ("blob".equals(type))
+					tuple.setBlob(0, ValueFactory.newBlob(bytes));
+				else
+					tuple.setObject(0, new RString(bytes));
+				inject.submit(tuple);
+			}
+			assertEquals(type, 2, passCount.getTupleCount());
+
+			tester.shutdown().get();
+		}
+	}
+	
+	/**
+	 * Test the filter with the literal prefilter.
+	 */
+	@Test
+	public void testLiteralPrefilter() throws Exception {
+		
+		OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+		tf.setStringParameter("pattern", ".*ERROR.*code=\\d+.*");
+		tf.setBooleanParameter("literalPrefilter", true);
+		InputPortDeclaration input = tf.addInput(testSchema);
+		OutputPortDeclaration pass = tf.addOutput(testSchema);
+		OutputPortDeclaration notPass = tf.addOutput(testSchema);
+		tf.graph().compileChecks();
+		JavaTestableGraph tester = jot.tester(tf);
+		MostRecent<Tuple> lastPassTuple = new MostRecent<Tuple>();
+		tester.registerStreamHandler(pass, lastPassTuple);
+		MostRecent<Tuple> lastNotPassTuple = new MostRecent<Tuple>();
+		tester.registerStreamHandler(notPass, lastNotPassTuple);
+		StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+		tester.initialize().get().allPortsReady().get();
+		
+		String[] values = {"an ERROR with code=42", "an ERROR with code=x",
+				"a WARN with code=42", "code=42 ERROR"};
+		boolean[] passes = {true, false, false, false};
+		for (int i = 0; i < values.length; i++) {
+			lastPassTuple.clear();
+			lastNotPassTuple.clear();
+			inject.submitAsTuple(values[i]);
+			if (passes[i]) {
+				assertEquals(values[i], lastPassTuple.getMostRecentTuple().getString("a"));
+				assertNull(lastNotPassTuple.getMostRecentTuple());
+			} else {
+				assertNull(lastPassTuple.getMostRecentTuple());
+				assertEquals(values[i], lastNotPassTuple.getMostRecentTuple().getString("a"));
+			}
+		}
+
+		tester.shutdown().get();
+	}
+	
+	/**
+	 * Test operators compiling the same expression share the compiled pattern.
+	 */
+	@Test
+	public void testSharedPattern() throws Exception {
+		Pattern p1 = new RegexFilterTestOp().compile("tst.*[0-9]{2}");
+		Pattern p2 = new RegexFilterTestOp().compile("tst.*[0-9]{2}");
+		assertSame(p1, p2);
+		assertNotSame(p1, new RegexFilterTestOp().compile("tst.*[0-9]{3}"));
+	}
+	
+	/**
+	 * Test warm-up inputs are matched during initialization
+	 * without updating the metrics.
+	 */
+	@Test
+	public void testWarmup() throws Exception {
+		
+		OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+		tf.setStringParameter("pattern", ".*ERROR.*code=\\d+.*");
+		tf.setBooleanParameter("literalPrefilter", true);
+		tf.setStringParameter("warmupInputs", "an ERROR with code=42", "a WARN with code=42");
+		tf.setIntParameter("warmupIterations", 50);
+		InputPortDeclaration input = tf.addInput(testSchema);
+		OutputPortDeclaration pass = tf.addOutput(testSchema);
+		tf.graph().compileChecks();
+		JavaTestableGraph tester = jot.tester(tf);
+		StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(pass, passCount);
+		StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+		tester.initialize().get().allPortsReady().get();
+		
+		OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+		assertEquals(0, metrics.getCustomMetric("nPrefilterRejected").getValue());
+		
+		inject.submitAsTuple("an ERROR with code=7");
+		inject.submitAsTuple("a WARN with code=7");
+		assertEquals(1, passCount.getTupleCount());
+		assertEquals(1, metrics.getCustomMetric("nPrefilterRejected").getValue());
+
+		tester.shutdown().get();
+	}
+	
+	/**
+	 * Test the filter with cached results, including eviction.
+	 */
+	@Test
+	public void testCache() throws Exception {
+		
+		OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+		tf.setStringParameter("pattern", "tst.*22");
+		tf.setIntParameter("cacheSize", 2);
+		InputPortDeclaration input = tf.addInput(testSchema);
+		OutputPortDeclaration pass = tf.addOutput(testSchema);
+		OutputPortDeclaration notPass = tf.addOutput(testSchema);
+		tf.graph().compileChecks();
+		JavaTestableGraph tester = jot.tester(tf);
+		StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(pass, passCount);
+		StreamCounter<Tuple> notPassCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(notPass, notPassCount);
+		StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+		tester.initialize().get().allPortsReady().get();
+		
+		String[] values = {"tst9fa922", "tst9fa92a", "tst22", "tst9fa922", "tst9fa922"};
+		for (int r = 0; r < 100; r++) {
+			for (String value : values)
+				inject.submitAsTuple(value);
+		}
+		assertEquals(400, passCount.getTupleCount());
+		assertEquals(100, notPassCount.getTupleCount());
+		
+		OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+		long hits = metrics.getCustomMetric("nCacheHits").getValue();
+		long misses = metrics.getCustomMetric("nCacheMisses").getValue();
+		assertEquals(500, hits + misses);
+		assertTrue(hits > 0);
+
+		tester.shutdown().get();
+	}
+	
+	/**
+	 * Test the expression is replaced by tuples on the control
+	 * port, discarding cached results, and that an invalid
+	 * expression leaves the active expression in place.
+	 */
+	@Test
+	public void testUpdateExpression() throws Exception {
+		for (boolean concurrent : new boolean[] {false, true}) {
+			OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+			tf.setStringParameter("pattern", "tst.*22");
+			tf.setBooleanParameter("concurrentMatching", concurrent);
+			tf.setBooleanParameter("literalPrefilter", true);
+			tf.setIntParameter("cacheSize", 10);
+			InputPortDeclaration input = tf.addInput(testSchema);
+			InputPortDeclaration control = tf.addInput(
+					Type.Factory.getTupleType("tuple<rstring expression>").getTupleSchema());
+			OutputPortDeclaration pass = tf.addOutput(testSchema);
+			assertTrue(tf.graph().compileChecks());
+			JavaTestableGraph tester = jot.tester(tf);
+			StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+			tester.registerStreamHandler(pass, passCount);
+			StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+			StreamingOutput<OutputTuple> update = tester.getInputTester(control);
+			tester.initialize().get().allPortsReady().get();
+			
+			inject.submitAsTuple("tst22");
+			inject.submitAsTuple("abc33");
+			assertEquals(1, passCount.getTupleCount());
+			
+			update.submitAsTuple("abc.*");
+			inject.submitAsTuple("tst22");
+			inject.submitAsTuple("abc33");
+			assertEquals(2, passCount.getTupleCount());
+			
+			update.submitAsTuple("abc(");
+			inject.submitAsTuple("abc33");
+			assertEquals(3, passCount.getTupleCount());
+			
+			OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+			assertEquals(1, metrics.getCustomMetric("nExpressionUpdates").getValue());
+			assertEquals(1, metrics.getCustomMetric("nExpressionUpdatesRejected").getValue());
+			
+			tester.shutdown().get();
+		}
+	}
+	
+	/**
+	 * Test replacements made by calling updateExpression directly,
+	 * without a control port, are counted by the update metrics.
+	 */
+	@Test
+	public void testUpdateExpressionDirect() throws Exception {
+		OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+		tf.setStringParameter("pattern", "tst.*22");
+		InputPortDeclaration input = tf.addInput(testSchema);
+		OutputPortDeclaration pass = tf.addOutput(testSchema);
+		JavaTestableGraph tester = jot.tester(tf);
+		StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(pass, passCount);
+		StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+		tester.initialize().get().allPortsReady().get();
+		
+		RegexFilterTestOp op = tester.getOperatorInstance(tf);
+		op.updateExpression("abc.*");
+		try {
+			op.updateExpression("abc(");
+			fail("Invalid expression accepted");
+		} catch (PatternSyntaxException e) {
+		}
+		inject.submitAsTuple("tst22");
+		inject.submitAsTuple("abc33");
+		assertEquals(1, passCount.getTupleCount());
+		
+		OperatorMetrics metrics = op.getOperatorContext().getMetrics();
+		assertEquals(1, metrics.getCustomMetric("nExpressionUpdates").getValue());
+		assertEquals(1, metrics.getCustomMetric("nExpressionUpdatesRejected").getValue());
+		
+		tester.shutdown().get();
+	}
+	
+	@Test
+	public void testInvalidControlPort() throws Exception {
+		OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+		tf.setStringParameter("pattern", "tst.*22");
+		tf.addInput(testSchema);
+		tf.addInput(Type.Factory.getTupleType("tuple<int32 expression>").getTupleSchema());
+		tf.addOutput(testSchema);
+		assertFalse(tf.graph().compileChecks());
+	}
+	
+	/**
+	 * Test a tuple causing excessive backtracking is abandoned
+	 * and submitted to the third port, without affecting other tuples.
+	 */
+	@Test
+	public void testEvaluationBudget() throws Exception {
+		OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+		tf.setStringParameter("pattern", "(.*a){12}");
+		tf.setLongParameter("evaluationBudget", 100000L);
+		InputPortDeclaration input = tf.addInput(testSchema);
+		OutputPortDeclaration pass = tf.addOutput(testSchema);
+		OutputPortDeclaration notPass = tf.addOutput(testSchema);
+		OutputPortDeclaration exceeded = tf.addOutput(testSchema);
+		assertTrue(tf.graph().compileChecks());
+		JavaTestableGraph tester = jot.tester(tf);
+		StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(pass, passCount);
+		StreamCounter<Tuple> notPassCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(notPass, notPassCount);
+		MostRecent<Tuple> exceededTuple = new MostRecent<Tuple>();
+		tester.registerStreamHandler(exceeded, exceededTuple);
+		StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+		tester.initialize().get().allPortsReady().get();
+		
+		String adversarial = "aaaaaaaaaaaaaaaaaaaaaaaaac";
+		inject.submitAsTuple("aaaaaaaaaaaa");
+		inject.submitAsTuple("aac");
+		inject.submitAsTuple(adversarial);
+		inject.submitAsTuple("aaaaaaaaaaaaaaa");
+		
+		assertEquals(2, passCount.getTupleCount());
+		assertEquals(1, notPassCount.getTupleCount());
+		assertEquals(adversarial, exceededTuple.getMostRecentTuple().getString("a"));
+		assertEquals(1, tester.getOperatorInstance(tf).getOperatorContext().getMetrics()
+				.getCustomMetric("nBudgetExceeded").getValue());
+		
+		tester.shutdown().get();
+	}
+	
 	@Test
 	public void testNonMatchingPassPort() throws Exception {
 		FilterTest.testNonMatchingPorts(jot, RegexFilterTestOp.class);	
 	}
 	
-	
+	/**
+	 * Test the filter with per-thread matchers driven
+	 * from multiple injector threads.
+	 */
+	@Test
+	public void testMultipleThreads() throws Exception {
+		
+		OperatorInvocation<RegexFilterTestOp> tf = jot.singleOp(RegexFilterTestOp.class);
+		tf.setStringParameter("pattern", "tst.*22");
+		tf.setBooleanParameter("concurrentMatching", true);
+		InputPortDeclaration input = tf.addInput(testSchema);
+		OutputPortDeclaration pass = tf.addOutput(testSchema);
+		OutputPortDeclaration notPass = tf.addOutput(testSchema);
+		tf.graph().compileChecks();
+		JavaTestableGraph tester = jot.tester(tf);
+		StreamCounter<Tuple> passCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(pass, passCount);
+		StreamCounter<Tuple> notPassCount = new StreamCounter<Tuple>();
+		tester.registerStreamHandler(notPass, notPassCount);
+		final StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+		tester.initialize().get().allPortsReady().get();
+		
+		final int threads = 4;
+		final int count = 5000;
+		inject(threads, count, new Injector() {
+			@Override
+			public void inject(int thread, int i) throws Exception {
+				inject.submitAsTuple("tst" + thread + "_" + i + (i % 2 == 0 ? "22" : "2a"));
+			}
+		});
+		
+		assertEquals(threads * count / 2, passCount.getTupleCount());
+		assertEquals(threads * count / 2, notPassCount.getTupleCount());
 
+		tester.shutdown().get();
+	}
+	
+	/**
+	 * Submits a single tuple for a thread.
+	 */
+	public interface Injector {
+		void inject(int thread, int i) throws Exception;
+	}
+	
+	/**
+	 * Run {@code threads} threads concurrently, each calling
+	 * {@code injector} {@code count} times.
+	 */
+	public static void inject(final int threads, final int count,
+			final Injector injector) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>(threads);
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int i = 0; i < count; i++)
+							injector.inject(thread, i);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results)
+				result.get();
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
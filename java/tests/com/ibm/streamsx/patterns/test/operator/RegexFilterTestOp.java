@@ -1,5 +1,7 @@
 package com.ibm.streamsx.patterns.test.operator;
 
+import java.util.regex.Pattern;
+
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.model.Parameter;
 import com.ibm.streamsx.patterns.operator.RegexFilter;
@@ -24,6 +26,13 @@ public class RegexFilterTestOp extends RegexFilter {
         return getPattern();
     }
 
+    /**
+     * Compile an expression as this operator would.
+     */
+    public Pattern compile(String expression) {
+        return createPattern(expression);
+    }
+
     @Override
     protected CharSequence getTupleSequence(Tuple tuple) throws Exception {
         return tuple.getString("a");
@@ -0,0 +1,551 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.MostRecent;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.metrics.Metric;
+
+public class RegexSplitTest {
+
+    private static final StreamSchema testSchema =
+            Type.Factory.getTupleType("tuple<ustring a>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test the first matching expression determines the port.
+     */
+    @Test
+    public void testFirstMatch() throws Exception {
+        testFirstMatch(false, false);
+    }
+
+    /**
+     * Test the first matching expression determines the port
+     * with per-thread matchers.
+     */
+    @Test
+    public void testFirstMatchConcurrent() throws Exception {
+        testFirstMatch(true, false);
+    }
+
+    /**
+     * Test the first matching expression determines the port
+     * with the expressions combined into a single automaton.
+     */
+    @Test
+    public void testFirstMatchCombined() throws Exception {
+        testFirstMatch(false, true);
+        testFirstMatch(true, true);
+    }
+
+    private void testFirstMatch(boolean concurrent, boolean combined) throws Exception {
+        testFirstMatch(concurrent, combined, false,
+                new String[] {"a.*", "b.*", ".*z"},
+                new String[] {"abc", "bcd", "xyz", "az", "qqq"},
+                new int[] {0, 1, 2, 0, -1});
+    }
+
+    /**
+     * Test that expressions not supported by the automaton
+     * are still evaluated in order.
+     */
+    @Test
+    public void testCombinedUnsupported() throws Exception {
+        testFirstMatch(false, true, false,
+                new String[] {"(b)\\1.*", "[a-c]+", "(?=x)x.*"},
+                new String[] {"bbz", "bca", "xa", "bb", "qqq"},
+                new int[] {0, 1, 2, 0, -1});
+    }
+
+    /**
+     * Test the literal prefilter does not change the
+     * destination, including expressions without literals.
+     */
+    @Test
+    public void testLiteralPrefilter() throws Exception {
+        String[] patterns = {".*ERROR.*code=\\d+.*", "(WARN|INFO) .*", "x(yz)+\\.w"};
+        String[] values = {"an ERROR with code=42", "ERROR code=x", "INFO ERROR code=7",
+                "xyzyz.w", "xyz w", "nothing"};
+        int[] ports = {0, -1, 0, 2, -1, -1};
+        testFirstMatch(false, false, true, patterns, values, ports);
+        testFirstMatch(true, false, true, patterns, values, ports);
+        testFirstMatch(false, true, true, patterns, values, ports);
+    }
+
+    /**
+     * Test the destination is unchanged once the combined
+     * automaton has built its maximum number of states.
+     */
+    @Test
+    public void testCombinedStateLimit() throws Exception {
+        // The first expression needs 2^15 DFA states.
+        String[] patterns = {"[ab]*a[ab]{14}", "b.*", ".*c"};
+        Pattern[] compiled = new Pattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++)
+            compiled[i] = Pattern.compile(patterns[i]);
+        Random r = new Random(42);
+        String[] values = new String[3000];
+        int[] ports = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            char[] value = new char[32];
+            for (int j = 0; j < value.length; j++)
+                value[j] = r.nextInt(8) == 0 ? 'c' : (r.nextBoolean() ? 'a' : 'b');
+            values[i] = new String(value);
+            ports[i] = -1;
+            for (int p = 0; p < compiled.length; p++) {
+                if (compiled[p].matcher(values[i]).matches()) {
+                    ports[i] = p;
+                    break;
+                }
+            }
+        }
+        testFirstMatch(false, true, false, patterns, values, ports);
+        testFirstMatch(true, true, false, patterns, values, ports);
+    }
+
+    private void testFirstMatch(boolean concurrent, boolean combined, boolean prefilter,
+            String[] patterns, String[] values, int[] ports) throws Exception {
+        OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+        tf.setStringParameter("patterns", patterns);
+        tf.setBooleanParameter("concurrentMatching", concurrent);
+        tf.setBooleanParameter("combinedMatching", combined);
+        tf.setBooleanParameter("literalPrefilter", prefilter);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        OutputPortDeclaration out1 = tf.addOutput(testSchema);
+        OutputPortDeclaration out2 = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        @SuppressWarnings("unchecked")
+        MostRecent<Tuple>[] last = new MostRecent[] {
+                new MostRecent<Tuple>(), new MostRecent<Tuple>(), new MostRecent<Tuple>() };
+        tester.registerStreamHandler(out0, last[0]);
+        tester.registerStreamHandler(out1, last[1]);
+        tester.registerStreamHandler(out2, last[2]);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < values.length; i++) {
+            for (MostRecent<Tuple> mr : last)
+                mr.clear();
+            inject.submitAsTuple(values[i]);
+            for (int p = 0; p < last.length; p++) {
+                if (p == ports[i]) {
+                    assertNotNull(last[p].getMostRecentTuple());
+                    assertEquals(values[i], last[p].getMostRecentTuple().getString("a"));
+                } else {
+                    assertNull(last[p].getMostRecentTuple());
+                }
+            }
+        }
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test warm-up inputs are evaluated during initialization
+     * without updating the metrics or changing the destinations.
+     */
+    @Test
+    public void testWarmup() throws Exception {
+        testWarmup(false);
+        testWarmup(true);
+    }
+
+    private void testWarmup(boolean combined) throws Exception {
+        String[] patterns = {".*ERROR.*code=\\d+.*", "(WARN|INFO) .*", "x(yz)+\\.w"};
+        String[] values = {"an ERROR with code=42", "ERROR code=x", "INFO ERROR code=7",
+                "xyzyz.w", "nothing"};
+        int[] ports = {0, -1, 0, 2, -1};
+        OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+        tf.setStringParameter("patterns", patterns);
+        tf.setBooleanParameter("combinedMatching", combined);
+        tf.setBooleanParameter("literalPrefilter", true);
+        tf.setStringParameter("warmupInputs", values);
+        tf.setIntParameter("warmupIterations", 50);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        OutputPortDeclaration out1 = tf.addOutput(testSchema);
+        OutputPortDeclaration out2 = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        @SuppressWarnings("unchecked")
+        MostRecent<Tuple>[] last = new MostRecent[] {
+                new MostRecent<Tuple>(), new MostRecent<Tuple>(), new MostRecent<Tuple>() };
+        tester.registerStreamHandler(out0, last[0]);
+        tester.registerStreamHandler(out1, last[1]);
+        tester.registerStreamHandler(out2, last[2]);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        Metric rejected = tester.getOperatorInstance(tf).getOperatorContext()
+                .getMetrics().getCustomMetric("nPrefilterRejected");
+        assertEquals(0, rejected.getValue());
+
+        for (int i = 0; i < values.length; i++) {
+            for (MostRecent<Tuple> mr : last)
+                mr.clear();
+            inject.submitAsTuple(values[i]);
+            for (int p = 0; p < last.length; p++) {
+                if (p == ports[i])
+                    assertEquals(values[i], last[p].getMostRecentTuple().getString("a"));
+                else
+                    assertNull(last[p].getMostRecentTuple());
+            }
+        }
+        // The prefilter is not used when the automaton supports all the expressions.
+        assertEquals(combined ? 0 : 1, rejected.getValue());
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test tuples are submitted to the ports of all matching
+     * expressions, including expressions sharing a port.
+     */
+    @Test
+    public void testAllMatches() throws Exception {
+        testAllMatches(false, false, false, 0);
+        testAllMatches(true, false, false, 0);
+        testAllMatches(false, true, false, 0);
+        testAllMatches(true, true, true, 0);
+        testAllMatches(false, false, true, 10);
+    }
+
+    private void testAllMatches(boolean concurrent, boolean combined, boolean prefilter, int cacheSize) throws Exception {
+        OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+        // The fourth expression is submitted to port 0.
+        tf.setStringParameter("patterns", ".*a.*", ".*b.*", "(x)\\1.*", ".*c.*");
+        tf.setBooleanParameter("allMatches", true);
+        tf.setBooleanParameter("concurrentMatching", concurrent);
+        tf.setBooleanParameter("combinedMatching", combined);
+        tf.setBooleanParameter("literalPrefilter", prefilter);
+        tf.setIntParameter("cacheSize", cacheSize);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration[] outputs = new OutputPortDeclaration[3];
+        for (int p = 0; p < outputs.length; p++)
+            outputs[p] = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        @SuppressWarnings("unchecked")
+        StreamCounter<Tuple>[] counts = new StreamCounter[outputs.length];
+        for (int p = 0; p < outputs.length; p++) {
+            counts[p] = new StreamCounter<Tuple>();
+            tester.registerStreamHandler(outputs[p], counts[p]);
+        }
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        String[] values = {"abc", "xxb", "c", "zzz", "xxab", "abc"};
+        int[][] ports = {{0, 1}, {1, 2}, {0}, {}, {0, 1, 2}, {0, 1}};
+        long[] expected = new long[outputs.length];
+        for (int i = 0; i < values.length; i++) {
+            inject.submitAsTuple(values[i]);
+            for (int p : ports[i])
+                expected[p]++;
+            for (int p = 0; p < outputs.length; p++)
+                assertEquals(values[i], expected[p], counts[p].getTupleCount());
+        }
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test the control port must have a list of strings
+     * as its first attribute.
+     */
+    @Test
+    public void testInvalidControlPort() throws Exception {
+        for (String control : new String[] {"tuple<rstring expressions>",
+                "tuple<list<int32> expressions>"}) {
+            OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+            tf.setStringParameter("patterns", "a.*", "b.*");
+            tf.addInput(testSchema);
+            tf.addInput(Type.Factory.getTupleType(control).getTupleSchema());
+            tf.addOutput(testSchema);
+            tf.addOutput(testSchema);
+            assertFalse(control, tf.graph().compileChecks());
+        }
+    }
+
+    /**
+     * Test a tuple matching only the expression for port 63,
+     * whose destinations are Long.MIN_VALUE, is cached.
+     */
+    @Test
+    public void testAllMatchesCachedPort63() throws Exception {
+        OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+        String[] patterns = new String[64];
+        for (int p = 0; p < patterns.length; p++)
+            patterns[p] = "p" + p;
+        tf.setStringParameter("patterns", patterns);
+        tf.setBooleanParameter("allMatches", true);
+        tf.setIntParameter("cacheSize", 10);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration[] outputs = new OutputPortDeclaration[patterns.length];
+        for (int p = 0; p < outputs.length; p++)
+            outputs[p] = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> count63 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(outputs[63], count63);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        inject.submitAsTuple("p63");
+        inject.submitAsTuple("p63");
+        assertEquals(2, count63.getTupleCount());
+        Metric hits = tester.getOperatorInstance(tf).getOperatorContext()
+                .getMetrics().getCustomMetric("nCacheHits");
+        assertEquals(1, hits.getValue());
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test all matches cannot be combined with unordered expressions.
+     */
+    @Test
+    public void testAllMatchesUnordered() throws Exception {
+        OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+        tf.setStringParameter("patterns", "a.*", "b.*");
+        tf.setBooleanParameter("allMatches", true);
+        tf.setBooleanParameter("unorderedExpressions", true);
+        tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        tf.addOutput(testSchema);
+        assertFalse(tf.graph().compileChecks());
+    }
+
+    /**
+     * Drive the split from multiple injector threads
+     * using per-thread matchers.
+     */
+    @Test
+    public void testMultipleThreads() throws Exception {
+        OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+        tf.setStringParameter("patterns", "even.*", "odd.*");
+        tf.setBooleanParameter("concurrentMatching", true);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration even = tf.addOutput(testSchema);
+        OutputPortDeclaration odd = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> evenCount = new StreamCounter<Tuple>();
+        StreamCounter<Tuple> oddCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(even, evenCount);
+        tester.registerStreamHandler(odd, oddCount);
+        final StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        final int threads = 4;
+        final int count = 5000;
+        RegexFilterTest.inject(threads, count, new RegexFilterTest.Injector() {
+            @Override
+            public void inject(int thread, int i) throws Exception {
+                inject.submitAsTuple((i % 2 == 0 ? "even" : "odd") + thread + "_" + i);
+            }
+        });
+
+        assertEquals(threads * count / 2, evenCount.getTupleCount());
+        assertEquals(threads * count / 2, oddCount.getTupleCount());
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test unordered expressions are reordered by match rate
+     * without changing the destination.
+     */
+    @Test
+    public void testUnorderedExpressions() throws Exception {
+        OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+        tf.setStringParameter("patterns", "a.*", "b.*", "c.*");
+        tf.setBooleanParameter("unorderedExpressions", true);
+        tf.setDoubleParameter("reorderPeriod", 0.05);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        OutputPortDeclaration out1 = tf.addOutput(testSchema);
+        OutputPortDeclaration out2 = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+        StreamCounter<Tuple> count1 = new StreamCounter<Tuple>();
+        StreamCounter<Tuple> count2 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out0, count0);
+        tester.registerStreamHandler(out1, count1);
+        tester.registerStreamHandler(out2, count2);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        Metric rank = tester.getOperatorInstance(tf).getOperatorContext()
+                .getMetrics().getCustomMetric("expression2.rank");
+        assertEquals(2, rank.getValue());
+
+        // Mostly c, so c.* should move to the front.
+        Random rand = new Random();
+        int[] expected = new int[3];
+        for (int w = 0; w < 200 && rank.getValue() != 0; w++) {
+            for (int i = 0; i < 1000; i++) {
+                int e = rand.nextInt(10) == 0 ? rand.nextInt(2) : 2;
+                expected[e]++;
+                inject.submitAsTuple("abc".charAt(e) + "_" + i);
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(0, rank.getValue());
+        assertEquals(expected[0], count0.getTupleCount());
+        assertEquals(expected[1], count1.getTupleCount());
+        assertEquals(expected[2], count2.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test the expressions are replaced by tuples on the control
+     * port, and that a set containing an invalid expression, or
+     * changing the number of unordered expressions, is rejected.
+     */
+    @Test
+    public void testUpdateExpressions() throws Exception {
+        for (boolean combined : new boolean[] {false, true}) {
+            OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+            tf.setStringParameter("patterns", "a.*", "b.*");
+            tf.setBooleanParameter("combinedMatching", combined);
+            tf.setBooleanParameter("literalPrefilter", true);
+            tf.setBooleanParameter("unorderedExpressions", true);
+            tf.setIntParameter("cacheSize", 10);
+            InputPortDeclaration input = tf.addInput(testSchema);
+            InputPortDeclaration control = tf.addInput(
+                    Type.Factory.getTupleType("tuple<list<rstring> expressions>").getTupleSchema());
+            OutputPortDeclaration out0 = tf.addOutput(testSchema);
+            OutputPortDeclaration out1 = tf.addOutput(testSchema);
+            assertTrue(tf.graph().compileChecks());
+            JavaTestableGraph tester = jot.tester(tf);
+            StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+            StreamCounter<Tuple> count1 = new StreamCounter<Tuple>();
+            tester.registerStreamHandler(out0, count0);
+            tester.registerStreamHandler(out1, count1);
+            StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+            StreamingOutput<OutputTuple> update = tester.getInputTester(control);
+            tester.initialize().get().allPortsReady().get();
+
+            inject.submitAsTuple("abc");
+            assertEquals(1, count0.getTupleCount());
+
+            update.submitAsTuple(Arrays.asList("x.*", "ab.*"));
+            inject.submitAsTuple("abc");
+            assertEquals(1, count0.getTupleCount());
+            assertEquals(1, count1.getTupleCount());
+
+            update.submitAsTuple(Arrays.asList("a.*", "[b"));
+            update.submitAsTuple(Arrays.asList("a.*", "b.*", "c.*"));
+            inject.submitAsTuple("abc");
+            inject.submitAsTuple("xyz");
+            assertEquals(2, count0.getTupleCount());
+            assertEquals(2, count1.getTupleCount());
+
+            Metric rejected = tester.getOperatorInstance(tf).getOperatorContext()
+                    .getMetrics().getCustomMetric("nExpressionUpdatesRejected");
+            assertEquals(2, rejected.getValue());
+
+            tester.shutdown().get();
+        }
+    }
+
+    /**
+     * Test a tuple causing excessive backtracking is abandoned
+     * and submitted to the budget port, and that expressions
+     * evaluated by the combined automaton are not bounded.
+     */
+    @Test
+    public void testEvaluationBudget() throws Exception {
+        for (boolean combined : new boolean[] {false, true}) {
+            OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+            tf.setStringParameter("patterns", "(.*a){12}", "(.*x){12}y\\1", "a.*");
+            tf.setBooleanParameter("combinedMatching", combined);
+            tf.setLongParameter("evaluationBudget", 100000L);
+            tf.setIntParameter("budgetExceededPort", 3);
+            InputPortDeclaration input = tf.addInput(testSchema);
+            OutputPortDeclaration out0 = tf.addOutput(testSchema);
+            OutputPortDeclaration out1 = tf.addOutput(testSchema);
+            OutputPortDeclaration out2 = tf.addOutput(testSchema);
+            OutputPortDeclaration out3 = tf.addOutput(testSchema);
+            assertTrue(tf.graph().compileChecks());
+            JavaTestableGraph tester = jot.tester(tf);
+            StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+            StreamCounter<Tuple> count1 = new StreamCounter<Tuple>();
+            StreamCounter<Tuple> count2 = new StreamCounter<Tuple>();
+            StreamCounter<Tuple> count3 = new StreamCounter<Tuple>();
+            tester.registerStreamHandler(out0, count0);
+            tester.registerStreamHandler(out1, count1);
+            tester.registerStreamHandler(out2, count2);
+            tester.registerStreamHandler(out3, count3);
+            StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+            tester.initialize().get().allPortsReady().get();
+
+            inject.submitAsTuple("aaaaaaaaaaaaa");
+            inject.submitAsTuple("aac");
+            inject.submitAsTuple("xxxxxxxxxxxxxxxxxxxxxxxxxz");
+            // Exceeds the budget unless evaluated by the automaton.
+            inject.submitAsTuple("aaaaaaaaaaaaaaaaaaaaaaaaac");
+
+            assertEquals(1, count0.getTupleCount());
+            assertEquals(0, count1.getTupleCount());
+            assertEquals(combined ? 2 : 1, count2.getTupleCount());
+            assertEquals(combined ? 1 : 2, count3.getTupleCount());
+            Metric exceeded = tester.getOperatorInstance(tf).getOperatorContext()
+                    .getMetrics().getCustomMetric("nBudgetExceeded");
+            assertEquals(combined ? 1 : 2, exceeded.getValue());
+
+            tester.shutdown().get();
+        }
+    }
+
+    /**
+     * Test budgetExceededPort must be a port that exists
+     * and is not the port of any expression.
+     */
+    @Test
+    public void testInvalidBudgetExceededPort() throws Exception {
+        for (int port : new int[] {3, -2, 1}) {
+            OperatorInvocation<RegexSplitTestOp> tf = jot.singleOp(RegexSplitTestOp.class);
+            tf.setStringParameter("patterns", "a.*", "b.*");
+            tf.setLongParameter("evaluationBudget", 1000L);
+            tf.setIntParameter("budgetExceededPort", port);
+            tf.addInput(testSchema);
+            for (int p = 0; p < 3; p++)
+                tf.addOutput(testSchema);
+            assertTrue(tf.graph().compileChecks());
+            JavaTestableGraph tester = jot.tester(tf);
+            try {
+                tester.initialize().get();
+                fail("budgetExceededPort " + port + " accepted");
+            } catch (Exception e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import java.util.List;
+
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.model.Parameter;
+import com.ibm.streamsx.patterns.operator.RegexSplit;
+
+/**
+ * Test RegexSplit that splits tuples according to the attribute ustring a
+ * matching a set of patterns.
+ * 
+ */
+public class RegexSplitTestOp extends RegexSplit {
+    private List<String> patterns;
+
+    @Parameter(optional=true, cardinality=-1)
+    public void setPatterns(List<String> patterns) {
+        this.patterns = patterns;
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    @Override
+    protected String[] getExpressions() {
+        return getPatterns().toArray(new String[0]);
+    }
+
+    @Override
+    protected CharSequence getTupleSequence(Tuple tuple) throws Exception {
+        return tuple.getString("a");
+    }
+}
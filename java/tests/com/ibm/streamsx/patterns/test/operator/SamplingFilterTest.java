@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCollector;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streamsx.patterns.operator.SamplingFilter;
+
+public class SamplingFilterTest {
+
+    private static final StreamSchema testSchema = Type.Factory.getTupleType(
+            "tuple<int32 a, ustring b>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test about the expected fraction of tuples is sampled,
+     * with every tuple submitted to one of the ports.
+     */
+    @Test
+    public void testBernoulli() throws Exception {
+        OperatorInvocation<SamplingFilter> tf = jot.singleOp(SamplingFilter.class);
+        tf.setDoubleParameter("probability", 0.1);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration sampled = tf.addOutput(testSchema);
+        OutputPortDeclaration rejected = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> sampledCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(sampled, sampledCount);
+        StreamCounter<Tuple> rejectedCount = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(rejected, rejectedCount);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 100000; i++)
+            inject.submitAsTuple(i, "b");
+        assertEquals(100000, sampledCount.getTupleCount() + rejectedCount.getTupleCount());
+        assertTrue(Math.abs(sampledCount.getTupleCount() - 10000) < 600);
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test all tuples with a key are either in or not in the sample,
+     * and that the same keys are sampled by another operator.
+     */
+    @Test
+    public void testKeyed() throws Exception {
+        Set<String> keys = sampleKeys();
+        assertTrue(Math.abs(keys.size() - 250) < 60);
+        assertEquals(keys, sampleKeys());
+    }
+
+    private Set<String> sampleKeys() throws Exception {
+        OperatorInvocation<SamplingFilter> tf = jot.singleOp(SamplingFilter.class);
+        tf.setDoubleParameter("probability", 0.25);
+        tf.setStringParameter("keyAttributes", "b");
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration sampled = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCollector<LinkedList<Tuple>, Tuple> tuples = StreamCollector.newLinkedListCollector();
+        tester.registerStreamHandler(sampled, tuples);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int r = 0; r < 5; r++) {
+            for (int i = 0; i < 1000; i++)
+                inject.submitAsTuple(r, "key" + i);
+        }
+        tester.shutdown().get();
+
+        Set<String> keys = new HashSet<String>();
+        for (Tuple tuple : tuples.getTuples())
+            keys.add(tuple.getString("b"));
+        assertEquals(keys.size() * 5, tuples.getTuples().size());
+        return keys;
+    }
+}
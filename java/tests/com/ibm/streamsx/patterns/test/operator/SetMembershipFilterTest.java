@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (C) 2014, International Business Machines Corporation
+ * All Rights Reserved
+ *******************************************************************************/
+package com.ibm.streamsx.patterns.test.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import com.ibm.streams.flow.declare.InputPortDeclaration;
+import com.ibm.streams.flow.declare.OperatorInvocation;
+import com.ibm.streams.flow.declare.OutputPortDeclaration;
+import com.ibm.streams.flow.handlers.StreamCollector;
+import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
+import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
+import com.ibm.streams.operator.OutputTuple;
+import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingOutput;
+import com.ibm.streams.operator.Tuple;
+import com.ibm.streams.operator.Type;
+import com.ibm.streamsx.patterns.operator.SetMembershipFilter;
+
+public class SetMembershipFilterTest {
+
+    private static final StreamSchema testSchema = Type.Factory.getTupleType(
+            "tuple<int64 id, ustring name, float64 f>").getTupleSchema();
+
+    private final JavaOperatorTester jot = new JavaOperatorTester();
+
+    /**
+     * Test integral keys, the set being every third id.
+     */
+    @Test
+    public void testIntegralKeys() throws Exception {
+        File keys = keyFile(true);
+        for (boolean bloom : new boolean[] {false, true}) {
+            File table = File.createTempFile("keys", ".fpt");
+            table.delete();
+            try {
+                LinkedList<Tuple> passed = filter("id", keys, table, bloom, false);
+                assertEquals(334, passed.size());
+                for (Tuple tuple : passed)
+                    assertEquals(0, tuple.getLong("id") % 3);
+                assertTrue(table.exists());
+            } finally {
+                table.delete();
+            }
+        }
+        keys.delete();
+    }
+
+    /**
+     * Test string keys with the set inverted.
+     */
+    @Test
+    public void testStringKeysInvert() throws Exception {
+        File keys = keyFile(false);
+        File table = new File(keys.getPath() + ".fpt");
+        try {
+            LinkedList<Tuple> passed = filter("name", keys, null, true, true);
+            assertEquals(666, passed.size());
+            for (Tuple tuple : passed)
+                assertTrue(tuple.getLong("id") % 3 != 0);
+            assertTrue(table.exists());
+        } finally {
+            table.delete();
+            keys.delete();
+        }
+    }
+
+    /**
+     * Test an existing table is used rather than rebuilt.
+     */
+    @Test
+    public void testTableReused() throws Exception {
+        File keys = keyFile(true);
+        File table = new File(keys.getPath() + ".fpt");
+        try {
+            assertEquals(334, filter("id", keys, null, false, false).size());
+            long built = table.lastModified();
+            Thread.sleep(1100);
+            assertEquals(334, filter("id", keys, null, false, false).size());
+            assertEquals(built, table.lastModified());
+        } finally {
+            table.delete();
+            keys.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidKeyAttribute() throws Exception {
+        for (String key : new String[] {"z", "f"}) {
+            OperatorInvocation<SetMembershipFilter> tf = jot.singleOp(SetMembershipFilter.class);
+            tf.setStringParameter("keyAttribute", key);
+            tf.setStringParameter("keyFile", "keys.txt");
+            tf.addInput(testSchema);
+            tf.addOutput(testSchema);
+            assertFalse(tf.graph().compileChecks());
+        }
+    }
+
+    /**
+     * Write a key file containing every third id from 0 to 999,
+     * as the id itself or as its name.
+     */
+    private static File keyFile(boolean integral) throws Exception {
+        File keys = File.createTempFile("keys", ".txt");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(keys), "UTF-8");
+        try {
+            for (int i = 0; i < 1000; i += 3)
+                writer.write((integral ? Integer.toString(i) : name(i)) + "\n");
+        } finally {
+            writer.close();
+        }
+        return keys;
+    }
+
+    private static String name(int i) {
+        return "n\u00e9" + i;
+    }
+
+    private LinkedList<Tuple> filter(String key, File keys, File table,
+            boolean bloom, boolean invert) throws Exception {
+        OperatorInvocation<SetMembershipFilter> tf = jot.singleOp(SetMembershipFilter.class);
+        tf.setStringParameter("keyAttribute", key);
+        tf.setStringParameter("keyFile", keys.getAbsolutePath());
+        if (table != null)
+            tf.setStringParameter("tableFile", table.getAbsolutePath());
+        tf.setBooleanParameter("bloomFilter", bloom);
+        tf.setBooleanParameter("invert", invert);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration output = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCollector<LinkedList<Tuple>, Tuple> passed = StreamCollector.newLinkedListCollector();
+        tester.registerStreamHandler(output, passed);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 1000; i++)
+            inject.submitAsTuple((long) i, name(i), i / 2.0);
+        tester.shutdown().get();
+        return passed.getTuples();
+    }
+}
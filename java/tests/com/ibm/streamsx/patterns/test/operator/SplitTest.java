@@ -8,10 +8,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 
@@ -19,13 +23,19 @@ import com.ibm.streams.flow.declare.InputPortDeclaration;
 import com.ibm.streams.flow.declare.OperatorInvocation;
 import com.ibm.streams.flow.declare.OutputPortDeclaration;
 import com.ibm.streams.flow.handlers.MostRecent;
+import com.ibm.streams.flow.handlers.StreamCounter;
+import com.ibm.streams.flow.handlers.StreamHandler;
 import com.ibm.streams.flow.javaprimitives.JavaOperatorTester;
 import com.ibm.streams.flow.javaprimitives.JavaTestableGraph;
 import com.ibm.streams.operator.OutputTuple;
 import com.ibm.streams.operator.StreamSchema;
+import com.ibm.streams.operator.StreamingData.Punctuation;
 import com.ibm.streams.operator.StreamingOutput;
 import com.ibm.streams.operator.Tuple;
 import com.ibm.streams.operator.Type;
+import com.ibm.streams.operator.metrics.Metric;
+import com.ibm.streams.operator.metrics.OperatorMetrics;
+import com.ibm.streamsx.patterns.operator.OverflowPolicy;
 import com.ibm.streamsx.patterns.operator.Split;
 
 public class SplitTest {
@@ -137,4 +147,354 @@ public class SplitTest {
         assertFalse(tf.graph().compileChecks());
 
     }
+
+    /**
+     * Test batched submission is flushed per port when the batch
+     * is full and by punctuation.
+     */
+    @Test
+    public void testBatchSize() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("batchSize", 4);
+        tf.setDoubleParameter("batchTimeout", 600.0);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        OutputPortDeclaration out1 = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out0, count0);
+        StreamCounter<Tuple> count1 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out1, count1);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        // 1 + 37 is even, 2 + 37 is odd
+        for (int i = 0; i < 6; i++)
+            inject.submitAsTuple(1, "v1");
+        for (int i = 0; i < 3; i++)
+            inject.submitAsTuple(2, "v2");
+        assertEquals(4, count0.getTupleCount());
+        assertEquals(0, count1.getTupleCount());
+
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+        assertEquals(6, count0.getTupleCount());
+        assertEquals(3, count1.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test batch evaluation using the per tuple default,
+     * flushed by full batches and punctuation.
+     */
+    @Test
+    public void testEvaluationBatch() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("evaluationBatchSize", 4);
+        tf.setDoubleParameter("evaluationBatchTimeout", 600.0);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        OutputPortDeclaration out1 = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out0, count0);
+        StreamCounter<Tuple> count1 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out1, count1);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        // 1 + 37 is even, 2 + 37 is odd, 7 is discarded
+        inject.submitAsTuple(1, "v1");
+        inject.submitAsTuple(2, "v2");
+        inject.submitAsTuple(7, "v7");
+        assertEquals(0, count0.getTupleCount() + count1.getTupleCount());
+        inject.submitAsTuple(1, "v1");
+        assertEquals(2, count0.getTupleCount());
+        assertEquals(1, count1.getTupleCount());
+
+        inject.submitAsTuple(2, "v2");
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+        assertEquals(2, count0.getTupleCount());
+        assertEquals(2, count1.getTupleCount());
+        assertEquals(1, count1.getMarkCount(Punctuation.WINDOW_MARKER));
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test the metrics count tuples per port and discarded tuples,
+     * and publish the evaluation time.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("metricsSampling", 1);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        // 1 + 37 is even, 2 + 37 is odd, 7 is discarded
+        for (int i = 0; i < 6; i++)
+            inject.submitAsTuple(1, "v1");
+        for (int i = 0; i < 3; i++)
+            inject.submitAsTuple(2, "v2");
+        for (int i = 0; i < 4; i++)
+            inject.submitAsTuple(7, "v7");
+
+        OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+        assertEquals(6, metrics.getCustomMetric("port0.nSubmitted").getValue());
+        assertEquals(3, metrics.getCustomMetric("port1.nSubmitted").getValue());
+        assertEquals(4, metrics.getCustomMetric("nDiscarded").getValue());
+
+        Metric max = metrics.getCustomMetric("evaluationNanos.max");
+        for (int w = 0; w < 300 && max.getValue() == 0; w++)
+            Thread.sleep(10);
+        assertTrue(max.getValue() > 0);
+        assertTrue(metrics.getCustomMetric("evaluationNanos.p50").getValue() <=
+                metrics.getCustomMetric("evaluationNanos.p99").getValue());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test a multicast split submits each tuple to all selected
+     * ports, and discards tuples selecting no existing port.
+     */
+    @Test
+    public void testMulticast() throws Exception {
+        OperatorInvocation<MulticastSplitTestOp> tf = jot.singleOp(MulticastSplitTestOp.class);
+        tf.setIntParameter("metricsSampling", 1);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration[] outputs = new OutputPortDeclaration[3];
+        for (int p = 0; p < outputs.length; p++)
+            outputs[p] = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        List<StreamCounter<Tuple>> counts = new ArrayList<StreamCounter<Tuple>>();
+        for (OutputPortDeclaration output : outputs) {
+            StreamCounter<Tuple> count = new StreamCounter<Tuple>();
+            counts.add(count);
+            tester.registerStreamHandler(output, count);
+        }
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        inject.submitAsTuple(5, "ports 0 and 2");
+        inject.submitAsTuple(7, "all ports");
+        inject.submitAsTuple(2, "port 1");
+        inject.submitAsTuple(0, "discarded");
+        inject.submitAsTuple(8, "port 3 does not exist");
+        inject.submitAsTuple(12, "port 2");
+
+        assertEquals(2, counts.get(0).getTupleCount());
+        assertEquals(2, counts.get(1).getTupleCount());
+        assertEquals(3, counts.get(2).getTupleCount());
+
+        OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+        assertEquals(3, metrics.getCustomMetric("port2.nSubmitted").getValue());
+        assertEquals(2, metrics.getCustomMetric("nDiscarded").getValue());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test asynchronous submission isolates a slow port, and that
+     * punctuation is forwarded after all queued tuples.
+     */
+    @Test
+    public void testAsync() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("asyncQueueSize", 100);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        OutputPortDeclaration out1 = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Object> slow = Collections.synchronizedList(new ArrayList<Object>());
+        tester.registerStreamHandler(out0, new StreamHandler<Tuple>() {
+            @Override
+            public void tuple(Tuple tuple) throws Exception {
+                release.await();
+                slow.add(tuple.getInt("a"));
+            }
+            @Override
+            public void mark(Punctuation mark) {
+                slow.add(mark);
+            }
+        });
+        StreamCounter<Tuple> count1 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out1, count1);
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        // 1 + 37 is even, 2 + 37 is odd
+        for (int i = 0; i < 10; i++) {
+            inject.submitAsTuple(1, "v1");
+            inject.submitAsTuple(2, "v2");
+        }
+        for (int w = 0; w < 200 && count1.getTupleCount() != 10; w++)
+            Thread.sleep(10);
+        assertEquals(10, count1.getTupleCount());
+        assertTrue(slow.isEmpty());
+
+        release.countDown();
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+        assertEquals(11, slow.size());
+        assertEquals(Punctuation.WINDOW_MARKER, slow.get(10));
+        assertEquals(1, count1.getMarkCount(Punctuation.WINDOW_MARKER));
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test tuples are dropped when a port's queue is full.
+     */
+    @Test
+    public void testAsyncDropNewest() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("asyncQueueSize", 4);
+        tf.setStringParameter("asyncOverflow", OverflowPolicy.DROP_NEWEST.name());
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        tf.graph().compileChecks();
+        JavaTestableGraph tester = jot.tester(tf);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out0, new StreamHandler<Tuple>() {
+            @Override
+            public void tuple(Tuple tuple) throws Exception {
+                release.await();
+                count0.tuple(tuple);
+            }
+            @Override
+            public void mark(Punctuation mark) throws Exception {
+                count0.mark(mark);
+            }
+        });
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        for (int i = 0; i < 20; i++)
+            inject.submitAsTuple(1, "v1");
+        release.countDown();
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+
+        OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+        long dropped = metrics.getCustomMetric("port0.nDropped").getValue();
+        assertTrue(dropped >= 15);
+        assertEquals(20, count0.getTupleCount() + dropped);
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test producers blocked on a full queue are woken as the
+     * port's thread submits, so no tuple is lost or stalled.
+     */
+    @Test
+    public void testAsyncBlock() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("asyncQueueSize", 4);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out0, count0);
+        final StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        final int threads = 4;
+        final int count = 5000;
+        RegexFilterTest.inject(threads, count, new RegexFilterTest.Injector() {
+            @Override
+            public void inject(int thread, int i) throws Exception {
+                inject.submitAsTuple(1, "v1");
+            }
+        });
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+        assertEquals(threads * count, count0.getTupleCount());
+        assertEquals(1, count0.getMarkCount(Punctuation.WINDOW_MARKER));
+
+        OperatorMetrics metrics = tester.getOperatorInstance(tf).getOperatorContext().getMetrics();
+        assertEquals(0, metrics.getCustomMetric("port0.nDropped").getValue());
+
+        tester.shutdown().get();
+    }
+
+    /**
+     * Test a failure submitting from a port's thread is rethrown to
+     * the operator, an exception once and an error on every later call.
+     */
+    @Test
+    public void testAsyncSubmitFailure() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("asyncQueueSize", 4);
+        InputPortDeclaration input = tf.addInput(testSchema);
+        OutputPortDeclaration out0 = tf.addOutput(testSchema);
+        assertTrue(tf.graph().compileChecks());
+        JavaTestableGraph tester = jot.tester(tf);
+        final StreamCounter<Tuple> count0 = new StreamCounter<Tuple>();
+        tester.registerStreamHandler(out0, new StreamHandler<Tuple>() {
+            @Override
+            public void tuple(Tuple tuple) throws Exception {
+                if (tuple.getInt(0) == 2)
+                    throw new IllegalStateException("exception");
+                if (tuple.getInt(0) == 3)
+                    throw new Error("error");
+                count0.tuple(tuple);
+            }
+            @Override
+            public void mark(Punctuation mark) throws Exception {
+                count0.mark(mark);
+            }
+        });
+        StreamingOutput<OutputTuple> inject = tester.getInputTester(input);
+        tester.initialize().get().allPortsReady().get();
+
+        inject.submitAsTuple(1, "v1");
+        inject.submitAsTuple(2, "v1");
+        try {
+            inject.punctuate(Punctuation.WINDOW_MARKER);
+            fail("Exception not rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("exception", e.getMessage());
+        }
+        inject.submitAsTuple(1, "v1");
+        inject.punctuate(Punctuation.WINDOW_MARKER);
+        assertEquals(2, count0.getTupleCount());
+
+        inject.submitAsTuple(3, "v1");
+        for (int i = 0; i < 2; i++) {
+            try {
+                if (i == 0)
+                    inject.punctuate(Punctuation.WINDOW_MARKER);
+                else
+                    inject.submitAsTuple(1, "v1");
+                fail("Error not rethrown");
+            } catch (Error e) {
+                assertEquals("error", e.getMessage());
+            }
+        }
+        assertEquals(2, count0.getTupleCount());
+
+        tester.shutdown().get();
+    }
+
+    @Test
+    public void testAsyncWithBatch() throws Exception {
+        OperatorInvocation<SplitTestOp> tf = jot.singleOp(SplitTestOp.class);
+        tf.setIntParameter("asyncQueueSize", 100);
+        tf.setIntParameter("batchSize", 10);
+        tf.addInput(testSchema);
+        tf.addOutput(testSchema);
+        assertFalse(tf.graph().compileChecks());
+    }
 }